@@ -0,0 +1,108 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.IncrementalValidator;
+import il.ac.hit.validation.RuleSet;
+import il.ac.hit.validation.User;
+import il.ac.hit.validation.UserChangeStream;
+import il.ac.hit.validation.UserValidation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeping reports current while users change their age in bursts: validating every changed
+ * user in full after each change, against publishing the changes to a {@link UserChangeStream}
+ * and letting an {@link IncrementalValidator} merge them and re-run only the age rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncrementalValidationBenchmark {
+
+    @Param({"10000"})
+    private int size;
+
+    /** Changes per invocation; each user hit changes a few times in a row. */
+    @Param({"1000"})
+    private int changes;
+
+    private User[] users;
+    private int[] changed;
+    private RuleSet rules;
+    private IncrementalValidator validator;
+    private UserChangeStream.Subscription subscription;
+
+    @Setup
+    public void setUp() {
+        rules = RuleSet.of(
+                new String[] {"emailEndsWithIL", "emailLength", "passwordLength", "passwordLettersNumbers",
+                        "passwordDiffersFromUsername", "age", "usernameLength"},
+                new UserValidation[] {UserValidation.emailEndsWithIL(), UserValidation.emailLengthBiggerThan10(),
+                        UserValidation.passwordLengthBiggerThan8(), UserValidation.passwordIncludesLettersNumbersOnly(),
+                        UserValidation.passwordIsDifferentFromUsername(), UserValidation.ageBiggerThan18(),
+                        UserValidation.usernameLengthBiggerThan8()});
+        validator = IncrementalValidator.of(rules);
+        UserChangeStream stream = new UserChangeStream(4 * changes);
+        subscription = stream.subscribe();
+
+        Random random = new Random(42);
+        users = new User[size];
+        for (int i = 0; i < size; i++) {
+            String email = random.nextBoolean() ? "user" + i + "@example.co.il" : "user" + i + "@example.com";
+            String password = random.nextBoolean() ? "password123" : "pass";
+            users[i] = new User("user" + i, email, password, 10 + random.nextInt(50));
+            stream.watch(users[i]);
+            validator.track(users[i]);
+        }
+        changed = new int[changes];
+        for (int i = 0; i < changes; i += 4) {
+            int user = random.nextInt(size);
+            for (int j = i; j < Math.min(i + 4, changes); j++) {
+                changed[j] = user;
+            }
+        }
+    }
+
+    @Benchmark
+    public int fullPerChange() {
+        int failures = 0;
+        for (int i = 0; i < changed.length; i++) {
+            User user = users[changed[i]];
+            user.setAge(10 + (i & 31));
+            failures += rules.validate(user).getFailureCount();
+        }
+        subscription.drain(change -> { }, Integer.MAX_VALUE);
+        return failures;
+    }
+
+    @Benchmark
+    public int incrementalBatched() {
+        for (int i = 0; i < changed.length; i++) {
+            users[changed[i]].setAge(10 + (i & 31));
+        }
+        return validator.process(subscription);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(IncrementalValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,75 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.BasicUser;
+import il.ac.hit.validation.PasswordHasher;
+import il.ac.hit.validation.PasswordVerifier;
+import il.ac.hit.validation.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of checking a hashed password at each {@link PasswordHasher} cost.
+ * <p>
+ * Sampled, so JMH reports percentiles. One core verifies about {@code 1 / p50} passwords
+ * per second at a given cost, which sizes the {@link PasswordVerifier} pool for a login rate.
+ * {@link #verifyOnPool()} adds the hand-off to a single-thread verifier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class PasswordVerifyBenchmark {
+
+    private static final String PASSWORD = "Password123";
+
+    @Param({"10000", "100000", "310000", "600000"})
+    private int iterations;
+
+    private User user;
+    private PasswordVerifier verifier;
+
+    @Setup
+    public void setUp() {
+        user = new BasicUser("benchmark", "benchmark@example.co.il", PASSWORD.toCharArray(), 30);
+        user.setPassword(PASSWORD.toCharArray(), new PasswordHasher(iterations));
+        verifier = new PasswordVerifier(1, 16);
+    }
+
+    @TearDown
+    public void tearDown() {
+        verifier.close();
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return user.verifyPassword(PASSWORD.toCharArray());
+    }
+
+    @Benchmark
+    public boolean verifyOnPool() {
+        return verifier.verify(user, PASSWORD.toCharArray()).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PasswordVerifyBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.PlatinumUser;
+import il.ac.hit.validation.User;
+import il.ac.hit.validation.UserValidation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A policy written in the rule expression language against the same policy chained by hand
+ * from the built-in rules, and the cost of compiling an expression that is not cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleExpressionBenchmark {
+
+    private static final String POLICY =
+            "age > 18 and email endsWith \"il\" and email.length > 10 and password has dollar"
+                    + " and password.length > 8 and password != username";
+
+    private UserValidation handWritten;
+    private UserValidation parsed;
+    private User valid;
+    private User platinum;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        handWritten = UserValidation.compile(UserValidation.all(
+                UserValidation.ageBiggerThan18(),
+                UserValidation.emailEndsWithIL(),
+                UserValidation.emailLengthBiggerThan10(),
+                UserValidation.passwordIncludesDollarSign(),
+                UserValidation.passwordLengthBiggerThan8(),
+                UserValidation.passwordIsDifferentFromUsername()));
+        parsed = UserValidation.parse(POLICY);
+        valid = new User("grownup", "grownup@example.co.il", "pass$word123", 40);
+        platinum = new PlatinumUser("young", "young@example.com", "short", 16);
+    }
+
+    @Benchmark
+    public boolean handWritten() {
+        return handWritten.apply(valid).isValid();
+    }
+
+    @Benchmark
+    public boolean parsed() {
+        return parsed.apply(valid).isValid();
+    }
+
+    @Benchmark
+    public boolean parsedTierShortcut() {
+        return UserValidation.parse("tier == platinum or " + "(" + POLICY + ")").apply(platinum).isValid();
+    }
+
+    /** A fresh source text each time, so every call parses, simplifies and compiles. */
+    @Benchmark
+    public UserValidation compileUncached() {
+        return UserValidation.parse(POLICY + " and age < " + (1000 + (counter++ & 1023)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RuleExpressionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,151 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.User;
+import il.ac.hit.validation.UserUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sorting throughput of {@link UserUtils} across input sizes and presortedness.
+ * <p>
+ * Every invocation sorts a fresh copy of the same input; {@link #copyOnly()} measures
+ * the copy alone so it can be subtracted. {@link Arrays#sort(Object[], Comparator)}
+ * is included as the reference engine. {@link #topK()} and {@link #partialSort()}
+ * fetch only the first page of the order.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+    private static final Comparator<User> BY_USERNAME = Comparator.comparing(User::getUsername);
+
+    /** Number of users fetched by the top-K and partial sort benchmarks: one page. */
+    private static final int PAGE = 100;
+
+    @Param({"100", "10000", "1000000"})
+    private int size;
+
+    @Param({"random", "sorted", "reversed", "nearlySorted"})
+    private String order;
+
+    private User[] input;
+    private User[] work;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        input = new User[size];
+        for (int i = 0; i < size; i++) {
+            input[i] = new User(String.format("user%08d", i), "user" + i + "@example.co.il",
+                    "Password123", 18 + random.nextInt(80));
+        }
+
+        switch (order) {
+            case "random":
+                for (int i = size - 1; i > 0; i--) {
+                    swap(input, i, random.nextInt(i + 1));
+                }
+                break;
+            case "reversed":
+                for (int i = 0, j = size - 1; i < j; i++, j--) {
+                    swap(input, i, j);
+                }
+                break;
+            case "nearlySorted":
+                // About 1% of the elements are moved out of place
+                for (int i = 0; i < size / 100 + 1; i++) {
+                    swap(input, random.nextInt(size), random.nextInt(size));
+                }
+                break;
+            default:
+                break;
+        }
+        work = new User[size];
+    }
+
+    private static void swap(User[] users, int i, int j) {
+        User temp = users[i];
+        users[i] = users[j];
+        users[j] = temp;
+    }
+
+    @Benchmark
+    public User[] copyOnly() {
+        System.arraycopy(input, 0, work, 0, size);
+        return work;
+    }
+
+    @Benchmark
+    public User[] sort() {
+        System.arraycopy(input, 0, work, 0, size);
+        UserUtils.sort(work, BY_USERNAME);
+        return work;
+    }
+
+    @Benchmark
+    public User[] parallelSort() {
+        System.arraycopy(input, 0, work, 0, size);
+        UserUtils.parallelSort(work, BY_USERNAME, Runtime.getRuntime().availableProcessors());
+        return work;
+    }
+
+    @Benchmark
+    public User[] sortByStringKey() {
+        System.arraycopy(input, 0, work, 0, size);
+        UserUtils.sortByStringKey(work, User::getUsername);
+        return work;
+    }
+
+    @Benchmark
+    public User[] sortByIntKey() {
+        System.arraycopy(input, 0, work, 0, size);
+        UserUtils.sortByIntKey(work, User::getAge);
+        return work;
+    }
+
+    @Benchmark
+    public User[] topK() {
+        return UserUtils.topK(input, PAGE, BY_USERNAME);
+    }
+
+    @Benchmark
+    public User[] partialSort() {
+        System.arraycopy(input, 0, work, 0, size);
+        UserUtils.partialSort(work, 0, Math.min(PAGE, size), BY_USERNAME);
+        return work;
+    }
+
+    @Benchmark
+    public User[] jdkArraysSort() {
+        System.arraycopy(input, 0, work, 0, size);
+        Arrays.sort(work, BY_USERNAME);
+        return work;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SortBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
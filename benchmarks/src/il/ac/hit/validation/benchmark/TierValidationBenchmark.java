@@ -0,0 +1,134 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.BasicUser;
+import il.ac.hit.validation.PlatinumUser;
+import il.ac.hit.validation.PremiumUser;
+import il.ac.hit.validation.TierValidation;
+import il.ac.hit.validation.User;
+import il.ac.hit.validation.UserValidation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validating a shuffled array of mixed tiers: an {@code instanceof} chain per user, a
+ * {@link TierValidation} lookup per user, and {@link TierValidation#validateAll(User[])},
+ * which groups the users by tier first.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TierValidationBenchmark {
+
+    @Param({"100000"})
+    private int size;
+
+    private User[] users;
+    private UserValidation basic;
+    private UserValidation premium;
+    private UserValidation platinum;
+    private UserValidation fallback;
+    private TierValidation tiers;
+
+    @Setup
+    public void setUp() {
+        fallback = UserValidation.compile(UserValidation.ageBiggerThan18());
+        basic = UserValidation.compile(UserValidation.ageBiggerThan18().and(UserValidation.emailLengthBiggerThan10()));
+        premium = UserValidation.compile(UserValidation.all(UserValidation.ageBiggerThan18(),
+                UserValidation.emailEndsWithIL(), UserValidation.passwordLengthBiggerThan8()));
+        platinum = UserValidation.compile(UserValidation.emailEndsWithIL().or(UserValidation.ageBiggerThan18()));
+        tiers = TierValidation.of(fallback)
+                .with(BasicUser.class, basic)
+                .with(PremiumUser.class, premium)
+                .with(PlatinumUser.class, platinum);
+
+        Random random = new Random(42);
+        users = new User[size];
+        for (int i = 0; i < size; i++) {
+            String email = random.nextBoolean() ? "user" + i + "@example.co.il" : "user" + i + "@example.com";
+            String password = random.nextBoolean() ? "password123" : "pass";
+            int age = 10 + random.nextInt(50);
+            switch (random.nextInt(4)) {
+                case 0:
+                    users[i] = new User("user" + i, email, password, age);
+                    break;
+                case 1:
+                    users[i] = new BasicUser("user" + i, email, password, age);
+                    break;
+                case 2:
+                    users[i] = new PremiumUser("user" + i, email, password, age);
+                    break;
+                default:
+                    users[i] = new PlatinumUser("user" + i, email, password, age);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public int instanceofChain() {
+        int valid = 0;
+        for (User user : users) {
+            UserValidation validation;
+            if (user instanceof PlatinumUser) {
+                validation = platinum;
+            } else if (user instanceof PremiumUser) {
+                validation = premium;
+            } else if (user instanceof BasicUser) {
+                validation = basic;
+            } else {
+                validation = fallback;
+            }
+            if (validation.apply(user).isValid()) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public int lookupPerUser() {
+        int valid = 0;
+        for (User user : users) {
+            if (tiers.apply(user).isValid()) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    /** The same batch result as {@link #groupedByTier()}, validating users in array order. */
+    @Benchmark
+    public int lookupPerUserBatch() {
+        UserValidation perUser = tiers::apply;
+        return perUser.validateAll(users).failureCount();
+    }
+
+    @Benchmark
+    public int groupedByTier() {
+        return tiers.validateAll(users).failureCount();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TierValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
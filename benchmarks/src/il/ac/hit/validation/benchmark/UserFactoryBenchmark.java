@@ -0,0 +1,85 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.PasswordHasher;
+import il.ac.hit.validation.User;
+import il.ac.hit.validation.UserFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating one user through {@link UserFactory#createUser} for each tier.
+ * The mixed-case tier name exercises the case-insensitive lookup; the resolved and
+ * batch variants show the cost without any lookup. Creating a user includes hashing its
+ * password at {@link PasswordHasher#FAST} cost, as every user created without a hasher is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserFactoryBenchmark {
+
+    @Param({"basic", "premium", "platinum", "Platinum"})
+    private String tier;
+
+    private static final int BATCH = 1024;
+
+    private UserFactory.Tier resolved;
+    private String[] usernames;
+    private String[] emails;
+    private String[] passwords;
+    private int[] ages;
+
+    @Setup
+    public void setUp() {
+        resolved = UserFactory.tier(tier);
+        usernames = new String[BATCH];
+        emails = new String[BATCH];
+        passwords = new String[BATCH];
+        ages = new int[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            usernames[i] = "benchmark" + i;
+            emails[i] = "benchmark" + i + "@example.co.il";
+            passwords[i] = "Password" + i;
+            ages[i] = 18 + i % 60;
+        }
+    }
+
+    @Benchmark
+    public User createUser() {
+        return UserFactory.createUser(tier, "benchmark", "benchmark@example.co.il", "Password123", 30);
+    }
+
+    @Benchmark
+    public User createUserResolved() {
+        return resolved.create("benchmark", "benchmark@example.co.il", "Password123", 30);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public User[] createUsers() {
+        return UserFactory.createUsers(tier, usernames, emails, passwords, ages);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UserFactoryBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
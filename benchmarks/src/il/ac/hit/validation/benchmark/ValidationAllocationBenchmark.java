@@ -0,0 +1,90 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.User;
+import il.ac.hit.validation.UserValidation;
+import il.ac.hit.validation.ValidationResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation profile of the validation happy and failure paths.
+ * <p>
+ * Run {@link #main(String[])} (or JMH with {@code -prof gc}) and check
+ * {@code gc.alloc.rate.norm}: every benchmark here should report about 0 B/op.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationAllocationBenchmark {
+
+    private User validUser;
+    private User invalidUser;
+    private UserValidation policy;
+    private UserValidation compiledPolicy;
+
+    @Setup
+    public void setUp() {
+        validUser = new User("administrator", "administrator@example.co.il", "Password12345", 34);
+        invalidUser = new User("admin", "admin@mail.com", "abc$", 12);
+
+        policy = UserValidation.all(
+                UserValidation.emailLengthBiggerThan10(),
+                UserValidation.emailEndsWithIL(),
+                UserValidation.passwordLengthBiggerThan8(),
+                UserValidation.passwordIncludesLettersNumbersOnly(),
+                UserValidation.passwordIsDifferentFromUsername(),
+                UserValidation.ageBiggerThan18(),
+                UserValidation.usernameLengthBiggerThan8());
+        compiledPolicy = UserValidation.compile(policy);
+    }
+
+    @Benchmark
+    public boolean happyPath() {
+        return policy.apply(validUser).isValid();
+    }
+
+    @Benchmark
+    public String failurePath() {
+        return policy.apply(invalidUser).getReasonOrNull();
+    }
+
+    @Benchmark
+    public String failurePathOptionalReason() {
+        ValidationResult result = policy.apply(invalidUser);
+        return result.getReason().orElse(null);
+    }
+
+    @Benchmark
+    public boolean compiledHappyPath() {
+        return compiledPolicy.apply(validUser).isValid();
+    }
+
+    @Benchmark
+    public String compiledFailurePath() {
+        return compiledPolicy.apply(invalidUser).getReasonOrNull();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ValidationAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,120 @@
+package il.ac.hit.validation.benchmark;
+
+import il.ac.hit.validation.User;
+import il.ac.hit.validation.UserValidation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of each {@link UserValidation} combinator, interpreted and compiled.
+ * <p>
+ * The {@code input} parameter picks a user for which the first operand decides the
+ * result ({@code hit}: AND/ALL stop at the first rule, OR/NONE stop at the first rule)
+ * or for which every operand has to run ({@code miss}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationCombinatorBenchmark {
+
+    @Param({"hit", "miss"})
+    private String input;
+
+    @Param({"false", "true"})
+    private boolean compiled;
+
+    private User andUser;
+    private User orUser;
+    private User xorUser;
+    private User allUser;
+    private User noneUser;
+
+    private UserValidation and;
+    private UserValidation or;
+    private UserValidation xor;
+    private UserValidation all;
+    private UserValidation none;
+
+    @Setup
+    public void setUp() {
+        // Rules are chosen so the age check always comes first
+        UserValidation age = UserValidation.ageBiggerThan18();
+        UserValidation emailLength = UserValidation.emailLengthBiggerThan10();
+        UserValidation emailSuffix = UserValidation.emailEndsWithIL();
+        UserValidation passwordChars = UserValidation.passwordIncludesLettersNumbersOnly();
+
+        and = age.and(emailLength).and(emailSuffix).and(passwordChars);
+        or = age.or(emailLength).or(emailSuffix).or(passwordChars);
+        xor = age.xor(emailSuffix);
+        all = UserValidation.all(age, emailLength, emailSuffix, passwordChars);
+        none = UserValidation.none(age, emailLength, emailSuffix, passwordChars);
+        if (compiled) {
+            and = UserValidation.compile(and);
+            or = UserValidation.compile(or);
+            xor = UserValidation.compile(xor);
+            all = UserValidation.compile(all);
+            none = UserValidation.compile(none);
+        }
+
+        User minor = new User("kid", "kid@example.co.il", "Password123", 12);
+        User adult = new User("grownup", "grownup@example.co.il", "Password123", 40);
+        User adultMismatch = new User("x", "x@a.com", "pass$word", 40);
+        boolean hit = "hit".equals(input);
+
+        // hit: the first rule decides; miss: every rule runs
+        andUser = hit ? minor : adult;
+        allUser = hit ? minor : adult;
+        orUser = hit ? adult : new User("x", "x@a.com", "pass$word", 12);
+        noneUser = hit ? adult : new User("x", "x@a.com", "pass$word", 12);
+        // XOR always runs both sides; hit is a valid result, miss an invalid one
+        xorUser = hit ? adultMismatch : adult;
+    }
+
+    @Benchmark
+    public boolean and() {
+        return and.apply(andUser).isValid();
+    }
+
+    @Benchmark
+    public boolean or() {
+        return or.apply(orUser).isValid();
+    }
+
+    @Benchmark
+    public boolean xor() {
+        return xor.apply(xorUser).isValid();
+    }
+
+    @Benchmark
+    public boolean all() {
+        return all.apply(allUser).isValid();
+    }
+
+    @Benchmark
+    public boolean none() {
+        return none.apply(noneUser).isValid();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ValidationCombinatorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
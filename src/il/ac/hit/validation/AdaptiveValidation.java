@@ -0,0 +1,133 @@
+package il.ac.hit.validation;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A NONE or ANY combinator that learns which rule to evaluate first.
+ * <p>
+ * Both combinators stop at the first rule that passes, and their result does not depend on
+ * which passing rule was found first. So the rules can run in any order: this class runs
+ * them cheapest-expected-first, ranking each rule by {@code cost / P(pass)}. Costs come from
+ * hints; pass rates start at the hint and follow the pass rate observed on live traffic.
+ * <p>
+ * Instances are thread-safe. Statistics use striped counters and the evaluation order is
+ * republished every {@value #REORDER_INTERVAL} calls on average.
+ */
+final class AdaptiveValidation implements UserValidation {
+
+    /**
+     * The logical operator of an adaptive combinator.
+     */
+    enum Mode {
+        /** Valid only if no rule passes, like {@link UserValidation#none(UserValidation...)}. */
+        NONE,
+        /** Valid if any rule passes, like chaining the rules with {@link UserValidation#or(UserValidation)}. */
+        ANY
+    }
+
+    /** Average number of calls between two reorderings. */
+    private static final int REORDER_INTERVAL = 1024;
+
+    /** Weight of the pass rate hint, in observations, when blending it with live statistics. */
+    private static final double PRIOR_WEIGHT = 16;
+
+    /** Lower bound of the estimated pass rate, so rules that never pass still get a finite rank. */
+    private static final double MIN_PASS_RATE = 1e-6;
+
+    private final Mode mode;
+    private final UserValidation[] rules;
+    private final double[] costs;
+    private final double[] passRateHints;
+    private final LongAdder[] evaluations;
+    private final LongAdder[] passes;
+    private volatile int[] order;
+
+    /**
+     * Constructs an adaptive combinator.
+     *
+     * @param mode the logical operator
+     * @param rules the rules in declaration order; not copied
+     */
+    AdaptiveValidation(Mode mode, UserValidation[] rules) {
+        this.mode = mode;
+        this.rules = rules;
+        this.costs = new double[rules.length];
+        this.passRateHints = new double[rules.length];
+        this.evaluations = new LongAdder[rules.length];
+        this.passes = new LongAdder[rules.length];
+        for (int i = 0; i < rules.length; i++) {
+            costs[i] = HintedValidation.costOf(rules[i]);
+            passRateHints[i] = HintedValidation.passRateOf(rules[i]);
+            evaluations[i] = new LongAdder();
+            passes[i] = new LongAdder();
+        }
+        this.order = rankOrder();
+    }
+
+    @Override
+    public ValidationResult apply(User user) {
+        int[] currentOrder = order;
+        int lastRule = rules.length - 1;
+        ValidationResult lastDeclaredResult = null;
+
+        for (int index : currentOrder) {
+            ValidationResult result = rules[index].apply(user);
+            evaluations[index].increment();
+            if (result.isValid()) {
+                passes[index].increment();
+                maybeReorder();
+                return mode == Mode.NONE ? CompositeValidation.NONE_FAILED : result;
+            }
+            if (index == lastRule) {
+                lastDeclaredResult = result;
+            }
+        }
+
+        maybeReorder();
+        // Like an OR chain, ANY reports the failure of the last declared rule
+        return mode == Mode.NONE ? Valid.INSTANCE : lastDeclaredResult;
+    }
+
+    /**
+     * Gets the current evaluation order, as indexes into the declared rules.
+     * @return a copy of the order
+     */
+    int[] getEvaluationOrder() {
+        return order.clone();
+    }
+
+    private void maybeReorder() {
+        if (ThreadLocalRandom.current().nextInt(REORDER_INTERVAL) == 0) {
+            order = rankOrder();
+        }
+    }
+
+    /**
+     * Sorts rules by expected cost per pass, cheapest first. Ties keep declaration order.
+     */
+    private int[] rankOrder() {
+        int n = rules.length;
+        double[] ranks = new double[n];
+        int[] ranked = new int[n];
+        for (int i = 0; i < n; i++) {
+            double observedPasses = passes[i].sum();
+            double observedEvaluations = evaluations[i].sum();
+            double passRate = (observedPasses + passRateHints[i] * PRIOR_WEIGHT) / (observedEvaluations + PRIOR_WEIGHT);
+            ranks[i] = costs[i] / Math.max(passRate, MIN_PASS_RATE);
+            ranked[i] = i;
+        }
+
+        // Rule lists are short; a stable insertion sort is enough
+        for (int i = 1; i < n; i++) {
+            int current = ranked[i];
+            int j = i - 1;
+            while (j >= 0 && ranks[ranked[j]] > ranks[current]) {
+                ranked[j + 1] = ranked[j];
+                j--;
+            }
+            ranked[j + 1] = current;
+        }
+        return ranked;
+    }
+}
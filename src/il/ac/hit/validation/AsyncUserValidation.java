@@ -0,0 +1,64 @@
+package il.ac.hit.validation;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A validation that completes later, for rules backed by slow or blocking services
+ * (such as a breached-password list or a disposable-email-domain database).
+ * <p>
+ * Instances are usually created by {@link AsyncValidationExecutor#async(UserValidation)}, which
+ * runs the rule on a virtual thread. Combinators start their operands concurrently and
+ * report the same result as the synchronous {@link UserValidation#all(UserValidation...)}:
+ * the first failure in declaration order. Operands that can no longer change the result
+ * are cancelled, which interrupts the threads running them.
+ */
+@FunctionalInterface
+public interface AsyncUserValidation {
+
+    /**
+     * Starts validating a user.
+     * Cancelling the returned future cancels the validation.
+     *
+     * @param user the user to validate
+     * @return a future completed with the result, or exceptionally if a rule threw
+     */
+    CompletableFuture<ValidationResult> apply(User user);
+
+    /**
+     * Combines this validation with another; both start at once.
+     *
+     * @param other the other validation to combine with
+     * @return a validation that passes only if both pass
+     * @throws IllegalArgumentException if other is null
+     */
+    default AsyncUserValidation and(AsyncUserValidation other) {
+        if (other == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        return all(this, other);
+    }
+
+    /**
+     * Creates a validation that starts all given validations at once and requires all to pass.
+     * <p>
+     * The result is the first failure in declaration order. As soon as a validation fails,
+     * the validations declared after it are cancelled; once every validation before it has
+     * passed, the result is complete and nothing is left running.
+     *
+     * @param validations the validations to run
+     * @return a validation that passes only if all validations pass
+     * @throws IllegalArgumentException if validations is null, empty or holds null
+     */
+    static AsyncUserValidation all(AsyncUserValidation... validations) {
+        if (validations == null || validations.length == 0) {
+            throw new IllegalArgumentException("Validations array cannot be null or empty");
+        }
+        for (AsyncUserValidation validation : validations) {
+            if (validation == null) {
+                throw new IllegalArgumentException("Validations array cannot contain null");
+            }
+        }
+        AsyncUserValidation[] operands = validations.clone();
+        return user -> AsyncValidationExecutor.all(operands, user);
+    }
+}
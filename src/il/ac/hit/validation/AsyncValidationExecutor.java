@@ -0,0 +1,208 @@
+package il.ac.hit.validation;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link UserValidation} rules asynchronously, one virtual thread per evaluation.
+ * <p>
+ * Rules that block on I/O (files, databases, remote services) park their virtual thread
+ * instead of holding a platform thread, so many validations can wait on slow backends at once.
+ * Each rule can be given a timeout; a rule that does not finish in time is interrupted and
+ * reported as {@link Invalid}, so a stuck backend fails closed instead of hanging the caller.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * try (AsyncValidationExecutor executor = new AsyncValidationExecutor(Duration.ofMillis(200))) {
+ *     AsyncUserValidation policy = AsyncUserValidation.all(
+ *             executor.async(UserValidation.emailEndsWithIL()),
+ *             executor.async(breachedPasswords),
+ *             executor.async(disposableDomains, Duration.ofMillis(50)));
+ *     ValidationResult result = policy.apply(user).join();
+ * }
+ * }</pre>
+ */
+public final class AsyncValidationExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Duration defaultTimeout;
+
+    /**
+     * Constructs an executor without a default timeout.
+     */
+    public AsyncValidationExecutor() {
+        this(null);
+    }
+
+    /**
+     * Constructs an executor.
+     *
+     * @param defaultTimeout the timeout of rules lifted without one, or null for none
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    public AsyncValidationExecutor(Duration defaultTimeout) {
+        checkTimeout(defaultTimeout);
+        this.defaultTimeout = defaultTimeout;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    private static void checkTimeout(Duration timeout) {
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+    }
+
+    // ================== Lifting rules ==================
+
+    /**
+     * Makes a rule asynchronous, with the default timeout.
+     *
+     * @param rule the rule; must be thread-safe
+     * @return the asynchronous rule
+     * @throws IllegalArgumentException if rule is null
+     */
+    public AsyncUserValidation async(UserValidation rule) {
+        return async(rule, defaultTimeout);
+    }
+
+    /**
+     * Makes a rule asynchronous, with its own timeout.
+     *
+     * @param rule the rule; must be thread-safe
+     * @param timeout how long the rule may run, or null for no limit
+     * @return the asynchronous rule
+     * @throws IllegalArgumentException if rule is null or the timeout is not positive
+     */
+    public AsyncUserValidation async(UserValidation rule, Duration timeout) {
+        if (rule == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        checkTimeout(timeout);
+        Invalid timedOut = timeout == null ? null : new Invalid("Validation timed out after " + timeout.toMillis() + " ms");
+        long timeoutNanos = timeout == null ? 0 : timeout.toNanos();
+        return user -> submit(rule, user, timedOut, timeoutNanos);
+    }
+
+    /**
+     * Validates one user asynchronously with the default timeout.
+     *
+     * @param rule the rule; must be thread-safe
+     * @param user the user to validate
+     * @return a future completed with the result
+     * @throws IllegalArgumentException if rule is null
+     */
+    public CompletableFuture<ValidationResult> validate(UserValidation rule, User user) {
+        return async(rule).apply(user);
+    }
+
+    private CompletableFuture<ValidationResult> submit(UserValidation rule, User user,
+                                                       Invalid timedOut, long timeoutNanos) {
+        CompletableFuture<ValidationResult> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(rule.apply(user));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        if (timedOut != null) {
+            result.completeOnTimeout(timedOut, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
+        // Timeout or cancellation: stop the rule; a no-op once it has returned
+        result.whenComplete((value, error) -> task.cancel(true));
+        return result;
+    }
+
+    // ================== Combinators ==================
+
+    /**
+     * Runs operands concurrently and completes with the first failure in declaration order.
+     * Backs {@link AsyncUserValidation#all(AsyncUserValidation...)}.
+     */
+    static CompletableFuture<ValidationResult> all(AsyncUserValidation[] operands, User user) {
+        int count = operands.length;
+        CompletableFuture<ValidationResult> result = new CompletableFuture<>();
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        CompletableFuture<ValidationResult>[] parts = new CompletableFuture[count];
+        Object lock = new Object();
+        ValidationResult[] outcomes = new ValidationResult[count];
+        Throwable[] errors = new Throwable[count];
+        int[] next = {0}; // Operands before next have passed
+
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<ValidationResult> part;
+            try {
+                part = operands[i].apply(user);
+            } catch (Throwable e) {
+                part = new CompletableFuture<>();
+                part.completeExceptionally(e);
+            }
+            parts[i] = part;
+        }
+
+        // Cancelling or completing the result stops whatever is still running
+        result.whenComplete((value, error) -> cancelFrom(parts, 0));
+
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            parts[i].whenComplete((value, error) -> {
+                synchronized (lock) {
+                    if (result.isDone()) {
+                        return;
+                    }
+                    if (error != null) {
+                        errors[index] = error;
+                    } else if (value == null) {
+                        errors[index] = new IllegalStateException("Validation returned null");
+                    } else {
+                        outcomes[index] = value;
+                    }
+                    boolean failed = errors[index] != null || !value.isValid();
+                    if (failed) {
+                        // Later operands can no longer change the result
+                        cancelFrom(parts, index + 1);
+                    }
+
+                    // Resolve in declaration order
+                    while (next[0] < count) {
+                        int j = next[0];
+                        if (errors[j] != null) {
+                            result.completeExceptionally(errors[j]);
+                            return;
+                        }
+                        if (outcomes[j] == null) {
+                            return;
+                        }
+                        if (!outcomes[j].isValid()) {
+                            result.complete(outcomes[j]);
+                            return;
+                        }
+                        next[0]++;
+                    }
+                    result.complete(Valid.INSTANCE);
+                }
+            });
+        }
+        return result;
+    }
+
+    private static void cancelFrom(CompletableFuture<ValidationResult>[] parts, int from) {
+        for (int i = from; i < parts.length; i++) {
+            parts[i].cancel(true);
+        }
+    }
+
+    // ================== Lifecycle ==================
+
+    /**
+     * Stops accepting rules. Rules already running are left to finish or time out.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -19,6 +19,25 @@ public class BasicUser extends User {
         super(username, email, password, age);
     }
 
+    /**
+     * Creates a new BasicUser from a password given as an array, so no string of it is ever made.
+     *
+     * @param username the user's name
+     * @param email    the user's email
+     * @param password the user's password; zeroed after hashing
+     * @param age      the user's age
+     */
+    public BasicUser(String username, String email, char[] password, int age) {
+        super(username, email, password, age);
+    }
+
+    /**
+     * Creates a BasicUser from an already hashed password, for stores that keep credentials.
+     */
+    BasicUser(String username, String email, HashedPassword password, int age) {
+        super(username, email, password, age);
+    }
+
 
 
 
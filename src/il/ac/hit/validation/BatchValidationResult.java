@@ -0,0 +1,259 @@
+package il.ac.hit.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact result of validating many users at once.
+ * <p>
+ * Instead of one {@link ValidationResult} per record, the outcome is stored as a bitset
+ * with one bit per record (set when the record failed), plus one small reason index per
+ * failed record pointing into a table of the distinct failure reasons.
+ * Instances are immutable.
+ */
+public final class BatchValidationResult {
+
+    private final int size;
+    private final long[] failedWords;
+    private final int[] failuresBeforeWord;
+    private final int[] reasonIndexes;
+    private final List<String> reasons;
+
+    private BatchValidationResult(int size, long[] failedWords, int[] reasonIndexes, List<String> reasons) {
+        this.size = size;
+        this.failedWords = failedWords;
+        this.reasonIndexes = reasonIndexes;
+        this.reasons = reasons;
+
+        // Rank directory: number of failures before each word, for O(1) reason lookup
+        this.failuresBeforeWord = new int[failedWords.length];
+        int failures = 0;
+        for (int i = 0; i < failedWords.length; i++) {
+            failuresBeforeWord[i] = failures;
+            failures += Long.bitCount(failedWords[i]);
+        }
+    }
+
+    // ================== Queries ==================
+
+    /**
+     * Gets the number of validated records.
+     * @return the number of records
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of records that failed validation.
+     * @return the number of failed records
+     */
+    public int failureCount() {
+        return reasonIndexes.length;
+    }
+
+    /**
+     * Indicates whether every record passed validation.
+     * @return true if no record failed
+     */
+    public boolean allValid() {
+        return reasonIndexes.length == 0;
+    }
+
+    /**
+     * Indicates whether the record at the given index passed validation.
+     *
+     * @param index the record index, in input order
+     * @return true if the record is valid
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public boolean isValid(int index) {
+        checkIndex(index);
+        return (failedWords[index >>> 6] & (1L << index)) == 0;
+    }
+
+    /**
+     * Gets the index of the failure reason of a record in {@link #getReasons()}.
+     *
+     * @param index the record index, in input order
+     * @return the reason index, or -1 if the record is valid
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public int getReasonIndex(int index) {
+        checkIndex(index);
+        int word = index >>> 6;
+        long bit = 1L << index;
+        if ((failedWords[word] & bit) == 0) {
+            return -1;
+        }
+        int rank = failuresBeforeWord[word] + Long.bitCount(failedWords[word] & (bit - 1));
+        return reasonIndexes[rank];
+    }
+
+    /**
+     * Gets the failure reason of a record.
+     *
+     * @param index the record index, in input order
+     * @return the reason, or null if the record is valid
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public String getReasonOrNull(int index) {
+        int reasonIndex = getReasonIndex(index);
+        return reasonIndex < 0 ? null : reasons.get(reasonIndex);
+    }
+
+    /**
+     * Gets the distinct failure reasons, in order of first occurrence.
+     * @return an unmodifiable list of reasons
+     */
+    public List<String> getReasons() {
+        return reasons;
+    }
+
+    /**
+     * Finds the next failed record at or after the given index.
+     * Typical use: {@code for (int i = r.nextFailure(0); i >= 0; i = r.nextFailure(i + 1))}.
+     *
+     * @param fromIndex the index to start searching from
+     * @return the index of the next failed record, or -1 if there is none
+     */
+    public int nextFailure(int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex >= size) {
+            return -1;
+        }
+        int word = fromIndex >>> 6;
+        long bits = failedWords[word] & (-1L << fromIndex);
+        while (bits == 0) {
+            if (++word == failedWords.length) {
+                return -1;
+            }
+            bits = failedWords[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    @Override
+    public String toString() {
+        return "BatchValidationResult{size=" + size + ", failures=" + failureCount() + ", reasons=" + reasons + "}";
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for " + size + " records");
+        }
+    }
+
+    // ================== Building ==================
+
+    /**
+     * Collects results of a contiguous range of records.
+     * <p>
+     * A collector writes failure bits for its own records only. When collectors start at
+     * multiples of 64 they own whole words, so several of them can share one bitset
+     * and fill it concurrently.
+     */
+    static final class Collector {
+        private final int start;
+        private long[] words;
+        private int count;
+        private int[] reasonIds = new int[16];
+        private int failures;
+        private final List<String> localReasons = new ArrayList<>();
+        private final Map<String, Integer> localReasonIds = new HashMap<>();
+
+        /**
+         * Creates a collector for records starting at {@code start}.
+         *
+         * @param words the shared bitset, or null to let the collector grow its own
+         * @param start the index of the first record; a multiple of 64 when the bitset is shared
+         */
+        Collector(long[] words, int start) {
+            this.words = words != null ? words : new long[1];
+            this.start = start;
+        }
+
+        /**
+         * Records the result of the next record.
+         * @param result the validation result of that record
+         */
+        void add(ValidationResult result) {
+            int index = start + count++;
+            if (result.isValid()) {
+                return;
+            }
+
+            int word = index >>> 6;
+            if (word >= words.length) {
+                words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+            }
+            words[word] |= 1L << index;
+
+            String reason = result.getReasonOrNull();
+            Integer id = localReasonIds.get(reason);
+            if (id == null) {
+                id = localReasons.size();
+                localReasons.add(reason);
+                localReasonIds.put(reason, id);
+            }
+            if (failures == reasonIds.length) {
+                reasonIds = Arrays.copyOf(reasonIds, failures * 2);
+            }
+            reasonIds[failures++] = id;
+        }
+
+        /**
+         * Builds the result from a single collector that started at index 0.
+         * @return the batch result
+         */
+        BatchValidationResult build() {
+            return merge(Collections.singletonList(this), words, count);
+        }
+
+        /**
+         * Builds the result from consecutive collectors sharing one bitset.
+         *
+         * @param collectors the collectors, in record order
+         * @param words the shared bitset
+         * @param size the total number of records
+         * @return the batch result
+         */
+        static BatchValidationResult merge(List<Collector> collectors, long[] words, int size) {
+            int totalFailures = 0;
+            for (Collector collector : collectors) {
+                totalFailures += collector.failures;
+            }
+
+            // === Remap local reason ids to one shared reason table ===
+            int[] reasonIndexes = new int[totalFailures];
+            List<String> reasons = new ArrayList<>();
+            Map<String, Integer> reasonIds = new HashMap<>();
+            int position = 0;
+            for (Collector collector : collectors) {
+                int[] remap = new int[collector.localReasons.size()];
+                for (int i = 0; i < remap.length; i++) {
+                    String reason = collector.localReasons.get(i);
+                    Integer id = reasonIds.get(reason);
+                    if (id == null) {
+                        id = reasons.size();
+                        reasons.add(reason);
+                        reasonIds.put(reason, id);
+                    }
+                    remap[i] = id;
+                }
+                for (int i = 0; i < collector.failures; i++) {
+                    reasonIndexes[position++] = remap[collector.reasonIds[i]];
+                }
+            }
+
+            long[] trimmed = Arrays.copyOf(words, (size + 63) >>> 6);
+            return new BatchValidationResult(size, trimmed, reasonIndexes, Collections.unmodifiableList(reasons));
+        }
+    }
+}
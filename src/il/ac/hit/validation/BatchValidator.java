@@ -0,0 +1,104 @@
+package il.ac.hit.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Bulk validation behind {@link UserValidation#validateAll(User[])} and its overloads.
+ */
+final class BatchValidator {
+
+    /** Smallest number of records validated by one fork/join task; a multiple of 64. */
+    private static final int MIN_CHUNK = 1024;
+
+    /** Number of chunks created per worker thread, for load balancing. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private BatchValidator() {
+    }
+
+    /**
+     * Validates records one after another on the calling thread.
+     *
+     * @param validation the validation to apply
+     * @param users the records, in order
+     * @return the batch result
+     */
+    static BatchValidationResult validate(UserValidation validation, Iterable<User> users) {
+        BatchValidationResult.Collector collector = new BatchValidationResult.Collector(null, 0);
+        for (User user : users) {
+            collector.add(validation.apply(user));
+        }
+        return collector.build();
+    }
+
+    /**
+     * Validates an array, splitting it into chunks that run on the given pool.
+     *
+     * @param validation the validation to apply; must be thread-safe
+     * @param users the records, in order
+     * @param pool the pool to run on
+     * @return the batch result
+     */
+    static BatchValidationResult validateParallel(UserValidation validation, User[] users, ForkJoinPool pool) {
+        long[] words = new long[(users.length + 63) >>> 6];
+
+        // Chunks are multiples of 64 records, so every task owns whole bitset words
+        int chunk = users.length / (pool.getParallelism() * CHUNKS_PER_THREAD);
+        chunk = Math.max(MIN_CHUNK, (chunk + 63) & ~63);
+
+        List<BatchValidationResult.Collector> collectors =
+                pool.invoke(new ValidateTask(validation, users, words, 0, users.length, chunk));
+        return BatchValidationResult.Collector.merge(collectors, words, users.length);
+    }
+
+    /**
+     * Validates {@code users[lo, hi)} and returns the collectors of its chunks in record order.
+     */
+    private static final class ValidateTask extends RecursiveTask<List<BatchValidationResult.Collector>> {
+        // Inherited from ForkJoinTask; tasks are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final transient UserValidation validation;
+        private final transient User[] users;
+        private final long[] words;
+        private final int lo;
+        private final int hi;
+        private final int chunk;
+
+        ValidateTask(UserValidation validation, User[] users, long[] words, int lo, int hi, int chunk) {
+            this.validation = validation;
+            this.users = users;
+            this.words = words;
+            this.lo = lo;
+            this.hi = hi;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected List<BatchValidationResult.Collector> compute() {
+            if (hi - lo <= chunk) {
+                BatchValidationResult.Collector collector = new BatchValidationResult.Collector(words, lo);
+                for (int i = lo; i < hi; i++) {
+                    collector.add(validation.apply(users[i]));
+                }
+                List<BatchValidationResult.Collector> result = new ArrayList<>(1);
+                result.add(collector);
+                return result;
+            }
+
+            // Split on a chunk boundary so both halves start on a word boundary
+            int chunks = (hi - lo + chunk - 1) / chunk;
+            int mid = lo + (chunks / 2) * chunk;
+            ValidateTask left = new ValidateTask(validation, users, words, lo, mid, chunk);
+            ValidateTask right = new ValidateTask(validation, users, words, mid, hi, chunk);
+            left.fork();
+            List<BatchValidationResult.Collector> rightResult = right.compute();
+            List<BatchValidationResult.Collector> leftResult = left.join();
+            leftResult.addAll(rightResult);
+            return leftResult;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package il.ac.hit.validation;
+
+/**
+ * Eviction policy of a {@link CachedValidation}.
+ */
+public enum CachePolicy {
+
+    /** Evicts the least recently used entry. */
+    LRU,
+
+    /**
+     * Window TinyLFU: new entries enter a small LRU window, and leave it for the main
+     * area only if they have been seen more often than the entry they would evict.
+     * Keeps frequently validated users cached through bursts of one-off users.
+     */
+    TINY_LFU
+}
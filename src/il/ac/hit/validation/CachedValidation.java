@@ -0,0 +1,277 @@
+package il.ac.hit.validation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A validation decorator that memoizes results by user fingerprint.
+ * <p>
+ * Built by {@link UserValidation#cached(int, CachePolicy)}. Results are keyed by the
+ * fields a validation can read (see {@link ValidationCacheKey}); passwords are only
+ * kept as a keyed hash of their stored credential. Changing a user through a setter changes its key, so
+ * stale results are never returned and simply age out of the cache.
+ * <p>
+ * The wrapped validation must be a pure function of those fields.
+ * Instances are thread-safe; the cache is guarded by a single lock.
+ */
+public final class CachedValidation implements UserValidation {
+
+    /** Share of the capacity used as admission window by {@link CachePolicy#TINY_LFU}. */
+    private static final double WINDOW_RATIO = 0.01;
+
+    private final UserValidation delegate;
+    private final CachePolicy policy;
+    private final int maxEntries;
+
+    // LRU: everything lives in main. TinyLFU: new entries enter window first.
+    private final LinkedHashMap<ValidationCacheKey, ValidationResult> window;
+    private final LinkedHashMap<ValidationCacheKey, ValidationResult> main;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs a cache in front of a validation.
+     *
+     * @param delegate the validation whose results are cached
+     * @param maxEntries the maximum number of cached results
+     * @param policy the eviction policy
+     * @throws IllegalArgumentException if delegate or policy is null, or maxEntries is not positive
+     */
+    CachedValidation(UserValidation delegate, int maxEntries, CachePolicy policy) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Cache policy cannot be null");
+        }
+        this.delegate = delegate;
+        this.policy = policy;
+        this.maxEntries = maxEntries;
+
+        if (policy == CachePolicy.TINY_LFU && maxEntries > 1) {
+            this.windowCapacity = Math.max(1, (int) (maxEntries * WINDOW_RATIO));
+            this.sketch = new FrequencySketch(maxEntries);
+        } else {
+            this.windowCapacity = 0;
+            this.sketch = null;
+        }
+        this.mainCapacity = maxEntries - windowCapacity;
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.main = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public ValidationResult apply(User user) {
+        ValidationCacheKey key = ValidationCacheKey.of(user);
+
+        synchronized (this) {
+            if (sketch != null) {
+                sketch.increment(key);
+            }
+            ValidationResult cached = main.get(key);
+            if (cached == null && windowCapacity > 0) {
+                cached = window.get(key);
+            }
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+
+        // Validate outside the lock; concurrent misses on the same key may both validate
+        misses.increment();
+        ValidationResult result = delegate.apply(user);
+        synchronized (this) {
+            if (windowCapacity > 0) {
+                admitToWindow(key, result);
+            } else {
+                main.put(key, result);
+                evictOverflow(main, mainCapacity);
+            }
+        }
+        return result;
+    }
+
+    // ================== Eviction ==================
+
+    private void evictOverflow(LinkedHashMap<ValidationCacheKey, ValidationResult> area, int capacity) {
+        Iterator<ValidationCacheKey> eldest = area.keySet().iterator();
+        while (area.size() > capacity) {
+            eldest.next();
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * TinyLFU admission: entries overflowing the window replace the main area's LRU victim
+     * only if they are estimated to be used more often.
+     */
+    private void admitToWindow(ValidationCacheKey key, ValidationResult result) {
+        window.put(key, result);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+
+        Iterator<Map.Entry<ValidationCacheKey, ValidationResult>> windowEldest = window.entrySet().iterator();
+        Map.Entry<ValidationCacheKey, ValidationResult> candidate = windowEldest.next();
+        windowEldest.remove();
+
+        if (main.size() < mainCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        Iterator<ValidationCacheKey> mainEldest = main.keySet().iterator();
+        ValidationCacheKey victim = mainEldest.next();
+        if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim)) {
+            mainEldest.remove();
+            main.put(candidate.getKey(), candidate.getValue());
+        }
+        evictions.increment();
+    }
+
+    // ================== Management ==================
+
+    /**
+     * Removes every cached result. Statistics are kept.
+     */
+    public synchronized void invalidateAll() {
+        window.clear();
+        main.clear();
+    }
+
+    /**
+     * Gets the number of cached results.
+     * @return the current size
+     */
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    /**
+     * Gets the maximum number of cached results.
+     * @return the capacity
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Gets the eviction policy.
+     * @return the policy
+     */
+    public CachePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gets the number of validations answered from the cache.
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of validations that ran the wrapped validation.
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of results evicted or rejected for lack of space.
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the share of validations answered from the cache.
+     * @return the hit rate between 0 and 1, or 0 if nothing was validated yet
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CachedValidation{policy=" + policy + ", size=" + size() + "/" + maxEntries
+                + ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+    }
+
+    // ================== Frequency sketch ==================
+
+    /**
+     * Count-min sketch of recent key frequencies with periodic halving, so old
+     * popularity fades. Not thread-safe; guarded by the cache lock.
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int width = Integer.highestOneBit(Math.max(16, maxEntries - 1) << 1);
+            this.table = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * maxEntries;
+        }
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            for (int row = 0; row < DEPTH; row++) {
+                int index = indexOf(hash, row);
+                if (table[row][index] < MAX_COUNT) {
+                    table[row][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                halve();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void halve() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package il.ac.hit.validation;
+
+/**
+ * Single-pass character-class summary of a string, packed into a {@code long}.
+ * <p>
+ * The low 32 bits hold class flags, the high 32 bits hold the string length.
+ * {@link User} computes a profile of its email and password whenever they change,
+ * and the built-in password and email rules read the profile instead of scanning
+ * the string again. ASCII characters are classified through a lookup table; other
+ * characters fall back to {@link Character}.
+ */
+final class CharClassProfile {
+
+    // ================== Flags ==================
+
+    /** At least one letter. */
+    static final int HAS_LETTER = 1;
+    /** At least one digit. */
+    static final int HAS_DIGIT = 1 << 1;
+    /** At least one upper case letter. */
+    static final int HAS_UPPER = 1 << 2;
+    /** At least one lower case letter. */
+    static final int HAS_LOWER = 1 << 3;
+    /** At least one dollar sign ('$'). */
+    static final int HAS_DOLLAR = 1 << 4;
+    /** At least one at sign ('@'). */
+    static final int HAS_AT = 1 << 5;
+    /** At least one character outside ASCII. */
+    static final int HAS_NON_ASCII = 1 << 6;
+    /** Every character is a letter or a digit, as per {@link Character#isLetterOrDigit(char)}. */
+    static final int ALL_LETTERS_OR_DIGITS = 1 << 7;
+    /** The string ends with "il". */
+    static final int ENDS_WITH_IL = 1 << 8;
+
+    private static final int LETTER_OR_DIGIT = HAS_LETTER | HAS_DIGIT;
+
+    /** Classes of every ASCII character, indexed by char value. */
+    private static final short[] ASCII_CLASSES = new short[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            ASCII_CLASSES[c] = HAS_LETTER | HAS_LOWER;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            ASCII_CLASSES[c] = HAS_LETTER | HAS_UPPER;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            ASCII_CLASSES[c] = HAS_DIGIT;
+        }
+        ASCII_CLASSES['$'] = HAS_DOLLAR;
+        ASCII_CLASSES['@'] = HAS_AT;
+    }
+
+    private CharClassProfile() {
+    }
+
+    /**
+     * Classifies every character of a string in one pass.
+     *
+     * @param value the string to classify, not null
+     * @return the packed profile
+     */
+    static long of(String value) {
+        int length = value.length();
+        int seen = 0;
+        boolean lettersOrDigitsOnly = true;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            int classes = c < 128 ? ASCII_CLASSES[c] : classifyNonAscii(c);
+            seen |= classes;
+            lettersOrDigitsOnly &= (classes & LETTER_OR_DIGIT) != 0;
+        }
+
+        if (lettersOrDigitsOnly) {
+            seen |= ALL_LETTERS_OR_DIGITS;
+        }
+        if (length >= 2 && value.charAt(length - 2) == 'i' && value.charAt(length - 1) == 'l') {
+            seen |= ENDS_WITH_IL;
+        }
+        return ((long) length << 32) | (seen & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Classifies every character of a char array in one pass; same result as for the equal string.
+     * Used for passwords that are never turned into a string.
+     *
+     * @param value the characters to classify, not null
+     * @return the packed profile
+     */
+    static long of(char[] value) {
+        int length = value.length;
+        int seen = 0;
+        boolean lettersOrDigitsOnly = true;
+
+        for (char c : value) {
+            int classes = c < 128 ? ASCII_CLASSES[c] : classifyNonAscii(c);
+            seen |= classes;
+            lettersOrDigitsOnly &= (classes & LETTER_OR_DIGIT) != 0;
+        }
+
+        if (lettersOrDigitsOnly) {
+            seen |= ALL_LETTERS_OR_DIGITS;
+        }
+        if (length >= 2 && value[length - 2] == 'i' && value[length - 1] == 'l') {
+            seen |= ENDS_WITH_IL;
+        }
+        return ((long) length << 32) | (seen & 0xFFFFFFFFL);
+    }
+
+    private static int classifyNonAscii(char c) {
+        int classes = HAS_NON_ASCII;
+        if (Character.isLetter(c)) {
+            classes |= HAS_LETTER;
+            if (Character.isUpperCase(c)) {
+                classes |= HAS_UPPER;
+            } else if (Character.isLowerCase(c)) {
+                classes |= HAS_LOWER;
+            }
+        } else if (Character.isDigit(c)) {
+            classes |= HAS_DIGIT;
+        }
+        return classes;
+    }
+
+    /**
+     * Checks whether a profile has every given flag.
+     *
+     * @param profile a packed profile
+     * @param flags one or more flags
+     * @return true if all flags are set
+     */
+    static boolean has(long profile, int flags) {
+        return ((int) profile & flags) == flags;
+    }
+
+    /**
+     * Gets the length of the profiled string.
+     *
+     * @param profile a packed profile
+     * @return the string length
+     */
+    static int length(long profile) {
+        return (int) (profile >>> 32);
+    }
+}
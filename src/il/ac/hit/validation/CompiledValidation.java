@@ -0,0 +1,278 @@
+package il.ac.hit.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A validation compiled from a tree of {@link UserValidation} combinators into a flat program.
+ * <p>
+ * The program is a pair of arrays (opcodes and operands). Leaf rules are evaluated by index,
+ * AND/OR/ALL/NONE short-circuit through forward jumps, and XOR remembers the validity of its
+ * first side in a bit of a local flag word. The whole tree runs in one loop instead of a chain
+ * of nested lambdas, while producing exactly the same results as the tree it was compiled from.
+ * <p>
+ * Instances are immutable and thread-safe as long as the leaf rules are.
+ */
+final class CompiledValidation implements UserValidation {
+
+    // ================== Opcodes ==================
+
+    /** Evaluate leaf {@code operand} into the result register. */
+    private static final byte EVAL = 0;
+    /** Jump to {@code operand} if the result register is invalid. */
+    private static final byte JUMP_IF_INVALID = 1;
+    /** Jump to {@code operand} if the result register is valid. */
+    private static final byte JUMP_IF_VALID = 2;
+    /** Jump to {@code operand} unconditionally. */
+    private static final byte JUMP = 3;
+    /** Store the validity of the result register in flag bit {@code operand}. */
+    private static final byte SAVE_FLAG = 4;
+    /** Set the result register to the XOR of flag bit {@code operand} and its own validity. */
+    private static final byte XOR_FLAG = 5;
+    /** Set the result register to valid. */
+    private static final byte SET_VALID = 6;
+    /** Set the result register to the NONE failure. */
+    private static final byte SET_NONE_FAILED = 7;
+
+    /** Nested XOR depth supported by the flag word. */
+    private static final int MAX_XOR_DEPTH = Long.SIZE;
+
+    private final UserValidation source;
+    private final UserValidation[] leaves;
+    private final byte[] opcodes;
+    private final int[] operands;
+
+    private CompiledValidation(UserValidation source, UserValidation[] leaves, byte[] opcodes, int[] operands) {
+        this.source = source;
+        this.leaves = leaves;
+        this.opcodes = opcodes;
+        this.operands = operands;
+    }
+
+    /**
+     * Compiles a validation tree. Compiled validations found in the tree are inlined.
+     *
+     * @param validation the root of the tree
+     * @return the compiled validation
+     * @throws IllegalArgumentException if XORs are nested more than 64 levels deep
+     */
+    static CompiledValidation compile(UserValidation validation) {
+        if (validation instanceof CompiledValidation) {
+            return (CompiledValidation) validation;
+        }
+        Compiler compiler = new Compiler();
+        compiler.emit(validation, 0);
+        compiler.threadJumps();
+        return new CompiledValidation(validation,
+                compiler.leaves.toArray(new UserValidation[0]),
+                Arrays.copyOf(compiler.opcodes, compiler.length),
+                Arrays.copyOf(compiler.operands, compiler.length));
+    }
+
+    /**
+     * Gets the validation this program was compiled from.
+     * @return the source validation
+     */
+    UserValidation getSource() {
+        return source;
+    }
+
+    @Override
+    public ValidationResult apply(User user) {
+        ValidationResult result = null;
+        long flags = 0L;
+        int pc = 0;
+        int end = opcodes.length;
+
+        while (pc < end) {
+            int operand = operands[pc];
+            switch (opcodes[pc]) {
+                case EVAL:
+                    result = leaves[operand].apply(user);
+                    pc++;
+                    break;
+                case JUMP_IF_INVALID:
+                    pc = result.isValid() ? pc + 1 : operand;
+                    break;
+                case JUMP_IF_VALID:
+                    pc = result.isValid() ? operand : pc + 1;
+                    break;
+                case JUMP:
+                    pc = operand;
+                    break;
+                case SAVE_FLAG:
+                    if (result.isValid()) {
+                        flags |= 1L << operand;
+                    } else {
+                        flags &= ~(1L << operand);
+                    }
+                    pc++;
+                    break;
+                case XOR_FLAG:
+                    boolean first = (flags & (1L << operand)) != 0;
+                    result = first ^ result.isValid()
+                            ? Valid.INSTANCE
+                            : CompositeValidation.XOR_FAILED;
+                    pc++;
+                    break;
+                case SET_VALID:
+                    result = Valid.INSTANCE;
+                    pc++;
+                    break;
+                case SET_NONE_FAILED:
+                    result = CompositeValidation.NONE_FAILED;
+                    pc++;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode at " + pc);
+            }
+        }
+        return result;
+    }
+
+    // ================== Compiler ==================
+
+    /**
+     * Emits the program for a validation tree in a single depth-first pass.
+     */
+    private static final class Compiler {
+        private final List<UserValidation> leaves = new ArrayList<>();
+        private final Map<UserValidation, Integer> leafIndexes = new IdentityHashMap<>();
+        private byte[] opcodes = new byte[16];
+        private int[] operands = new int[16];
+        private int length;
+
+        void emit(UserValidation validation, int xorDepth) {
+            if (validation instanceof CompiledValidation) {
+                validation = ((CompiledValidation) validation).getSource();
+            }
+            if (!(validation instanceof CompositeValidation)) {
+                emitLeaf(validation);
+                return;
+            }
+
+            CompositeValidation composite = (CompositeValidation) validation;
+            UserValidation[] children = composite.getOperands();
+            switch (composite.getKind()) {
+                case AND: {
+                    emit(children[0], xorDepth);
+                    int skip = emitJump(JUMP_IF_INVALID);
+                    emit(children[1], xorDepth);
+                    patch(skip);
+                    break;
+                }
+                case OR: {
+                    emit(children[0], xorDepth);
+                    int skip = emitJump(JUMP_IF_VALID);
+                    emit(children[1], xorDepth);
+                    patch(skip);
+                    break;
+                }
+                case XOR: {
+                    if (xorDepth >= MAX_XOR_DEPTH) {
+                        throw new IllegalArgumentException("XOR validations are nested too deeply to compile");
+                    }
+                    emit(children[0], xorDepth);
+                    emitOp(SAVE_FLAG, xorDepth);
+                    emit(children[1], xorDepth + 1);
+                    emitOp(XOR_FLAG, xorDepth);
+                    break;
+                }
+                case ALL: {
+                    int[] exits = new int[children.length];
+                    for (int i = 0; i < children.length; i++) {
+                        emit(children[i], xorDepth);
+                        exits[i] = emitJump(JUMP_IF_INVALID);
+                    }
+                    emitOp(SET_VALID, 0);
+                    for (int exit : exits) {
+                        patch(exit);
+                    }
+                    break;
+                }
+                case NONE: {
+                    int[] failures = new int[children.length];
+                    for (int i = 0; i < children.length; i++) {
+                        emit(children[i], xorDepth);
+                        failures[i] = emitJump(JUMP_IF_VALID);
+                    }
+                    emitOp(SET_VALID, 0);
+                    int done = emitJump(JUMP);
+                    for (int failure : failures) {
+                        patch(failure);
+                    }
+                    emitOp(SET_NONE_FAILED, 0);
+                    patch(done);
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown composite kind: " + composite.getKind());
+            }
+        }
+
+        private void emitLeaf(UserValidation leaf) {
+            // Field annotations only matter to incremental validators; run the rule itself
+            if (leaf instanceof FieldValidation) {
+                leaf = ((FieldValidation) leaf).getDelegate();
+            }
+            Integer index = leafIndexes.get(leaf);
+            if (index == null) {
+                index = leaves.size();
+                leaves.add(leaf);
+                leafIndexes.put(leaf, index);
+            }
+            emitOp(EVAL, index);
+        }
+
+        private int emitJump(byte opcode) {
+            emitOp(opcode, -1);
+            return length - 1;
+        }
+
+        /** Points the jump at {@code pc} to the next instruction to be emitted. */
+        private void patch(int pc) {
+            operands[pc] = length;
+        }
+
+        private void emitOp(byte opcode, int operand) {
+            if (length == opcodes.length) {
+                opcodes = Arrays.copyOf(opcodes, length * 2);
+                operands = Arrays.copyOf(operands, length * 2);
+            }
+            opcodes[length] = opcode;
+            operands[length] = operand;
+            length++;
+        }
+
+        /**
+         * Retargets jumps that land on another jump whose outcome is already known,
+         * so nested AND/OR chains exit in one hop. All jumps point forward, so this terminates.
+         */
+        void threadJumps() {
+            for (int pc = 0; pc < length; pc++) {
+                byte opcode = opcodes[pc];
+                if (opcode != JUMP && opcode != JUMP_IF_INVALID && opcode != JUMP_IF_VALID) {
+                    continue;
+                }
+                int target = operands[pc];
+                while (target < length) {
+                    byte next = opcodes[target];
+                    if (next == JUMP || (next == opcode && opcode != JUMP)) {
+                        // Same condition still holds: follow the jump
+                        target = operands[target];
+                    } else if ((opcode == JUMP_IF_INVALID && next == JUMP_IF_VALID)
+                            || (opcode == JUMP_IF_VALID && next == JUMP_IF_INVALID)) {
+                        // Opposite condition is known to be false: fall through it
+                        target++;
+                    } else {
+                        break;
+                    }
+                }
+                operands[pc] = target;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package il.ac.hit.validation;
+
+/**
+ * A validation built by one of the {@link UserValidation} combinators.
+ * <p>
+ * Unlike a plain lambda, a composite keeps its operator and operands, so a tree of
+ * combinators can be inspected and flattened by {@link UserValidation#compile(UserValidation)}.
+ * Evaluating a composite directly walks the tree with the same semantics as the compiled form.
+ */
+final class CompositeValidation implements UserValidation {
+
+    /** Reason reported when both sides of an XOR agree. */
+    static final String XOR_FAILED_REASON = "XOR validation failed: both are either valid or invalid";
+
+    /** Reason reported when one of the validations of a NONE passes. */
+    static final String NONE_FAILED_REASON = "At least one validation passed when none should";
+
+    /** Shared XOR failure result. */
+    static final Invalid XOR_FAILED = new Invalid(XOR_FAILED_REASON);
+
+    /** Shared NONE failure result. */
+    static final Invalid NONE_FAILED = new Invalid(NONE_FAILED_REASON);
+
+    /**
+     * The logical operator of a composite.
+     */
+    enum Kind {
+        AND, OR, XOR, ALL, NONE
+    }
+
+    private final Kind kind;
+    private final UserValidation[] operands;
+
+    /**
+     * Constructs a composite of the given kind.
+     *
+     * @param kind the logical operator
+     * @param operands the operands, in evaluation order; not copied
+     */
+    CompositeValidation(Kind kind, UserValidation... operands) {
+        this.kind = kind;
+        this.operands = operands;
+    }
+
+    /**
+     * Gets the logical operator.
+     * @return the kind of this composite
+     */
+    Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets the operands in evaluation order.
+     * @return the operands; must not be modified
+     */
+    UserValidation[] getOperands() {
+        return operands;
+    }
+
+    @Override
+    public ValidationResult apply(User user) {
+        switch (kind) {
+            case AND: {
+                ValidationResult result = operands[0].apply(user);
+                return result.isValid() ? operands[1].apply(user) : result;
+            }
+            case OR: {
+                ValidationResult result = operands[0].apply(user);
+                return result.isValid() ? result : operands[1].apply(user);
+            }
+            case XOR: {
+                boolean first = operands[0].apply(user).isValid();
+                boolean second = operands[1].apply(user).isValid();
+                if (first ^ second) {
+                    return Valid.INSTANCE;
+                } else {
+                    return XOR_FAILED;
+                }
+            }
+            case ALL: {
+                for (UserValidation validation : operands) {
+                    ValidationResult result = validation.apply(user);
+                    if (!result.isValid()) {
+                        return result; // return first failure
+                    }
+                }
+                return Valid.INSTANCE;
+            }
+            case NONE: {
+                for (UserValidation validation : operands) {
+                    if (validation.apply(user).isValid()) {
+                        return NONE_FAILED;
+                    }
+                }
+                return Valid.INSTANCE;
+            }
+            default:
+                throw new IllegalStateException("Unknown composite kind: " + kind);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package il.ac.hit.validation;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A {@link User} that can be shared between threads and updated while others read it.
+ * <p>
+ * All fields live in one immutable state object. Readers load the current state with a single
+ * volatile read and never lock; setters build a new state and publish it with a
+ * compare-and-set, retrying if another update won the race (copy-on-write). A field and the
+ * character-class profile derived from it always come from the same state. Passwords are
+ * hashed before the swap, as in {@link User}, so a retry never hashes again.
+ * <p>
+ * Each getter sees the latest state on its own. Code that reads several fields and needs them
+ * to agree, such as a validation or a sort, should work on {@link #snapshot()}, which pins one
+ * state without copying it. Several fields can be changed as one step with
+ * {@link #update(String, String, String, int)}.
+ * <p>
+ * A copy of another user keeps that user's tier (see {@link #ConcurrentUser(User)}), so
+ * tier-keyed rules and caches treat it, and its snapshots, like the original.
+ */
+public final class ConcurrentUser extends User {
+
+    /** One immutable version of the user's fields. */
+    private static final class State {
+        final String username;
+        final String email;
+        final HashedPassword password;
+        final int age;
+        final long emailProfile;
+        final int version;
+
+        State(String username, String email, long emailProfile, HashedPassword password, int age, int version) {
+            this.username = username;
+            this.email = email;
+            this.emailProfile = emailProfile;
+            this.password = password;
+            this.age = age;
+            this.version = version;
+        }
+    }
+
+    private final AtomicReference<State> state;
+    private final Class<? extends User> tierClass;
+
+    // ================== Constructor ==================
+
+    /**
+     * Constructs a new {@code ConcurrentUser} with the specified details.
+     *
+     * @param username the user's username
+     * @param email the user's email
+     * @param password the user's password; only its salted hash is kept
+     * @param age the user's age
+     * @throws IllegalArgumentException if a field is invalid
+     */
+    public ConcurrentUser(String username, String email, String password, int age) {
+        checkUsername(username);
+        checkEmail(email);
+        checkAge(age);
+        this.state = new AtomicReference<>(new State(username, email, CharClassProfile.of(email),
+                HashedPassword.hash(password, username, PasswordHasher.FAST), age, 0));
+        this.tierClass = ConcurrentUser.class;
+    }
+
+    /**
+     * Constructs a {@code ConcurrentUser} holding the current fields of another user.
+     * The password hash is copied, not recomputed, and the copy keeps the tier of the
+     * original: a copy of a {@link PlatinumUser} is validated by the platinum rules.
+     *
+     * @param user the user to copy
+     * @throws IllegalArgumentException if user is null
+     */
+    public ConcurrentUser(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        // Read one consistent state when copying another ConcurrentUser
+        User source = user instanceof ConcurrentUser ? ((ConcurrentUser) user).snapshot() : user;
+        String username = source.getUsername();
+        String email = source.getEmail();
+        this.state = new AtomicReference<>(new State(username, email, CharClassProfile.of(email),
+                HashedPassword.of(source), source.getAge(), 0));
+        this.tierClass = source.getTierClass();
+    }
+
+    // ================== Getters ==================
+
+    @Override
+    public String getUsername() {
+        return state.get().username;
+    }
+
+    @Override
+    public String getEmail() {
+        return state.get().email;
+    }
+
+    @Override
+    public PasswordCredential getCredential() {
+        return state.get().password.credential;
+    }
+
+    @Override
+    public int getAge() {
+        return state.get().age;
+    }
+
+    @Override
+    long getEmailProfile() {
+        return state.get().emailProfile;
+    }
+
+    @Override
+    long getPasswordProfile() {
+        return state.get().password.profile;
+    }
+
+    @Override
+    boolean passwordEqualsUsername() {
+        return state.get().password.matchesUsername;
+    }
+
+    @Override
+    Class<? extends User> getTierClass() {
+        return tierClass;
+    }
+
+    /**
+     * Counts published states, so cache keys notice concurrent updates too.
+     */
+    @Override
+    int getModificationCount() {
+        return state.get().version;
+    }
+
+    /**
+     * Returns a read-only user pinned to the current state. Its getters all see the same
+     * version of the fields, however this user changes afterwards.
+     *
+     * @return the snapshot
+     */
+    public User snapshot() {
+        return new Snapshot(state.get(), tierClass);
+    }
+
+    // ================== Setters ==================
+
+    @Override
+    public void setUsername(String username) {
+        checkUsername(username);
+        publish(UserChange.USERNAME, s -> new State(username, s.email, s.emailProfile,
+                s.password.forUsername(username), s.age, s.version + 1));
+    }
+
+    @Override
+    public void setEmail(String email) {
+        checkEmail(email);
+        long profile = CharClassProfile.of(email);
+        publish(UserChange.EMAIL, s -> new State(s.username, email, profile, s.password, s.age, s.version + 1));
+    }
+
+    @Override
+    public void setPassword(String password) {
+        String username = getUsername();
+        publishPassword(HashedPassword.hash(password, username, PasswordHasher.FAST), username);
+    }
+
+    /**
+     * Sets the password, keeping only a salted hash. Whether it equals the username is
+     * checked against the username current when hashing starts, and again if the username
+     * changes before the new password is published.
+     */
+    @Override
+    public void setPassword(char[] password, PasswordHasher hasher) {
+        String username = getUsername();
+        publishPassword(HashedPassword.hash(password, username, hasher), username);
+    }
+
+    @Override
+    void restorePassword(HashedPassword password) {
+        publish(UserChange.PASSWORD, s -> new State(s.username, s.email, s.emailProfile,
+                password.forUsername(s.username), s.age, s.version + 1));
+    }
+
+    private void publishPassword(HashedPassword password, String hashedFor) {
+        publish(UserChange.PASSWORD, s -> new State(s.username, s.email, s.emailProfile,
+                s.username.equals(hashedFor) ? password : password.forUsername(s.username), s.age, s.version + 1));
+    }
+
+    @Override
+    public void setAge(int age) {
+        checkAge(age);
+        publish(UserChange.AGE, s -> new State(s.username, s.email, s.emailProfile, s.password, age, s.version + 1));
+    }
+
+    /**
+     * Replaces every field in one atomic step; readers see either all old or all new values.
+     *
+     * @param username the new username
+     * @param email the new email
+     * @param password the new password; only its salted hash is kept
+     * @param age the new age
+     * @throws IllegalArgumentException if a field is invalid; nothing is changed then
+     */
+    public void update(String username, String email, String password, int age) {
+        checkUsername(username);
+        checkEmail(email);
+        checkAge(age);
+        long emailProfile = CharClassProfile.of(email);
+        HashedPassword hashed = HashedPassword.hash(password, username, PasswordHasher.FAST);
+        publish(UserChange.ALL, s -> new State(username, email, emailProfile, hashed, age, s.version + 1));
+    }
+
+    /**
+     * Swaps in a state derived from the current one, retrying until no other update interferes.
+     */
+    private void publish(int fields, UnaryOperator<State> change) {
+        State current;
+        State next;
+        do {
+            current = state.get();
+            next = change.apply(current);
+        } while (!state.compareAndSet(current, next));
+        notifyListeners(fields);
+    }
+
+    // ================== Snapshot ==================
+
+    /**
+     * Read-only {@link User} over one fixed state.
+     */
+    private static final class Snapshot extends User {
+        private final State state;
+        private final Class<? extends User> tierClass;
+
+        Snapshot(State state, Class<? extends User> tierClass) {
+            this.state = state;
+            this.tierClass = tierClass;
+        }
+
+        @Override
+        public String getUsername() {
+            return state.username;
+        }
+
+        @Override
+        public String getEmail() {
+            return state.email;
+        }
+
+        @Override
+        public PasswordCredential getCredential() {
+            return state.password.credential;
+        }
+
+        @Override
+        public int getAge() {
+            return state.age;
+        }
+
+        @Override
+        long getEmailProfile() {
+            return state.emailProfile;
+        }
+
+        @Override
+        long getPasswordProfile() {
+            return state.password.profile;
+        }
+
+        @Override
+        boolean passwordEqualsUsername() {
+            return state.password.matchesUsername;
+        }
+
+        @Override
+        int getModificationCount() {
+            return state.version;
+        }
+
+        @Override
+        boolean isView() {
+            return true;
+        }
+
+        @Override
+        Class<? extends User> getTierClass() {
+            return tierClass;
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("User snapshots are read-only");
+        }
+
+        @Override
+        public void setEmail(String email) {
+            throw new UnsupportedOperationException("User snapshots are read-only");
+        }
+
+        @Override
+        public void setPassword(String password) {
+            throw new UnsupportedOperationException("User snapshots are read-only");
+        }
+
+        @Override
+        public void setPassword(char[] password, PasswordHasher hasher) {
+            throw new UnsupportedOperationException("User snapshots are read-only");
+        }
+
+        @Override
+        public void setAge(int age) {
+            throw new UnsupportedOperationException("User snapshots are read-only");
+        }
+    }
+}
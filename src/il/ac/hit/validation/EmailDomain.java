@@ -0,0 +1,190 @@
+package il.ac.hit.validation;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An interned email domain, such as {@code example.co.il}.
+ * <p>
+ * A population of users typically shares a few hundred domains. With interning switched on
+ * (see {@link #setInterning(boolean)}), {@link User#setEmail(String)} keeps only the local part
+ * of an email and points at the one shared {@code EmailDomain} instance of its domain, so the
+ * domain text is stored once. Each domain has a unique id, which makes domain checks integer
+ * comparisons (see {@link UserValidation#emailDomainIs(String)}).
+ * <p>
+ * The intern table holds domains weakly: a domain no user refers to any more is dropped, and
+ * interning it again later creates a new instance with a new id. Ids are never reused.
+ * The table is safe for concurrent use.
+ */
+public final class EmailDomain {
+
+    /** Table entry; drops itself from the table once its domain is collected. */
+    private static final class Ref extends WeakReference<EmailDomain> {
+        final String name;
+
+        Ref(EmailDomain domain) {
+            super(domain, QUEUE);
+            this.name = domain.name;
+        }
+    }
+
+    private static final ConcurrentHashMap<String, Ref> TABLE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<EmailDomain> QUEUE = new ReferenceQueue<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private static volatile boolean interning;
+
+    private final int id;
+    private final String name;
+    private final EmailDomain lowerCase;
+    private final String[] hierarchy;
+
+    private EmailDomain(String name) {
+        this.id = NEXT_ID.getAndIncrement();
+        this.name = name;
+        String lower = name.toLowerCase(Locale.ROOT);
+        if (lower.equals(name)) {
+            this.lowerCase = this;
+            this.hierarchy = hierarchyOf(lower);
+        } else {
+            this.lowerCase = of(lower);
+            this.hierarchy = lowerCase.hierarchy;
+        }
+    }
+
+    // ================== Interning ==================
+
+    /**
+     * Gets the interned instance of a domain, creating it if needed. Domains are interned
+     * exactly as written, so {@code Example.com} and {@code example.com} are two instances;
+     * use {@link #toLowerCase()} to compare them.
+     *
+     * @param name the domain, without the at sign
+     * @return the shared instance
+     * @throws IllegalArgumentException if name is null or empty
+     */
+    public static EmailDomain of(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Domain cannot be empty");
+        }
+        expungeStale();
+        while (true) {
+            Ref ref = TABLE.get(name);
+            EmailDomain domain = ref == null ? null : ref.get();
+            if (domain != null) {
+                return domain;
+            }
+            EmailDomain created = new EmailDomain(name);
+            Ref fresh = new Ref(created);
+            boolean installed = ref == null ? TABLE.putIfAbsent(name, fresh) == null : TABLE.replace(name, ref, fresh);
+            if (installed) {
+                return created;
+            }
+            // Another thread interned it first; use theirs
+        }
+    }
+
+    /**
+     * Gets the interned domain of an email.
+     *
+     * @param email an email
+     * @return the domain after the last at sign, or null if there is none
+     */
+    static EmailDomain ofEmail(String email) {
+        int at = email.lastIndexOf('@');
+        return at < 0 || at == email.length() - 1 ? null : of(email.substring(at + 1));
+    }
+
+    private static void expungeStale() {
+        Ref ref;
+        while ((ref = (Ref) QUEUE.poll()) != null) {
+            TABLE.remove(ref.name, ref);
+        }
+    }
+
+    /**
+     * Gets the number of domains currently interned, including ones that are no longer
+     * referenced but have not been collected yet.
+     * @return the table size
+     */
+    public static int internedCount() {
+        expungeStale();
+        return TABLE.size();
+    }
+
+    /**
+     * Tells whether {@link User#setEmail(String)} interns email domains.
+     * @return true if interning is on
+     */
+    public static boolean isInterning() {
+        return interning;
+    }
+
+    /**
+     * Switches interning of email domains on or off for emails set from now on.
+     * Users keep the form their email was stored in.
+     * @param enabled true to intern
+     */
+    public static void setInterning(boolean enabled) {
+        interning = enabled;
+    }
+
+    // ================== Accessors ==================
+
+    /**
+     * Gets the unique id of this instance.
+     * @return the id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the domain text.
+     * @return the domain, as interned
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the lower case form of this domain.
+     * @return the interned lower case domain; this instance if it already is lower case
+     */
+    public EmailDomain toLowerCase() {
+        return lowerCase;
+    }
+
+    /**
+     * The lower case domain followed by its parent domains, for example hit.ac.il, ac.il, il.
+     * Shared; must not be modified.
+     */
+    String[] getHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Lists a lower case domain and its parent domains.
+     */
+    static String[] hierarchyOf(String domain) {
+        if (domain.isEmpty()) {
+            return new String[0];
+        }
+        List<String> domains = new ArrayList<>();
+        domains.add(domain);
+        for (int dot = domain.indexOf('.'); dot >= 0 && dot < domain.length() - 1; dot = domain.indexOf('.', dot + 1)) {
+            domains.add(domain.substring(dot + 1));
+        }
+        return domains.toArray(new String[0]);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
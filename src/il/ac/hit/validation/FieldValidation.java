@@ -0,0 +1,76 @@
+package il.ac.hit.validation;
+
+/**
+ * A validation annotated with the user fields it reads, as {@link UserChange} bits.
+ * <p>
+ * The built-in rules and the tests of compiled {@link RuleExpression}s carry this annotation,
+ * so an {@link IncrementalValidator} can tell which rules a change can affect without being
+ * told. The annotation never changes the result; compiled programs evaluate the wrapped rule
+ * directly.
+ */
+final class FieldValidation implements UserValidation {
+
+    private final int fields;
+    private final UserValidation delegate;
+
+    /**
+     * Constructs a field-annotated validation.
+     *
+     * @param fields the {@link UserChange} bits of the fields the validation reads;
+     *               0 if its result never changes
+     * @param delegate the validation to run
+     */
+    FieldValidation(int fields, UserValidation delegate) {
+        this.fields = fields;
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gets the fields this validation reads.
+     * @return a combination of the {@link UserChange} field bits
+     */
+    int fields() {
+        return fields;
+    }
+
+    /**
+     * Gets the wrapped validation.
+     * @return the validation that computes the results
+     */
+    UserValidation getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Works out the fields a validation reads: annotated rules report their own, and
+     * combinators, compiled programs and hinted rules report those of the rules they run.
+     *
+     * @param validation any validation
+     * @return a combination of the {@link UserChange} field bits; {@link UserChange#ALL}
+     *         if some rule in it has no annotation
+     */
+    static int fieldsOf(UserValidation validation) {
+        if (validation instanceof FieldValidation) {
+            return ((FieldValidation) validation).fields;
+        }
+        if (validation instanceof HintedValidation) {
+            return fieldsOf(((HintedValidation) validation).getDelegate());
+        }
+        if (validation instanceof CompiledValidation) {
+            return fieldsOf(((CompiledValidation) validation).getSource());
+        }
+        if (validation instanceof CompositeValidation) {
+            int fields = 0;
+            for (UserValidation operand : ((CompositeValidation) validation).getOperands()) {
+                fields |= fieldsOf(operand);
+            }
+            return fields;
+        }
+        return UserChange.ALL;
+    }
+
+    @Override
+    public ValidationResult apply(User user) {
+        return delegate.apply(user);
+    }
+}
@@ -0,0 +1,125 @@
+package il.ac.hit.validation;
+
+import java.util.Arrays;
+
+/**
+ * A password as users keep it: the salted hash, plus the facts the built-in password rules
+ * need about the raw characters, worked out before they were zeroed. Immutable; used to
+ * hand a password between {@link User}, {@link ConcurrentUser} and the stores without
+ * hashing it again.
+ */
+final class HashedPassword {
+
+    final PasswordCredential credential;
+    final long profile;
+    final boolean matchesUsername;
+
+    HashedPassword(PasswordCredential credential, long profile, boolean matchesUsername) {
+        this.credential = credential;
+        this.profile = profile;
+        this.matchesUsername = matchesUsername;
+    }
+
+    /**
+     * Hashes a password and records its character-class profile and whether it equals the username.
+     *
+     * @param password the password; zeroed when this method returns, even on failure
+     * @param username the username to compare with, or null if there is none yet
+     * @param hasher the hasher, which sets the hash cost
+     * @return the hashed password
+     * @throws IllegalArgumentException if the password is null or blank, or hasher is null
+     */
+    static HashedPassword hash(char[] password, String username, PasswordHasher hasher) {
+        try {
+            if (password == null || isBlank(password)) {
+                throw new IllegalArgumentException("Password cannot be empty");
+            }
+            if (hasher == null) {
+                throw new IllegalArgumentException("Password hasher cannot be null");
+            }
+            return new HashedPassword(hasher.hash(password), CharClassProfile.of(password),
+                    username != null && contentEquals(username, password));
+        } finally {
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+
+    /**
+     * Hashes a password given as a string. Only a temporary array copy is hashed and zeroed;
+     * the string itself is not kept.
+     *
+     * @throws IllegalArgumentException if the password is null or blank, or hasher is null
+     */
+    static HashedPassword hash(String password, String username, PasswordHasher hasher) {
+        User.checkPassword(password);
+        return hash(password.toCharArray(), username, hasher);
+    }
+
+    /**
+     * Works out again whether the password equals a new username.
+     *
+     * @param username the new username, not null
+     * @return this, or a copy with the updated flag
+     */
+    HashedPassword forUsername(String username) {
+        boolean matches = matches(credential, profile, username);
+        return matches == matchesUsername ? this : new HashedPassword(credential, profile, matches);
+    }
+
+    /**
+     * Checks whether a hashed password equals a username. The profile, which holds the
+     * password's length and character classes, rules out most usernames without hashing;
+     * only a username with the same profile is checked against the credential.
+     *
+     * @param credential the password credential
+     * @param profile the character-class profile of the password
+     * @param username the username, not null
+     * @return true if the password equals the username
+     */
+    static boolean matches(PasswordCredential credential, long profile, String username) {
+        if (CharClassProfile.of(username) != profile) {
+            return false;
+        }
+        char[] candidate = username.toCharArray();
+        try {
+            return credential.verify(candidate);
+        } finally {
+            Arrays.fill(candidate, '\0');
+        }
+    }
+
+    /**
+     * Reads the stored password of a user.
+     *
+     * @throws IllegalArgumentException if the user holds no credential
+     */
+    static HashedPassword of(User user) {
+        PasswordCredential credential = user.getCredential();
+        if (credential == null) {
+            throw new IllegalArgumentException("User has no password credential");
+        }
+        return new HashedPassword(credential, user.getPasswordProfile(), user.passwordEqualsUsername());
+    }
+
+    private static boolean isBlank(char[] chars) {
+        for (char c : chars) {
+            if (c > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contentEquals(String value, char[] chars) {
+        if (value.length() != chars.length) {
+            return false;
+        }
+        int difference = 0;
+        for (int i = 0; i < chars.length; i++) {
+            difference |= value.charAt(i) ^ chars[i];
+        }
+        return difference == 0;
+    }
+}
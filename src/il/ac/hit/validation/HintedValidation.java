@@ -0,0 +1,76 @@
+package il.ac.hit.validation;
+
+/**
+ * A validation annotated with evaluation hints for cost-aware combinators.
+ * <p>
+ * Hints never change the result of the wrapped validation; they only tell
+ * combinators such as {@link UserValidation#adaptiveNone(UserValidation...)}
+ * which rules are worth trying first.
+ */
+final class HintedValidation implements UserValidation {
+
+    /** Relative cost assumed for validations without a hint. */
+    static final double DEFAULT_COST = 1.0;
+
+    /** Pass probability assumed for validations without a hint. */
+    static final double DEFAULT_PASS_RATE = 0.5;
+
+    private final UserValidation delegate;
+    private final double cost;
+    private final double passRate;
+
+    /**
+     * Constructs a hinted validation.
+     *
+     * @param delegate the validation to run
+     * @param cost the relative cost of one evaluation, must be positive
+     * @param passRate the expected probability of passing, between 0 and 1
+     * @throws IllegalArgumentException if delegate is null or a hint is out of range
+     */
+    HintedValidation(UserValidation delegate, double cost, double passRate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        if (!(cost > 0) || Double.isInfinite(cost)) {
+            throw new IllegalArgumentException("Cost must be a positive number");
+        }
+        if (!(passRate >= 0 && passRate <= 1)) {
+            throw new IllegalArgumentException("Pass rate must be between 0 and 1");
+        }
+        // Unwrap so hints replace each other instead of nesting
+        this.delegate = delegate instanceof HintedValidation ? ((HintedValidation) delegate).delegate : delegate;
+        this.cost = cost;
+        this.passRate = passRate;
+    }
+
+    /**
+     * Gets the relative cost hint of a validation.
+     * @param validation any validation
+     * @return its cost hint, or {@link #DEFAULT_COST} if it has none
+     */
+    static double costOf(UserValidation validation) {
+        return validation instanceof HintedValidation ? ((HintedValidation) validation).cost : DEFAULT_COST;
+    }
+
+    /**
+     * Gets the pass rate hint of a validation.
+     * @param validation any validation
+     * @return its pass rate hint, or {@link #DEFAULT_PASS_RATE} if it has none
+     */
+    static double passRateOf(UserValidation validation) {
+        return validation instanceof HintedValidation ? ((HintedValidation) validation).passRate : DEFAULT_PASS_RATE;
+    }
+
+    /**
+     * Gets the wrapped validation.
+     * @return the validation that computes the results
+     */
+    UserValidation getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public ValidationResult apply(User user) {
+        return delegate.apply(user);
+    }
+}
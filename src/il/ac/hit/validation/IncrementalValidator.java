@@ -0,0 +1,291 @@
+package il.ac.hit.validation;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the {@link ValidationReport} of tracked users up to date, re-running only the rules
+ * that a change can affect.
+ * <p>
+ * Every rule of the {@link RuleSet} declares the fields it reads, as {@link UserChange} bits.
+ * The result of every rule is cached per user; when fields change, only the rules that read
+ * one of them run again, and the report combines their new results with the cached ones.
+ * <p>
+ * Changes are read from a {@link UserChangeStream} by {@link #process(UserChangeStream.Subscription)}.
+ * Each call takes the pending events in batches and merges the events of one user within a
+ * batch, so a user edited many times while the validator was busy is re-validated once.
+ * If the subscription lost events, every tracked user is re-validated in full.
+ * <p>
+ * The built-in rules read these fields, and declare them, so {@link #of(RuleSet)} finds them
+ * without being told:
+ * <ul>
+ *     <li>{@code emailEndsWithIL}, {@code emailLengthBiggerThan10}: {@link UserChange#EMAIL}</li>
+ *     <li>{@code passwordLengthBiggerThan8}, {@code passwordIncludesLettersNumbersOnly},
+ *         {@code passwordIncludesDollarSign}: {@link UserChange#PASSWORD}</li>
+ *     <li>{@code passwordIsDifferentFromUsername}: {@link UserChange#PASSWORD} | {@link UserChange#USERNAME}</li>
+ *     <li>{@code ageBiggerThan18}: {@link UserChange#AGE}</li>
+ *     <li>{@code usernameLengthBiggerThan8}: {@link UserChange#USERNAME}</li>
+ * </ul>
+ * Rules written as {@link RuleExpression}s declare the fields their text reads, and
+ * combinations of declared rules the fields of their parts. Other rules count as reading
+ * every field; give their dependencies explicitly with {@link #of(RuleSet, int...)}.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * IncrementalValidator validator = IncrementalValidator.of(
+ *         RuleSet.of(new String[] {"email", "age"},
+ *                 new UserValidation[] {UserValidation.emailEndsWithIL(), UserValidation.ageBiggerThan18()}));
+ * UserChangeStream stream = new UserChangeStream(4096);
+ * UserChangeStream.Subscription changes = stream.subscribe();
+ * stream.watch(user);
+ * validator.track(user);
+ * user.setAge(30);
+ * validator.process(changes);                  // runs only the age rule
+ * ValidationReport report = validator.getReport(user);
+ * }</pre>
+ * Instances are thread-safe. Results reflect the user as it was when its rules last ran;
+ * a user changed meanwhile is re-validated by the next {@code process} call.
+ */
+public final class IncrementalValidator {
+
+    /** Number of events merged at most into one batch. */
+    static final int BATCH_SIZE = 1024;
+
+    /** Cached state of one tracked user. */
+    private static final class Entry {
+        final ValidationResult[] results;
+        long failureMask;
+        ValidationReport report;
+
+        Entry(int ruleCount) {
+            this.results = new ValidationResult[ruleCount];
+        }
+    }
+
+    private final RuleSet rules;
+    private final int[] dependencies;
+    private final Map<User, Entry> entries = new IdentityHashMap<>();
+    private final Map<User, Integer> batch = new IdentityHashMap<>();
+    private long evaluationCount;
+
+    private IncrementalValidator(RuleSet rules, int[] dependencies) {
+        this.rules = rules;
+        this.dependencies = dependencies;
+    }
+
+    // ================== Construction ==================
+
+    /**
+     * Creates a validator over a rule set.
+     *
+     * @param rules the rules
+     * @param dependencies for each rule, in id order, the {@link UserChange} bits of the fields it reads
+     * @return the validator
+     * @throws IllegalArgumentException if rules or dependencies is null, the lengths differ,
+     *                                  or a dependency has bits outside {@link UserChange#ALL}
+     */
+    public static IncrementalValidator of(RuleSet rules, int... dependencies) {
+        if (rules == null) {
+            throw new IllegalArgumentException("Rule set cannot be null");
+        }
+        if (dependencies == null || dependencies.length != rules.size()) {
+            throw new IllegalArgumentException("Every rule needs exactly one dependency mask");
+        }
+        for (int fields : dependencies) {
+            if ((fields & ~UserChange.ALL) != 0) {
+                throw new IllegalArgumentException("Unknown field bits: " + fields);
+            }
+        }
+        return new IncrementalValidator(rules, dependencies.clone());
+    }
+
+    /**
+     * Creates a validator over a rule set, working out the fields each rule reads from the
+     * rule itself: built-in rules and rule expressions declare them, and rules that do not
+     * are re-run on every change.
+     *
+     * @param rules the rules
+     * @return the validator
+     * @throws IllegalArgumentException if rules is null
+     */
+    public static IncrementalValidator of(RuleSet rules) {
+        if (rules == null) {
+            throw new IllegalArgumentException("Rule set cannot be null");
+        }
+        int[] dependencies = new int[rules.size()];
+        for (int i = 0; i < dependencies.length; i++) {
+            dependencies[i] = FieldValidation.fieldsOf(rules.getRule(i));
+        }
+        return new IncrementalValidator(rules, dependencies);
+    }
+
+    /**
+     * Creates a validator over rule expressions; the fields each rule reads are taken from its text.
+     *
+     * @param names the rule names, in id order
+     * @param expressions the rules, in the {@link RuleExpression} language
+     * @return the validator
+     * @throws IllegalArgumentException if an expression is invalid, or for the reasons of
+     *                                  {@link RuleSet#of(String[], UserValidation[])}
+     */
+    public static IncrementalValidator of(String[] names, String[] expressions) {
+        if (expressions == null) {
+            throw new IllegalArgumentException("Expressions cannot be null");
+        }
+        UserValidation[] validations = new UserValidation[expressions.length];
+        int[] dependencies = new int[expressions.length];
+        for (int i = 0; i < expressions.length; i++) {
+            validations[i] = RuleExpression.compile(expressions[i]);
+            dependencies[i] = RuleExpression.fieldsOf(expressions[i]);
+        }
+        return new IncrementalValidator(RuleSet.of(names, validations), dependencies);
+    }
+
+    // ================== Tracking ==================
+
+    /**
+     * Validates a user in full and keeps its results for later changes.
+     *
+     * @param user the user
+     * @return the report
+     * @throws IllegalArgumentException if user is null
+     */
+    public synchronized ValidationReport track(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        Entry entry = entries.get(user);
+        if (entry == null) {
+            entry = new Entry(rules.size());
+            entries.put(user, entry);
+        }
+        evaluate(user, entry, UserChange.ALL, true);
+        return entry.report;
+    }
+
+    /**
+     * Forgets a user.
+     *
+     * @param user the user
+     * @return true if the user was tracked
+     */
+    public synchronized boolean untrack(User user) {
+        return entries.remove(user) != null;
+    }
+
+    /**
+     * Gets the latest report of a tracked user.
+     *
+     * @param user the user
+     * @return the report, or null if the user is not tracked
+     */
+    public synchronized ValidationReport getReport(User user) {
+        Entry entry = entries.get(user);
+        return entry == null ? null : entry.report;
+    }
+
+    /**
+     * Gets the number of tracked users.
+     * @return the count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // ================== Re-validation ==================
+
+    /**
+     * Re-runs the rules that read any of the given fields. An untracked user is tracked
+     * and validated in full.
+     *
+     * @param user the changed user
+     * @param fields the changed fields, as {@link UserChange} bits
+     * @return the updated report
+     * @throws IllegalArgumentException if user is null
+     */
+    public synchronized ValidationReport revalidate(User user, int fields) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        Entry entry = entries.get(user);
+        if (entry == null) {
+            return track(user);
+        }
+        evaluate(user, entry, fields, false);
+        return entry.report;
+    }
+
+    /**
+     * Reads every pending event of a subscription and re-validates the tracked users they name.
+     * Events of untracked users are skipped.
+     *
+     * @param changes a subscription of the stream the tracked users are watched by
+     * @return the number of user re-validations, after merging
+     * @throws IllegalArgumentException if changes is null
+     */
+    public synchronized int process(UserChangeStream.Subscription changes) {
+        if (changes == null) {
+            throw new IllegalArgumentException("Subscription cannot be null");
+        }
+        int revalidated = 0;
+        int taken;
+        do {
+            long lost = changes.getLostCount();
+            taken = changes.drain(change -> batch.merge(change.getUser(), change.getFields(), (a, b) -> a | b), BATCH_SIZE);
+            if (changes.getLostCount() != lost) {
+                // Some changes are unknown: nothing cached can be trusted
+                batch.clear();
+                for (Map.Entry<User, Entry> tracked : entries.entrySet()) {
+                    evaluate(tracked.getKey(), tracked.getValue(), UserChange.ALL, false);
+                }
+                revalidated += entries.size();
+                continue;
+            }
+            for (Map.Entry<User, Integer> pending : batch.entrySet()) {
+                Entry entry = entries.get(pending.getKey());
+                if (entry != null) {
+                    evaluate(pending.getKey(), entry, pending.getValue(), false);
+                    revalidated++;
+                }
+            }
+            batch.clear();
+        } while (taken == BATCH_SIZE);
+        return revalidated;
+    }
+
+    /**
+     * Gets the number of single rule evaluations run so far, to measure the work saved.
+     * @return the evaluation count
+     */
+    public synchronized long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    private void evaluate(User user, Entry entry, int fields, boolean first) {
+        long mask = entry.failureMask;
+        for (int i = 0; i < dependencies.length; i++) {
+            if (first || (dependencies[i] & fields) != 0) {
+                ValidationResult result = rules.getRule(i).apply(user);
+                entry.results[i] = result;
+                mask = result.isValid() ? mask & ~(1L << i) : mask | (1L << i);
+                evaluationCount++;
+            }
+        }
+        if (first || mask != entry.failureMask || mask != 0) {
+            entry.failureMask = mask;
+            entry.report = rules.report(mask, failuresOf(entry.results, mask));
+        }
+    }
+
+    private static ValidationResult[] failuresOf(ValidationResult[] results, long mask) {
+        if (mask == 0) {
+            return null;
+        }
+        ValidationResult[] failures = new ValidationResult[Long.bitCount(mask)];
+        int count = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            failures[count++] = results[Long.numberOfTrailingZeros(bits)];
+        }
+        return failures;
+    }
+}
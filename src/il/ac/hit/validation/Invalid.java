@@ -8,6 +8,7 @@ import java.util.Optional;
  */
 public class Invalid implements ValidationResult {
     private final String reason;
+    private final Optional<String> optionalReason;
 
     /**
      * Constructs an Invalid validation result with the specified reason.
@@ -17,6 +18,7 @@ public class Invalid implements ValidationResult {
     public Invalid(String reason) {
         setReason(reason);
         this.reason = reason;
+        this.optionalReason = Optional.of(reason);
     }
 
     /**
@@ -41,11 +43,21 @@ public class Invalid implements ValidationResult {
 
     /**
      * Returns the reason for validation failure.
+     * The Optional is created once, so repeated calls do not allocate.
      * @return Optional containing the reason for validation failure
      */
     @Override
     public Optional<String> getReason() {
-        return Optional.of(reason);
+        return optionalReason;
+    }
+
+    /**
+     * Returns the reason for validation failure.
+     * @return the reason, never null
+     */
+    @Override
+    public String getReasonOrNull() {
+        return reason;
     }
 }
 
@@ -0,0 +1,187 @@
+package il.ac.hit.validation;
+
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Fork/join implementation behind {@link UserUtils#parallelSort(User[], Comparator, int)}.
+ * <p>
+ * The range is split in halves until a piece is no larger than the threshold,
+ * each piece is sorted with the sequential {@link UserSortEngine}, and sorted halves
+ * are merged back with a parallel, stable merge. Ties always favour the left half,
+ * so the result is identical to the sequential sort.
+ */
+final class ParallelUserSorter {
+
+    /** Below this many elements a merge is done sequentially instead of being split further. */
+    private static final int MERGE_GRANULARITY = 4096;
+
+    private ParallelUserSorter() {
+    }
+
+    /**
+     * Sorts the whole array on a dedicated fork/join pool.
+     * Arguments are expected to be validated by the caller.
+     *
+     * @param users the array to sort
+     * @param comparator the comparator used to determine the order
+     * @param parallelism the number of worker threads
+     * @param threshold the largest piece sorted sequentially
+     */
+    static void sort(User[] users, Comparator<User> comparator, int parallelism, int threshold) {
+        User[] buffer = new User[users.length];
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SortTask(users, buffer, 0, users.length, comparator, threshold));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // ================== Tasks ==================
+
+    /** Sorts {@code users[lo, hi)}, using {@code buffer[lo, hi)} as scratch space. */
+    private static final class SortTask extends RecursiveAction {
+        // Fork/join tasks are Serializable only by inheritance; they are never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final transient User[] users;
+        private final transient User[] buffer;
+        private final int lo;
+        private final int hi;
+        private final transient Comparator<User> comparator;
+        private final int threshold;
+
+        SortTask(User[] users, User[] buffer, int lo, int hi, Comparator<User> comparator, int threshold) {
+            this.users = users;
+            this.buffer = buffer;
+            this.lo = lo;
+            this.hi = hi;
+            this.comparator = comparator;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= threshold) {
+                UserSortEngine.sort(users, lo, hi, comparator);
+                return;
+            }
+
+            // === Sort both halves concurrently ===
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new SortTask(users, buffer, lo, mid, comparator, threshold),
+                    new SortTask(users, buffer, mid, hi, comparator, threshold));
+
+            // Already ordered halves need no merge
+            if (comparator.compare(users[mid - 1], users[mid]) <= 0) {
+                return;
+            }
+
+            // === Merge the halves from the buffer back into place ===
+            System.arraycopy(users, lo, buffer, lo, hi - lo);
+            new MergeTask(buffer, users, lo, mid, mid, hi, lo, comparator).compute();
+        }
+    }
+
+    /**
+     * Stably merges the sorted ranges {@code source[lo1, hi1)} and {@code source[lo2, hi2)}
+     * into {@code target} starting at {@code destination}.
+     */
+    private static final class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient User[] source;
+        private final transient User[] target;
+        private final int lo1;
+        private final int hi1;
+        private final int lo2;
+        private final int hi2;
+        private final int destination;
+        private final transient Comparator<User> comparator;
+
+        MergeTask(User[] source, User[] target, int lo1, int hi1, int lo2, int hi2,
+                  int destination, Comparator<User> comparator) {
+            this.source = source;
+            this.target = target;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.destination = destination;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            int len1 = hi1 - lo1;
+            int len2 = hi2 - lo2;
+            if (len1 + len2 <= MERGE_GRANULARITY) {
+                mergeSequentially();
+                return;
+            }
+
+            // === Split around the median of the longer range ===
+            int split1;
+            int split2;
+            if (len1 >= len2) {
+                split1 = (lo1 + hi1) >>> 1;
+                // Equal elements of the right range must stay after the pivot
+                split2 = lowerBound(source, lo2, hi2, source[split1], comparator);
+            } else {
+                split2 = (lo2 + hi2) >>> 1;
+                // Equal elements of the left range must stay before the pivot
+                split1 = upperBound(source, lo1, hi1, source[split2], comparator);
+            }
+
+            int rightDestination = destination + (split1 - lo1) + (split2 - lo2);
+            invokeAll(new MergeTask(source, target, lo1, split1, lo2, split2, destination, comparator),
+                    new MergeTask(source, target, split1, hi1, split2, hi2, rightDestination, comparator));
+        }
+
+        private void mergeSequentially() {
+            int i = lo1;
+            int j = lo2;
+            int k = destination;
+            while (i < hi1 && j < hi2) {
+                // Ties go to the left range, which keeps the merge stable
+                if (comparator.compare(source[j], source[i]) < 0) {
+                    target[k++] = source[j++];
+                } else {
+                    target[k++] = source[i++];
+                }
+            }
+            System.arraycopy(source, i, target, k, hi1 - i);
+            System.arraycopy(source, j, target, k + (hi1 - i), hi2 - j);
+        }
+    }
+
+    // ================== Binary searches ==================
+
+    /** Returns the first index in {@code [lo, hi)} whose element is not less than {@code key}. */
+    private static int lowerBound(User[] array, int lo, int hi, User key, Comparator<User> comparator) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.compare(array[mid], key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Returns the first index in {@code [lo, hi)} whose element is greater than {@code key}. */
+    private static int upperBound(User[] array, int lo, int hi, User key, Comparator<User> comparator) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.compare(array[mid], key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
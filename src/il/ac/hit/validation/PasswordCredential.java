@@ -0,0 +1,81 @@
+package il.ac.hit.validation;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * A salted PBKDF2 password hash, as made by {@link PasswordHasher}. Immutable.
+ * The password itself cannot be recovered from it.
+ */
+public final class PasswordCredential {
+
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    PasswordCredential(int iterations, byte[] salt, byte[] hash) {
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /**
+     * Checks a password against this credential, in time independent of where it differs.
+     * The array is not modified.
+     *
+     * @param password the candidate password
+     * @return true if it is the hashed password
+     */
+    public boolean verify(char[] password) {
+        if (password == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(hash, PasswordHasher.derive(password, salt, iterations));
+    }
+
+    /**
+     * Gets the PBKDF2 iteration count the credential was made with.
+     * @return the iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Gets the salt.
+     * @return the salt bytes; must not be modified
+     */
+    byte[] getSalt() {
+        return salt;
+    }
+
+    /**
+     * Gets the salted hash, which identifies this credential (used by validation cache keys).
+     * @return the hash bytes; must not be modified
+     */
+    byte[] getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PasswordCredential)) {
+            return false;
+        }
+        PasswordCredential other = (PasswordCredential) o;
+        return iterations == other.iterations && Arrays.equals(salt, other.salt) && Arrays.equals(hash, other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(hash);
+    }
+
+    @Override
+    public String toString() {
+        return "PasswordCredential{PBKDF2-HMAC-SHA256, iterations=" + iterations + "}";
+    }
+}
@@ -0,0 +1,110 @@
+package il.ac.hit.validation;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.spec.InvalidKeySpecException;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Derives salted password hashes with PBKDF2-HMAC-SHA256, at a configurable cost.
+ * <p>
+ * The cost is the PBKDF2 iteration count; verifying a password takes time roughly
+ * proportional to it. Every {@link PasswordCredential} records the count it was made with,
+ * so raising the cost does not invalidate existing credentials, and {@link #needsRehash}
+ * tells which ones to upgrade at the next successful login.
+ * <p>
+ * There is no global default. Login credentials are made at {@link #LOGIN} strength through
+ * {@link User#setPassword(char[], PasswordHasher)}; the convenience constructors and setters of
+ * {@link User}, and the bulk paths ({@link UserFactory}, {@link UserImporter}, {@link UserStore})
+ * unless given a hasher of their own, use {@link #FAST}. Instances are immutable and thread-safe.
+ */
+public final class PasswordHasher {
+
+    /** Default iteration count, as recommended for PBKDF2-HMAC-SHA256. */
+    public static final int DEFAULT_ITERATIONS = 600_000;
+
+    /**
+     * Smallest iteration count accepted. Counts far below {@link #DEFAULT_ITERATIONS} offer
+     * little protection; they suit paths that create many users, as {@link #FAST} does.
+     */
+    public static final int MIN_ITERATIONS = 1;
+
+    /** Hasher at {@link #DEFAULT_ITERATIONS}, for credentials that guard a login. */
+    public static final PasswordHasher LOGIN = new PasswordHasher(DEFAULT_ITERATIONS);
+
+    /**
+     * Hasher at {@link #MIN_ITERATIONS}, used where no hasher is given. Its credentials are
+     * salted and never hold the password, but are cheap to guess offline; pass {@link #LOGIN}
+     * or a hasher of similar cost wherever the credential guards a login.
+     */
+    public static final PasswordHasher FAST = new PasswordHasher(MIN_ITERATIONS);
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    static final int SALT_LENGTH = 16;
+    static final int HASH_LENGTH = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+
+    /**
+     * Constructs a hasher.
+     *
+     * @param iterations the PBKDF2 iteration count
+     * @throws IllegalArgumentException if iterations is below {@link #MIN_ITERATIONS}
+     */
+    public PasswordHasher(int iterations) {
+        if (iterations < MIN_ITERATIONS) {
+            throw new IllegalArgumentException("Iterations must be at least " + MIN_ITERATIONS);
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * Gets the iteration count.
+     * @return the iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Hashes a password with a fresh random salt. The array is not modified.
+     *
+     * @param password the password
+     * @return the credential
+     * @throws IllegalArgumentException if password is null
+     */
+    public PasswordCredential hash(char[] password) {
+        if (password == null) {
+            throw new IllegalArgumentException("Password cannot be null");
+        }
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return new PasswordCredential(iterations, salt, derive(password, salt, iterations));
+    }
+
+    /**
+     * Checks whether a credential was made with a different cost than this hasher's.
+     *
+     * @param credential the credential
+     * @return true if the credential should be recomputed with this hasher
+     */
+    public boolean needsRehash(PasswordCredential credential) {
+        return credential.getIterations() != iterations;
+    }
+
+    /**
+     * Runs PBKDF2-HMAC-SHA256.
+     */
+    static byte[] derive(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_LENGTH * Byte.SIZE);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
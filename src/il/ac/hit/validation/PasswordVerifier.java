@@ -0,0 +1,111 @@
+package il.ac.hit.validation;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks login passwords on a fixed, bounded pool of threads.
+ * <p>
+ * Verifying a hashed password is deliberately slow (see {@link PasswordHasher}). Running
+ * the checks here instead of on request threads caps the cores a login burst can use at the
+ * pool size; requests beyond the queue capacity are refused right away instead of piling up,
+ * so the caller can answer "try again later".
+ * <p>
+ * Example:
+ * <pre>{@code
+ * PasswordVerifier verifier = new PasswordVerifier(4, 256);
+ * verifier.verify(user, passwordChars).thenAccept(ok -> ...);
+ * }</pre>
+ */
+public final class PasswordVerifier implements AutoCloseable {
+
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Constructs a verifier using half of the available processors and a queue of 1024 requests.
+     */
+    public PasswordVerifier() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 1024);
+    }
+
+    /**
+     * Constructs a verifier.
+     *
+     * @param threads the number of threads that verify passwords
+     * @param queueCapacity the number of requests that may wait for a thread
+     * @throws IllegalArgumentException if threads or queueCapacity is not positive
+     */
+    public PasswordVerifier(int threads, int queueCapacity) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        String prefix = "password-verifier-" + POOL_NUMBER.incrementAndGet() + "-";
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, prefix + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Checks a user's password on the pool.
+     *
+     * @param user the user logging in
+     * @param candidate the password entered; zeroed once checked, or right away if refused
+     * @return a future completed with true if the password is correct; completed exceptionally
+     *         with {@link RejectedExecutionException} if the queue is full or the verifier is closed
+     * @throws IllegalArgumentException if user or candidate is null
+     */
+    public CompletableFuture<Boolean> verify(User user, char[] candidate) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        if (candidate == null) {
+            throw new IllegalArgumentException("Password cannot be null");
+        }
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            pool.execute(() -> {
+                try {
+                    result.complete(user.verifyPassword(candidate));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    Arrays.fill(candidate, '\0');
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Arrays.fill(candidate, '\0');
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of requests waiting for a thread.
+     * @return the queue length
+     */
+    public int getQueuedCount() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * Stops accepting requests; queued requests are still verified.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -19,6 +19,25 @@ public class PlatinumUser extends User {
         super(username, email, password, age);
     }
 
+    /**
+     * Creates a new PlatinumUser from a password given as an array, so no string of it is ever made.
+     *
+     * @param username the user's name
+     * @param email    the user's email
+     * @param password the user's password; zeroed after hashing
+     * @param age      the user's age
+     */
+    public PlatinumUser(String username, String email, char[] password, int age) {
+        super(username, email, password, age);
+    }
+
+    /**
+     * Creates a PlatinumUser from an already hashed password, for stores that keep credentials.
+     */
+    PlatinumUser(String username, String email, HashedPassword password, int age) {
+        super(username, email, password, age);
+    }
+
 
 
 
@@ -0,0 +1,121 @@
+package il.ac.hit.validation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * A validation whose policy is a {@link RuleExpression} read from a file, which can be
+ * reloaded while the application runs.
+ * <p>
+ * The compiled policy is held in one volatile field. A reload compiles the new text first
+ * and then swaps the field, so a validation that already started finishes with the policy it
+ * started with, and no validation ever waits for a reload. A file that does not compile
+ * leaves the current policy in place.
+ * <p>
+ * Example, checking for changes every few seconds:
+ * <pre>{@code
+ * PolicyFile policy = new PolicyFile(Path.of("signup.policy"));
+ * scheduler.scheduleWithFixedDelay(() -> {
+ *     try {
+ *         policy.reloadIfChanged();
+ *     } catch (IOException | IllegalArgumentException e) {
+ *         log(e); // the previous policy stays active
+ *     }
+ * }, 5, 5, TimeUnit.SECONDS);
+ * ValidationResult result = policy.apply(user);
+ * }</pre>
+ */
+public final class PolicyFile implements UserValidation {
+
+    /** One loaded version of the file. */
+    private static final class Version {
+        final UserValidation validation;
+        final String source;
+        final FileTime modified;
+        final long size;
+
+        Version(UserValidation validation, String source, FileTime modified, long size) {
+            this.validation = validation;
+            this.source = source;
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+    private final Path path;
+    private volatile Version current;
+
+    /**
+     * Constructs a policy and loads the file.
+     *
+     * @param path the policy file, holding one UTF-8 expression
+     * @throws IllegalArgumentException if path is null or the file is not a valid expression
+     * @throws IOException if the file cannot be read
+     */
+    public PolicyFile(Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        this.path = path;
+        this.current = load();
+    }
+
+    @Override
+    public ValidationResult apply(User user) {
+        return current.validation.apply(user);
+    }
+
+    /**
+     * Reads and compiles the file again and swaps in the result.
+     *
+     * @throws IllegalArgumentException if the file is not a valid expression; the current policy is kept
+     * @throws IOException if the file cannot be read; the current policy is kept
+     */
+    public synchronized void reload() throws IOException {
+        current = load();
+    }
+
+    /**
+     * Reloads the file if its modification time or size changed since the last load.
+     *
+     * @return true if the file was reloaded
+     * @throws IllegalArgumentException if the file is not a valid expression; the current policy is kept
+     * @throws IOException if the file cannot be read; the current policy is kept
+     */
+    public synchronized boolean reloadIfChanged() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Version loaded = current;
+        if (attributes.lastModifiedTime().equals(loaded.modified) && attributes.size() == loaded.size) {
+            return false;
+        }
+        current = load();
+        return true;
+    }
+
+    /**
+     * Gets the expression currently in effect.
+     * @return the source text of the loaded file
+     */
+    public String getSource() {
+        return current.source;
+    }
+
+    /**
+     * Gets the policy file.
+     * @return the path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    private Version load() throws IOException {
+        // Attributes first: a write racing with the read is then picked up by the next check
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String source = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        return new Version(RuleExpression.compile(source), source, attributes.lastModifiedTime(), attributes.size());
+    }
+}
@@ -20,6 +20,26 @@ public class PremiumUser extends User {
         super(username, email, password, age);
     }
 
+    /**
+     * Constructs a new {@code PremiumUser} from a password given as an array, so no string of it is ever made.
+     * Delegates initialization to the {@link User} constructor.
+     *
+     * @param username the username for the premium user
+     * @param email the email address for the premium user
+     * @param password the password for the premium user; zeroed after hashing
+     * @param age the age of the premium user
+     */
+    public PremiumUser(String username, String email, char[] password, int age) {
+        super(username, email, password, age);
+    }
+
+    /**
+     * Constructs a {@code PremiumUser} from an already hashed password, for stores that keep credentials.
+     */
+    PremiumUser(String username, String email, HashedPassword password, int age) {
+        super(username, email, password, age);
+    }
+
 
 
 }
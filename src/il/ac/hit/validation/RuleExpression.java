@@ -0,0 +1,1206 @@
+package il.ac.hit.validation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A small expression language for validation policies, compiled into {@link UserValidation}
+ * combinators so a policy can change without Java edits.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * UserValidation policy = RuleExpression.compile(
+ *         "email endsWith \"il\" and email.length > 10 or tier == platinum");
+ * }</pre>
+ * <p>
+ * Grammar, lowest precedence first; keywords are case-insensitive and {@code #} starts a
+ * comment that runs to the end of the line:
+ * <pre>
+ * expression := xor ('or' xor)*
+ * xor        := and ('xor' and)*
+ * and        := unary ('and' unary)*
+ * unary      := 'not' unary | '(' expression ')' | 'true' | 'false' | test
+ * test       := number-field op integer           age, tier, username.length, email.length, password.length
+ *             | 'tier' op tier-name                user, basic, premium, platinum (0 to 3), or a type
+ *                                                  registered with {@link UserFactory} (4 on)
+ *             | text-field ('==' | '!=') string    username, email
+ *             | text-field ('startsWith' | 'endsWith' | 'contains') string
+ *             | field 'has' class                  letter, digit, upper, lower, dollar, at, nonAscii
+ *             | field 'is' 'alphanumeric'
+ *             | password ('==' | '!=') username
+ * op         := '==' | '!=' | '&lt;' | '&lt;=' | '&gt;' | '&gt;='
+ * </pre>
+ * A comparison can also be written the other way round, with the integer or tier name
+ * first, as in {@code 18 < age} or {@code premium <= tier}.
+ * The password can only be tested through its length, its character classes and the
+ * username, which works for hashed passwords too.
+ * <p>
+ * Before the combinators are built the expression is simplified: negations are pushed down
+ * to the tests, constant subexpressions are folded, repeated tests are dropped, and the
+ * comparisons and character-class tests of one field under an {@code and} are merged into a
+ * single test, so the field is read once. The result is flattened by
+ * {@link UserValidation#compile(UserValidation)}. A failed test reports its canonical text,
+ * for example {@code "Rule failed: age >= 19"}.
+ * <p>
+ * Compiled expressions are cached by source text.
+ */
+public final class RuleExpression {
+
+    /** Number of compiled expressions kept; the cache starts over once it is full. */
+    static final int MAX_CACHED = 256;
+
+    private static final Map<String, UserValidation> CACHE = new ConcurrentHashMap<>();
+
+    private RuleExpression() {
+    }
+
+    /**
+     * Compiles an expression into a validation, or returns the one compiled before.
+     *
+     * @param source the expression
+     * @return the validation; thread-safe
+     * @throws IllegalArgumentException if source is null or not a valid expression
+     */
+    public static UserValidation compile(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Rule expression cannot be null");
+        }
+        UserValidation cached = CACHE.get(source);
+        if (cached != null) {
+            return cached;
+        }
+        UserValidation validation = UserValidation.compile(build(parse(source)));
+        if (CACHE.size() >= MAX_CACHED) {
+            CACHE.clear();
+        }
+        UserValidation raced = CACHE.putIfAbsent(source, validation);
+        return raced != null ? raced : validation;
+    }
+
+    /**
+     * Returns the simplified form of an expression, as it will be evaluated.
+     *
+     * @param source the expression
+     * @return the canonical text of the simplified expression
+     * @throws IllegalArgumentException if source is null or not a valid expression
+     */
+    public static String simplify(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Rule expression cannot be null");
+        }
+        return parse(source).text();
+    }
+
+    /**
+     * Lists the user fields an expression reads, so callers know which changes can alter its result.
+     *
+     * @param source the expression
+     * @return a combination of the {@link UserChange} field bits; 0 if the result never changes
+     * @throws IllegalArgumentException if source is null or not a valid expression
+     */
+    static int fieldsOf(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Rule expression cannot be null");
+        }
+        return parse(source).fields();
+    }
+
+    private static Node parse(String source) {
+        return new Parser(source).parse().simplify();
+    }
+
+    // ================== Fields ==================
+
+    /** A numeric value of a user, with its bounds. */
+    private enum Metric {
+        AGE("age", UserChange.AGE, Integer.MIN_VALUE, Integer.MAX_VALUE),
+        TIER("tier", 0, UserStore.TIER_USER, UserFactory.MAX_TIER_CODE),
+        USERNAME_LENGTH("username.length", UserChange.USERNAME, 0, Integer.MAX_VALUE),
+        EMAIL_LENGTH("email.length", UserChange.EMAIL, 0, Integer.MAX_VALUE),
+        PASSWORD_LENGTH("password.length", UserChange.PASSWORD, 0, Integer.MAX_VALUE);
+
+        final String name;
+        final int field; // UserChange bit; the tier is the class, which never changes
+        final long min;
+        final long max;
+
+        Metric(String name, int field, long min, long max) {
+            this.name = name;
+            this.field = field;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /** A string field of a user. */
+    private enum Field {
+        USERNAME("username", UserChange.USERNAME), EMAIL("email", UserChange.EMAIL), PASSWORD("password", UserChange.PASSWORD);
+
+        final String name;
+        final int bit;
+
+        Field(String name, int bit) {
+            this.name = name;
+            this.bit = bit;
+        }
+    }
+
+    /** Tier name of a plain {@link User}, which has no factory type. */
+    private static final String PLAIN_TIER_NAME = "user";
+
+    private static final String[] CLASS_NAMES = {"letter", "digit", "upper", "lower", "dollar", "at", "nonAscii"};
+
+    private static final int[] CLASS_FLAGS = {
+            CharClassProfile.HAS_LETTER, CharClassProfile.HAS_DIGIT, CharClassProfile.HAS_UPPER,
+            CharClassProfile.HAS_LOWER, CharClassProfile.HAS_DOLLAR, CharClassProfile.HAS_AT,
+            CharClassProfile.HAS_NON_ASCII};
+
+    // ================== Syntax tree ==================
+
+    /**
+     * A node of the expression. Nodes are immutable; {@link #text()} is canonical, so two
+     * nodes with the same text test the same thing.
+     */
+    private abstract static class Node {
+        /** Returns the logical negation, with the NOT pushed down to the tests. */
+        abstract Node negate();
+
+        /** Returns an equivalent node with constants folded and tests merged. */
+        Node simplify() {
+            return this;
+        }
+
+        /** Returns the canonical text. */
+        abstract String text();
+
+        /** Returns the {@link UserChange} bits of the fields this node reads. */
+        abstract int fields();
+
+        /** Binding strength of the text: 0 for or, 1 for xor, 2 for and, 3 for tests. */
+        int precedence() {
+            return 3;
+        }
+
+        /** The text, in parentheses if it binds more loosely than the given precedence. */
+        String text(int context) {
+            return precedence() < context ? "(" + text() + ")" : text();
+        }
+    }
+
+    private static final class Constant extends Node {
+        static final Constant TRUE = new Constant(true);
+        static final Constant FALSE = new Constant(false);
+
+        final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        static Constant of(boolean value) {
+            return value ? TRUE : FALSE;
+        }
+
+        @Override
+        Node negate() {
+            return of(!value);
+        }
+
+        @Override
+        String text() {
+            return value ? "true" : "false";
+        }
+
+        @Override
+        int fields() {
+            return 0;
+        }
+    }
+
+    /** {@code min <= metric <= max}; every numeric comparison becomes one. */
+    private static final class Range extends Node {
+        final Metric metric;
+        final long min;
+        final long max;
+
+        Range(Metric metric, long min, long max) {
+            this.metric = metric;
+            this.min = Math.max(min, metric.min);
+            this.max = Math.min(max, metric.max);
+        }
+
+        boolean isEmpty() {
+            return min > max;
+        }
+
+        boolean isFull() {
+            return min == metric.min && max == metric.max;
+        }
+
+        @Override
+        Node negate() {
+            if (isEmpty()) {
+                return Constant.TRUE;
+            }
+            if (min == metric.min) {
+                return new Range(metric, max + 1, metric.max);
+            }
+            if (max == metric.max) {
+                return new Range(metric, metric.min, min - 1);
+            }
+            return new Or(List.of(new Range(metric, metric.min, min - 1), new Range(metric, max + 1, metric.max)));
+        }
+
+        @Override
+        Node simplify() {
+            if (isEmpty()) {
+                return Constant.FALSE;
+            }
+            return isFull() ? Constant.TRUE : this;
+        }
+
+        @Override
+        int precedence() {
+            return min != metric.min && max != metric.max && min != max ? 2 : 3;
+        }
+
+        @Override
+        String text() {
+            if (min == max) {
+                return metric.name + " == " + value(min);
+            }
+            if (min == metric.min) {
+                return metric.name + " <= " + value(max);
+            }
+            if (max == metric.max) {
+                return metric.name + " >= " + value(min);
+            }
+            return metric.name + " >= " + value(min) + " and " + metric.name + " <= " + value(max);
+        }
+
+        @Override
+        int fields() {
+            return metric.field;
+        }
+
+        private String value(long value) {
+            if (metric != Metric.TIER) {
+                return Long.toString(value);
+            }
+            if (value == UserStore.TIER_USER) {
+                return PLAIN_TIER_NAME;
+            }
+            UserFactory.Tier tier = UserFactory.tierOf((int) value);
+            return tier == null ? Long.toString(value) : tier.getName();
+        }
+    }
+
+    /** The profile of a field has every flag in the mask, or, if negated, lacks one of them. */
+    private static final class ClassTest extends Node {
+        final Field field;
+        final int flags;
+        final boolean negated;
+
+        ClassTest(Field field, int flags, boolean negated) {
+            this.field = field;
+            this.flags = flags;
+            this.negated = negated;
+        }
+
+        @Override
+        Node negate() {
+            return new ClassTest(field, flags, !negated);
+        }
+
+        @Override
+        String text() {
+            List<String> parts = new ArrayList<>();
+            for (int i = 0; i < CLASS_FLAGS.length; i++) {
+                if ((flags & CLASS_FLAGS[i]) != 0) {
+                    parts.add(field.name + " has " + CLASS_NAMES[i]);
+                }
+            }
+            if ((flags & CharClassProfile.ALL_LETTERS_OR_DIGITS) != 0) {
+                parts.add(field.name + " is alphanumeric");
+            }
+            if ((flags & CharClassProfile.ENDS_WITH_IL) != 0) {
+                parts.add(field.name + " endsWith \"il\"");
+            }
+            String text = String.join(" and ", parts);
+            if (!negated) {
+                return text;
+            }
+            return parts.size() == 1 ? "not " + text : "not (" + text + ")";
+        }
+
+        @Override
+        int precedence() {
+            return !negated && Integer.bitCount(flags) > 1 ? 2 : 3;
+        }
+
+        @Override
+        int fields() {
+            return field.bit;
+        }
+    }
+
+    /** A string test on the username or the email. */
+    private static final class TextTest extends Node {
+        static final int EQUALS = 0;
+        static final int STARTS_WITH = 1;
+        static final int ENDS_WITH = 2;
+        static final int CONTAINS = 3;
+
+        private static final String[] OPERATORS = {" == ", " startsWith ", " endsWith ", " contains "};
+
+        final Field field;
+        final int operator;
+        final String literal;
+        final boolean negated;
+
+        TextTest(Field field, int operator, String literal, boolean negated) {
+            this.field = field;
+            this.operator = operator;
+            this.literal = literal;
+            this.negated = negated;
+        }
+
+        @Override
+        Node negate() {
+            return new TextTest(field, operator, literal, !negated);
+        }
+
+        @Override
+        String text() {
+            if (operator == EQUALS && negated) {
+                return field.name + " != " + quote(literal);
+            }
+            return (negated ? "not " : "") + field.name + OPERATORS[operator] + quote(literal);
+        }
+
+        @Override
+        int fields() {
+            return field.bit;
+        }
+    }
+
+    /** The password equals the username, or, if negated, differs from it. */
+    private static final class SameAsUsername extends Node {
+        final boolean negated;
+
+        SameAsUsername(boolean negated) {
+            this.negated = negated;
+        }
+
+        @Override
+        Node negate() {
+            return new SameAsUsername(!negated);
+        }
+
+        @Override
+        String text() {
+            return negated ? "password != username" : "password == username";
+        }
+
+        @Override
+        int fields() {
+            return UserChange.USERNAME | UserChange.PASSWORD;
+        }
+    }
+
+    private static final class And extends Node {
+        final List<Node> operands;
+
+        And(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        Node negate() {
+            List<Node> negated = new ArrayList<>(operands.size());
+            for (Node operand : operands) {
+                negated.add(operand.negate());
+            }
+            return new Or(negated);
+        }
+
+        @Override
+        Node simplify() {
+            List<Node> flat = new ArrayList<>();
+            for (Node operand : operands) {
+                Node simple = operand.simplify();
+                if (simple instanceof And) {
+                    flat.addAll(((And) simple).operands);
+                } else {
+                    flat.add(simple);
+                }
+            }
+
+            // Ranges of one metric intersect, positive class tests of one field combine their
+            // flags; the merged test takes the place of the first one
+            Map<String, Node> merged = new LinkedHashMap<>();
+            for (Node node : flat) {
+                if (node == Constant.TRUE) {
+                    continue;
+                }
+                if (node == Constant.FALSE) {
+                    return Constant.FALSE;
+                }
+                String key = node.text();
+                if (node instanceof Range) {
+                    Range range = (Range) node;
+                    key = "range:" + range.metric;
+                    Range previous = (Range) merged.get(key);
+                    if (previous != null) {
+                        range = new Range(range.metric, Math.max(range.min, previous.min), Math.min(range.max, previous.max));
+                        if (range.isEmpty()) {
+                            return Constant.FALSE;
+                        }
+                    }
+                    node = range;
+                } else if (node instanceof ClassTest && !((ClassTest) node).negated) {
+                    ClassTest test = (ClassTest) node;
+                    key = "class:" + test.field;
+                    ClassTest previous = (ClassTest) merged.get(key);
+                    if (previous != null) {
+                        node = new ClassTest(test.field, test.flags | previous.flags, false);
+                    }
+                }
+                // A repeated or merged test keeps the first position
+                merged.put(key, node);
+            }
+            return collapse(new ArrayList<>(merged.values()), true);
+        }
+
+        @Override
+        int precedence() {
+            return 2;
+        }
+
+        @Override
+        String text() {
+            return join(operands, " and ", 2);
+        }
+
+        @Override
+        int fields() {
+            return fieldsOf(operands);
+        }
+    }
+
+    private static final class Or extends Node {
+        final List<Node> operands;
+
+        Or(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        Node negate() {
+            List<Node> negated = new ArrayList<>(operands.size());
+            for (Node operand : operands) {
+                negated.add(operand.negate());
+            }
+            return new And(negated);
+        }
+
+        @Override
+        Node simplify() {
+            List<Node> flat = new ArrayList<>();
+            for (Node operand : operands) {
+                Node simple = operand.simplify();
+                if (simple instanceof Or) {
+                    flat.addAll(((Or) simple).operands);
+                } else {
+                    flat.add(simple);
+                }
+            }
+
+            List<Node> kept = new ArrayList<>();
+            for (Node node : flat) {
+                if (node == Constant.FALSE) {
+                    continue;
+                }
+                if (node == Constant.TRUE) {
+                    return Constant.TRUE;
+                }
+                if (node instanceof Range) {
+                    node = absorbRange((Range) node, kept);
+                    if (((Range) node).isFull()) {
+                        return Constant.TRUE;
+                    }
+                }
+                // A repeated test keeps its last position, since an OR reports its last failure
+                String text = node.text();
+                kept.removeIf(previous -> previous.text().equals(text));
+                kept.add(node);
+            }
+            return collapse(kept, false);
+        }
+
+        /** Removes the ranges of the same metric that overlap or touch this one; returns their union. */
+        private static Range absorbRange(Range range, List<Node> kept) {
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                for (int i = 0; i < kept.size(); i++) {
+                    if (!(kept.get(i) instanceof Range)) {
+                        continue;
+                    }
+                    Range other = (Range) kept.get(i);
+                    if (other.metric == range.metric && other.min <= range.max + 1 && range.min <= other.max + 1) {
+                        range = new Range(range.metric, Math.min(range.min, other.min), Math.max(range.max, other.max));
+                        kept.remove(i);
+                        grown = true;
+                        break;
+                    }
+                }
+            }
+            return range;
+        }
+
+        @Override
+        int precedence() {
+            return 0;
+        }
+
+        @Override
+        String text() {
+            return join(operands, " or ", 1);
+        }
+
+        @Override
+        int fields() {
+            return fieldsOf(operands);
+        }
+    }
+
+    private static final class Xor extends Node {
+        final Node left;
+        final Node right;
+
+        Xor(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Node negate() {
+            return new Xor(left, right.negate());
+        }
+
+        @Override
+        Node simplify() {
+            Node a = left.simplify();
+            Node b = right.simplify();
+            if (a instanceof Constant) {
+                return ((Constant) a).value ? b.negate().simplify() : b;
+            }
+            if (b instanceof Constant) {
+                return ((Constant) b).value ? a.negate().simplify() : a;
+            }
+            String text = a.text();
+            if (text.equals(b.text())) {
+                return Constant.FALSE;
+            }
+            if (text.equals(b.negate().simplify().text())) {
+                return Constant.TRUE;
+            }
+            return new Xor(a, b);
+        }
+
+        @Override
+        int precedence() {
+            return 1;
+        }
+
+        @Override
+        String text() {
+            // Left-associative: only a nested right operand needs parentheses
+            return left.text(1) + " xor " + right.text(2);
+        }
+
+        @Override
+        int fields() {
+            return left.fields() | right.fields();
+        }
+    }
+
+    /** Turns the operands of a simplified AND or OR into a node. */
+    private static Node collapse(List<Node> operands, boolean and) {
+        if (operands.isEmpty()) {
+            return Constant.of(and);
+        }
+        if (operands.size() == 1) {
+            return operands.get(0);
+        }
+        return and ? new And(operands) : new Or(operands);
+    }
+
+    private static int fieldsOf(List<Node> operands) {
+        int fields = 0;
+        for (Node operand : operands) {
+            fields |= operand.fields();
+        }
+        return fields;
+    }
+
+    private static String join(List<Node> operands, String separator, int precedence) {
+        StringBuilder text = new StringBuilder();
+        for (Node operand : operands) {
+            if (text.length() > 0) {
+                text.append(separator);
+            }
+            text.append(operand.text(precedence));
+        }
+        return text.toString();
+    }
+
+    private static String quote(String literal) {
+        return '"' + literal.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    // ================== Building validations ==================
+
+    private static UserValidation build(Node node) {
+        if (node instanceof And) {
+            List<Node> operands = ((And) node).operands;
+            UserValidation[] validations = new UserValidation[operands.size()];
+            for (int i = 0; i < validations.length; i++) {
+                validations[i] = build(operands.get(i));
+            }
+            return UserValidation.all(validations);
+        }
+        if (node instanceof Or) {
+            List<Node> operands = ((Or) node).operands;
+            UserValidation validation = build(operands.get(0));
+            for (int i = 1; i < operands.size(); i++) {
+                validation = validation.or(build(operands.get(i)));
+            }
+            return validation;
+        }
+        if (node instanceof Xor) {
+            return build(((Xor) node).left).xor(build(((Xor) node).right));
+        }
+
+        // Leaves carry the fields they read, for IncrementalValidator; compiling unwraps them
+        return new FieldValidation(node.fields(), buildTest(node, new Invalid("Rule failed: " + node.text())));
+    }
+
+    private static UserValidation buildTest(Node node, Invalid invalid) {
+        if (node instanceof Constant) {
+            return ((Constant) node).value ? user -> Valid.INSTANCE : user -> invalid;
+        }
+        if (node instanceof Range) {
+            return buildRange((Range) node, invalid);
+        }
+        if (node instanceof ClassTest) {
+            return buildClassTest((ClassTest) node, invalid);
+        }
+        if (node instanceof TextTest) {
+            return buildTextTest((TextTest) node, invalid);
+        }
+        boolean negated = ((SameAsUsername) node).negated;
+        return user -> user.passwordEqualsUsername() != negated ? Valid.INSTANCE : invalid;
+    }
+
+    private static UserValidation buildRange(Range range, Invalid invalid) {
+        int min = (int) range.min;
+        int max = (int) range.max;
+        switch (range.metric) {
+            case AGE:
+                return user -> inRange(user.getAge(), min, max) ? Valid.INSTANCE : invalid;
+            case TIER:
+                return user -> inRange(UserStore.tierOf(user), min, max) ? Valid.INSTANCE : invalid;
+            case USERNAME_LENGTH:
+                return user -> inRange(user.getUsername().length(), min, max) ? Valid.INSTANCE : invalid;
+            case EMAIL_LENGTH:
+                return user -> inRange(CharClassProfile.length(user.getEmailProfile()), min, max) ? Valid.INSTANCE : invalid;
+            case PASSWORD_LENGTH:
+                return user -> inRange(CharClassProfile.length(user.getPasswordProfile()), min, max) ? Valid.INSTANCE : invalid;
+            default:
+                throw new IllegalStateException("Unknown metric: " + range.metric);
+        }
+    }
+
+    private static boolean inRange(int value, int min, int max) {
+        return value >= min && value <= max;
+    }
+
+    private static UserValidation buildClassTest(ClassTest test, Invalid invalid) {
+        int flags = test.flags;
+        boolean negated = test.negated;
+        switch (test.field) {
+            case USERNAME:
+                // Usernames carry no profile; classify on demand
+                return user -> CharClassProfile.has(CharClassProfile.of(user.getUsername()), flags) != negated
+                        ? Valid.INSTANCE : invalid;
+            case EMAIL:
+                return user -> CharClassProfile.has(user.getEmailProfile(), flags) != negated ? Valid.INSTANCE : invalid;
+            case PASSWORD:
+                return user -> CharClassProfile.has(user.getPasswordProfile(), flags) != negated ? Valid.INSTANCE : invalid;
+            default:
+                throw new IllegalStateException("Unknown field: " + test.field);
+        }
+    }
+
+    private static UserValidation buildTextTest(TextTest test, Invalid invalid) {
+        String literal = test.literal;
+        boolean negated = test.negated;
+        boolean username = test.field == Field.USERNAME;
+        switch (test.operator) {
+            case TextTest.EQUALS:
+                return user -> (username ? user.getUsername().equals(literal) : user.emailEquals(literal))
+                        != negated ? Valid.INSTANCE : invalid;
+            case TextTest.STARTS_WITH:
+                return user -> (username ? user.getUsername().startsWith(literal) : user.emailStartsWith(literal))
+                        != negated ? Valid.INSTANCE : invalid;
+            case TextTest.ENDS_WITH:
+                return user -> (username ? user.getUsername().endsWith(literal) : user.emailEndsWith(literal))
+                        != negated ? Valid.INSTANCE : invalid;
+            case TextTest.CONTAINS:
+                return user -> (username ? user.getUsername().contains(literal) : user.emailContains(literal))
+                        != negated ? Valid.INSTANCE : invalid;
+            default:
+                throw new IllegalStateException("Unknown operator: " + test.operator);
+        }
+    }
+
+    // ================== Parser ==================
+
+    /**
+     * Recursive-descent parser over an on-the-fly tokenizer.
+     */
+    private static final class Parser {
+        private static final int END = 0;
+        private static final int WORD = 1;
+        private static final int NUMBER = 2;
+        private static final int STRING = 3;
+        private static final int SYMBOL = 4;
+
+        private final String source;
+        private int position;
+
+        // Current token
+        private int type;
+        private String token;
+        private int start;
+
+        Parser(String source) {
+            this.source = source;
+            advance();
+        }
+
+        Node parse() {
+            Node node = parseOr();
+            if (type != END) {
+                throw error("Unexpected '" + token + "'");
+            }
+            return node;
+        }
+
+        private Node parseOr() {
+            Node first = parseXor();
+            if (!isKeyword("or")) {
+                return first;
+            }
+            List<Node> operands = new ArrayList<>();
+            operands.add(first);
+            while (isKeyword("or")) {
+                advance();
+                operands.add(parseXor());
+            }
+            return new Or(operands);
+        }
+
+        private Node parseXor() {
+            Node node = parseAnd();
+            while (isKeyword("xor")) {
+                advance();
+                node = new Xor(node, parseAnd());
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node first = parseUnary();
+            if (!isKeyword("and")) {
+                return first;
+            }
+            List<Node> operands = new ArrayList<>();
+            operands.add(first);
+            while (isKeyword("and")) {
+                advance();
+                operands.add(parseUnary());
+            }
+            return new And(operands);
+        }
+
+        private Node parseUnary() {
+            if (isKeyword("not")) {
+                advance();
+                return parseUnary().negate();
+            }
+            if (isSymbol("(")) {
+                advance();
+                Node node = parseOr();
+                expectSymbol(")");
+                return node;
+            }
+            if (isKeyword("true") || isKeyword("false")) {
+                boolean value = isKeyword("true");
+                advance();
+                return Constant.of(value);
+            }
+            return parseTest();
+        }
+
+        private Node parseTest() {
+            int testStart = start;
+            if (type == NUMBER) {
+                // literal op field, or literal op literal
+                long left = number();
+                String operator = comparison();
+                if (type == NUMBER) {
+                    return Constant.of(compare(left, operator, number()));
+                }
+                Metric metric = metric(word());
+                return compare(metric, flip(operator), left);
+            }
+            String name = word();
+            int tier = tierOrNegative(name);
+            if (tier >= 0) {
+                // tier-name op tier
+                String operator = comparison();
+                if (metric(word()) != Metric.TIER) {
+                    throw error(testStart, "Tier names can only be compared with the tier");
+                }
+                return compare(Metric.TIER, flip(operator), tier);
+            }
+            Metric metric = metricOrNull(name);
+            if (metric != null) {
+                String operator = comparison();
+                long value;
+                if (metric == Metric.TIER && type == WORD) {
+                    value = tier(word());
+                } else {
+                    value = number();
+                }
+                return compare(metric, operator, value);
+            }
+
+            Field field = field(name, testStart);
+            if (type == WORD) {
+                String operator = word();
+                switch (operator.toLowerCase()) {
+                    case "has":
+                        return new ClassTest(field, characterClass(word()), false);
+                    case "is":
+                        if (!word().equalsIgnoreCase("alphanumeric")) {
+                            throw error("Expected 'alphanumeric'");
+                        }
+                        return new ClassTest(field, CharClassProfile.ALL_LETTERS_OR_DIGITS, false);
+                    case "startswith":
+                        return textTest(field, TextTest.STARTS_WITH, string(), false);
+                    case "endswith": {
+                        String suffix = string();
+                        // The profile already knows this one, so the string is not scanned
+                        if (suffix.equals("il")) {
+                            return new ClassTest(field, CharClassProfile.ENDS_WITH_IL, false);
+                        }
+                        return textTest(field, TextTest.ENDS_WITH, suffix, false);
+                    }
+                    case "contains":
+                        return textTest(field, TextTest.CONTAINS, string(), false);
+                    default:
+                        throw error("Unknown operator '" + operator + "'");
+                }
+            }
+
+            String operator = comparison();
+            if (!operator.equals("==") && !operator.equals("!=")) {
+                throw error("Text can only be compared with == or !=");
+            }
+            boolean negated = operator.equals("!=");
+            if (type == WORD) {
+                Field other = field(word(), start);
+                if (field == Field.USERNAME && other == Field.PASSWORD
+                        || field == Field.PASSWORD && other == Field.USERNAME) {
+                    return new SameAsUsername(negated);
+                }
+                throw error("Only the password and the username can be compared with each other");
+            }
+            return textTest(field, TextTest.EQUALS, string(), negated);
+        }
+
+        private TextTest textTest(Field field, int operator, String literal, boolean negated) {
+            if (field == Field.PASSWORD) {
+                throw error("The password supports only length, has, is and comparison with the username");
+            }
+            return new TextTest(field, operator, literal, negated);
+        }
+
+        private Node compare(Metric metric, String operator, long value) {
+            switch (operator) {
+                case "==":
+                    return new Range(metric, value, value);
+                case "!=":
+                    return new Range(metric, value, value).negate();
+                case "<":
+                    return new Range(metric, metric.min, value - 1);
+                case "<=":
+                    return new Range(metric, metric.min, value);
+                case ">":
+                    return new Range(metric, value + 1, metric.max);
+                default:
+                    return new Range(metric, value, metric.max);
+            }
+        }
+
+        private boolean compare(long left, String operator, long right) {
+            switch (operator) {
+                case "==":
+                    return left == right;
+                case "!=":
+                    return left != right;
+                case "<":
+                    return left < right;
+                case "<=":
+                    return left <= right;
+                case ">":
+                    return left > right;
+                default:
+                    return left >= right;
+            }
+        }
+
+        private String flip(String operator) {
+            switch (operator) {
+                case "<":
+                    return ">";
+                case "<=":
+                    return ">=";
+                case ">":
+                    return "<";
+                case ">=":
+                    return "<=";
+                default:
+                    return operator;
+            }
+        }
+
+        // ================== Token helpers ==================
+
+        private Metric metric(String name) {
+            Metric metric = metricOrNull(name);
+            if (metric == null) {
+                throw error("Expected a number field, found '" + name + "'");
+            }
+            return metric;
+        }
+
+        private Metric metricOrNull(String name) {
+            for (Metric metric : Metric.values()) {
+                if (metric.name.equalsIgnoreCase(name)) {
+                    return metric;
+                }
+            }
+            return null;
+        }
+
+        private Field field(String name, int at) {
+            for (Field field : Field.values()) {
+                if (field.name.equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            throw error(at, "Unknown field '" + name + "'");
+        }
+
+        private long tier(String name) {
+            int tier = tierOrNegative(name);
+            if (tier < 0) {
+                throw error("Unknown tier '" + name + "'");
+            }
+            return tier;
+        }
+
+        /** Field names win over registered types of the same name. */
+        private int tierOrNegative(String name) {
+            if (PLAIN_TIER_NAME.equalsIgnoreCase(name)) {
+                return UserStore.TIER_USER;
+            }
+            if (metricOrNull(name) != null) {
+                return -1;
+            }
+            for (Field field : Field.values()) {
+                if (field.name.equalsIgnoreCase(name)) {
+                    return -1;
+                }
+            }
+            UserFactory.Tier tier = UserFactory.findTier(name);
+            return tier == null ? -1 : tier.getCode();
+        }
+
+        private int characterClass(String name) {
+            for (int i = 0; i < CLASS_NAMES.length; i++) {
+                if (CLASS_NAMES[i].equalsIgnoreCase(name)) {
+                    return CLASS_FLAGS[i];
+                }
+            }
+            throw error("Unknown character class '" + name + "'");
+        }
+
+        private String comparison() {
+            if (type != SYMBOL || token.equals("(") || token.equals(")")) {
+                throw error("Expected a comparison operator");
+            }
+            String operator = token;
+            advance();
+            return operator;
+        }
+
+        private String word() {
+            if (type != WORD) {
+                throw error("Expected a name");
+            }
+            String word = token;
+            advance();
+            return word;
+        }
+
+        private long number() {
+            if (type != NUMBER) {
+                throw error("Expected a number");
+            }
+            long value;
+            try {
+                value = Long.parseLong(token);
+            } catch (NumberFormatException e) {
+                throw error("Number out of range");
+            }
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw error("Number out of range");
+            }
+            advance();
+            return value;
+        }
+
+        private String string() {
+            if (type != STRING) {
+                throw error("Expected a quoted string");
+            }
+            String value = token;
+            advance();
+            return value;
+        }
+
+        private boolean isKeyword(String keyword) {
+            return type == WORD && token.equalsIgnoreCase(keyword);
+        }
+
+        private boolean isSymbol(String symbol) {
+            return type == SYMBOL && token.equals(symbol);
+        }
+
+        private void expectSymbol(String symbol) {
+            if (!isSymbol(symbol)) {
+                throw error("Expected '" + symbol + "'");
+            }
+            advance();
+        }
+
+        private IllegalArgumentException error(String message) {
+            return error(start, message);
+        }
+
+        private IllegalArgumentException error(int at, String message) {
+            return new IllegalArgumentException("Rule expression error at column " + (at + 1) + ": " + message);
+        }
+
+        // ================== Tokenizer ==================
+
+        private void advance() {
+            int length = source.length();
+            while (position < length) {
+                char c = source.charAt(position);
+                if (c == '#') {
+                    while (position < length && source.charAt(position) != '\n') {
+                        position++;
+                    }
+                } else if (Character.isWhitespace(c)) {
+                    position++;
+                } else {
+                    break;
+                }
+            }
+            start = position;
+            if (position == length) {
+                type = END;
+                token = "end of expression";
+                return;
+            }
+
+            char c = source.charAt(position);
+            if (Character.isLetter(c)) {
+                while (position < length && (Character.isLetterOrDigit(source.charAt(position))
+                        || source.charAt(position) == '.' || source.charAt(position) == '_')) {
+                    position++;
+                }
+                type = WORD;
+                token = source.substring(start, position);
+            } else if (isDigit(c) || c == '-' && position + 1 < length && isDigit(source.charAt(position + 1))) {
+                position++;
+                while (position < length && isDigit(source.charAt(position))) {
+                    position++;
+                }
+                type = NUMBER;
+                token = source.substring(start, position);
+            } else if (c == '"') {
+                type = STRING;
+                token = readString();
+            } else if (c == '(' || c == ')') {
+                position++;
+                type = SYMBOL;
+                token = String.valueOf(c);
+            } else if (c == '<' || c == '>' || c == '=' || c == '!') {
+                position++;
+                if (position < length && source.charAt(position) == '=') {
+                    position++;
+                }
+                token = source.substring(start, position);
+                if (token.equals("=")) {
+                    token = "==";
+                } else if (token.equals("!")) {
+                    throw error("Use 'not' for negation");
+                }
+                type = SYMBOL;
+            } else {
+                throw error("Unexpected character '" + c + "'");
+            }
+        }
+
+        private String readString() {
+            StringBuilder value = new StringBuilder();
+            position++; // opening quote
+            while (position < source.length()) {
+                char c = source.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\' && position < source.length()) {
+                    c = source.charAt(position++);
+                }
+                value.append(c);
+            }
+            throw error("Unterminated string");
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+    }
+}
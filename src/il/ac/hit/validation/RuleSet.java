@@ -0,0 +1,192 @@
+package il.ac.hit.validation;
+
+/**
+ * A fixed set of up to 64 rules that are always all evaluated, reporting every failure.
+ * <p>
+ * Each rule gets an id, its position in the set. {@link #failureMask(User)} runs every rule
+ * once and returns the failed ids as bits of a {@code long}; it never allocates.
+ * {@link #validate(User)} wraps the mask in a {@link ValidationReport}: a shared instance when
+ * everything passed, and otherwise a report that builds its reason strings only when asked.
+ * <p>
+ * As a {@link UserValidation}, a rule set gives the same verdict and first reason as
+ * {@link UserValidation#all(UserValidation...)} over the same rules, so it can replace
+ * {@code all} where callers also want the remaining failures. Example:
+ * <pre>{@code
+ * RuleSet form = RuleSet.of(new String[] {"email", "password"},
+ *         new UserValidation[] {UserValidation.emailEndsWithIL(), UserValidation.passwordIncludesDollarSign()});
+ * ValidationReport report = form.validate(user);
+ * if (report.hasFailed(0)) { ... }            // the email field failed
+ * for (String reason : report.getReasons()) { ... }
+ * }</pre>
+ */
+public final class RuleSet implements UserValidation {
+
+    /** Largest number of rules in a set: one bit of the mask each. */
+    public static final int MAX_RULES = Long.SIZE;
+
+    private final UserValidation[] rules;
+    private final String[] names;
+    private final ValidationReport allValid;
+
+    private RuleSet(String[] names, UserValidation[] rules) {
+        this.names = names;
+        this.rules = rules;
+        this.allValid = new ValidationReport(this, 0, null);
+    }
+
+    /**
+     * Creates a rule set whose rules are named by their id ("rule0", "rule1", ...).
+     *
+     * @param rules the rules, in id order
+     * @return the rule set
+     * @throws IllegalArgumentException if rules is null, empty, holds null or more than {@link #MAX_RULES} rules
+     */
+    public static RuleSet of(UserValidation... rules) {
+        if (rules == null) {
+            throw new IllegalArgumentException("Validations array cannot be null or empty");
+        }
+        String[] names = new String[rules.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "rule" + i;
+        }
+        return of(names, rules);
+    }
+
+    /**
+     * Creates a rule set with named rules.
+     *
+     * @param names the rule names, in id order
+     * @param rules the rules, in id order
+     * @return the rule set
+     * @throws IllegalArgumentException if an array is null, empty, holds null or more than
+     *                                  {@link #MAX_RULES} elements, or the arrays differ in length
+     */
+    public static RuleSet of(String[] names, UserValidation[] rules) {
+        if (rules == null || rules.length == 0) {
+            throw new IllegalArgumentException("Validations array cannot be null or empty");
+        }
+        if (rules.length > MAX_RULES) {
+            throw new IllegalArgumentException("A rule set holds at most " + MAX_RULES + " rules");
+        }
+        if (names == null || names.length != rules.length) {
+            throw new IllegalArgumentException("Every rule needs exactly one name");
+        }
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i] == null) {
+                throw new IllegalArgumentException("Validations array cannot contain null");
+            }
+            if (names[i] == null || names[i].trim().isEmpty()) {
+                throw new IllegalArgumentException("Rule name cannot be null or empty");
+            }
+        }
+        return new RuleSet(names.clone(), rules.clone());
+    }
+
+    // ================== Evaluation ==================
+
+    /**
+     * Evaluates every rule once.
+     *
+     * @param user the user to validate
+     * @return the ids of the failed rules as set bits (bit {@code i} for rule {@code i}); 0 if all passed
+     */
+    public long failureMask(User user) {
+        long mask = 0;
+        for (int i = 0; i < rules.length; i++) {
+            if (!rules[i].apply(user).isValid()) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Evaluates every rule once and reports all failures.
+     *
+     * @param user the user to validate
+     * @return the report; a shared instance if every rule passed
+     */
+    public ValidationReport validate(User user) {
+        long mask = 0;
+        ValidationResult[] failures = null;
+        int failureCount = 0;
+        for (int i = 0; i < rules.length; i++) {
+            ValidationResult result = rules[i].apply(user);
+            if (!result.isValid()) {
+                if (failures == null) {
+                    failures = new ValidationResult[rules.length - i];
+                }
+                failures[failureCount++] = result;
+                mask |= 1L << i;
+            }
+        }
+        return mask == 0 ? allValid : new ValidationReport(this, mask, failures);
+    }
+
+    /**
+     * Wraps failures worked out elsewhere, such as by {@link IncrementalValidator}.
+     *
+     * @param mask the failed rule ids as set bits
+     * @param failures the results of the failed rules, in id order; ignored if mask is 0
+     * @return the report; the shared instance if mask is 0
+     */
+    ValidationReport report(long mask, ValidationResult[] failures) {
+        return mask == 0 ? allValid : new ValidationReport(this, mask, failures);
+    }
+
+    /**
+     * Same as {@link #validate(User)}; the report is valid only if every rule passed,
+     * and its reason is that of the first failed rule.
+     */
+    @Override
+    public ValidationResult apply(User user) {
+        return validate(user);
+    }
+
+    // ================== Rules ==================
+
+    /**
+     * Gets the number of rules.
+     * @return the size
+     */
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Gets the name of a rule.
+     *
+     * @param id the rule id
+     * @return the name
+     * @throws IndexOutOfBoundsException if the id is out of range
+     */
+    public String getRuleName(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets a rule.
+     *
+     * @param id the rule id
+     * @return the rule
+     * @throws IndexOutOfBoundsException if the id is out of range
+     */
+    public UserValidation getRule(int id) {
+        return rules[id];
+    }
+
+    /**
+     * Finds the id of a rule by name.
+     *
+     * @param name the rule name
+     * @return the id, or -1 if no rule has that name
+     */
+    public int idOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
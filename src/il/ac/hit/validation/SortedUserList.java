@@ -0,0 +1,244 @@
+package il.ac.hit.validation;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A list of users kept sorted as users are added, so it never needs a full re-sort.
+ * <p>
+ * {@link #add(User)} finds the insertion point by binary search and shifts the tail with
+ * one array copy. {@link #addAll(User[])} sorts only the new users and merges them in.
+ * Both are stable: a user is placed after the users it compares equal to, so the list
+ * always equals a stable sort of all users in insertion order.
+ * <p>
+ * The sort key of a user must not change while it is in the list. Instances are not
+ * thread-safe.
+ */
+public final class SortedUserList implements Iterable<User> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final Comparator<User> comparator;
+    private User[] users;
+    private int size;
+
+    /**
+     * Constructs an empty list.
+     *
+     * @param comparator the order of the list
+     * @throws IllegalArgumentException if comparator is null
+     */
+    public SortedUserList(Comparator<User> comparator) {
+        if (comparator == null) {
+            throw new IllegalArgumentException("Comparator cannot be null");
+        }
+        this.comparator = comparator;
+        this.users = new User[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Wraps an array that is already sorted by the comparator; the list takes ownership of it.
+     */
+    SortedUserList(Comparator<User> comparator, User[] sorted) {
+        this.comparator = comparator;
+        this.users = sorted.length == 0 ? new User[DEFAULT_CAPACITY] : sorted;
+        this.size = sorted.length;
+    }
+
+    // ================== Insertion ==================
+
+    /**
+     * Inserts a user at its sorted position.
+     *
+     * @param user the user to insert
+     * @return the index the user was inserted at
+     * @throws IllegalArgumentException if user is null
+     */
+    public int add(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        int index = upperBound(user);
+        ensureCapacity(size + 1);
+        System.arraycopy(users, index, users, index + 1, size - index);
+        users[index] = user;
+        size++;
+        return index;
+    }
+
+    /**
+     * Inserts many users. The new users are sorted on their own and merged with the
+     * list in one pass, which beats repeated {@link #add(User)} for large batches.
+     *
+     * @param batch the users to insert
+     * @throws IllegalArgumentException if batch is null or holds null
+     */
+    public void addAll(User[] batch) {
+        if (batch == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        for (User user : batch) {
+            if (user == null) {
+                throw new IllegalArgumentException("User array cannot contain null");
+            }
+        }
+        ensureCapacity(size + batch.length);
+        System.arraycopy(batch, 0, users, size, batch.length);
+        UserSortEngine.sort(users, size, size + batch.length, comparator);
+        UserSortEngine.merge(users, 0, size, size + batch.length, comparator);
+        size += batch.length;
+    }
+
+    // ================== Removal ==================
+
+    /**
+     * Removes a user, compared by identity.
+     *
+     * @param user the user to remove
+     * @return true if the user was in the list
+     */
+    public boolean remove(User user) {
+        if (user == null || size == 0) {
+            return false;
+        }
+        // Only the run of users that compare equal can hold it
+        for (int i = lowerBound(user), end = upperBound(user); i < end; i++) {
+            if (users[i] == user) {
+                removeAt(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the user at an index.
+     *
+     * @param index the index
+     * @return the removed user
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public User removeAt(int index) {
+        checkIndex(index);
+        User removed = users[index];
+        System.arraycopy(users, index + 1, users, index, size - index - 1);
+        users[--size] = null;
+        return removed;
+    }
+
+    // ================== Access ==================
+
+    /**
+     * Gets the user at an index.
+     *
+     * @param index the index
+     * @return the user
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public User get(int index) {
+        checkIndex(index);
+        return users[index];
+    }
+
+    /**
+     * Gets the number of users.
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the list is empty.
+     * @return true if there are no users
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the order of the list.
+     * @return the comparator
+     */
+    public Comparator<User> getComparator() {
+        return comparator;
+    }
+
+    /**
+     * Copies the users, in order.
+     * @return a new array
+     */
+    public User[] toArray() {
+        return Arrays.copyOf(users, size);
+    }
+
+    /**
+     * Returns a read-only live {@link List} view, for example to take a page with {@code subList}.
+     * @return the view
+     */
+    public List<User> asList() {
+        return new AbstractList<User>() {
+            @Override
+            public User get(int index) {
+                return SortedUserList.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<User> iterator() {
+        return asList().iterator();
+    }
+
+    // ================== Internals ==================
+
+    /** First index whose user is not smaller than the given one. */
+    private int lowerBound(User user) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.compare(users[mid], user) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** First index whose user is greater than the given one. */
+    private int upperBound(User user) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.compare(users[mid], user) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > users.length) {
+            users = Arrays.copyOf(users, Math.max(capacity, users.length + (users.length >>> 1)));
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+}
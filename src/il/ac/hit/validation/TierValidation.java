@@ -0,0 +1,193 @@
+package il.ac.hit.validation;
+
+import java.util.Arrays;
+
+/**
+ * A validation that picks a different prebuilt rule per user tier.
+ * <p>
+ * Each rule is registered for a user class and applies to that class and its subclasses,
+ * unless a subclass has a rule of its own. The rule of a concrete class is resolved once and
+ * kept in a {@link ClassValue}, so dispatching a user costs one lookup instead of an
+ * {@code instanceof} chain. Store and snapshot views are dispatched by the tier they hold.
+ * <p>
+ * {@link #validateAll(User[])} groups the users by tier first and validates each group in one
+ * run, so a rule and the users it reads stay in cache for a whole run instead of alternating
+ * with the other tiers. The runs share one loop, so its call site still sees every tier's rule.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * UserValidation policy = TierValidation.of(basicRules)
+ *         .with(PremiumUser.class, premiumRules)
+ *         .with(PlatinumUser.class, platinumRules);
+ * }</pre>
+ * Instances are immutable and thread-safe as long as the rules are.
+ */
+public final class TierValidation implements UserValidation {
+
+    // Registration order; index 0 is User.class
+    private final Class<?>[] types;
+    private final UserValidation[] validations;
+    private final ClassValue<UserValidation> resolved = new ClassValue<UserValidation>() {
+        @Override
+        protected UserValidation computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    private TierValidation(Class<?>[] types, UserValidation[] validations) {
+        this.types = types;
+        this.validations = validations;
+    }
+
+    // ================== Registration ==================
+
+    /**
+     * Creates a tier validation with a default rule, used for every user class that has
+     * no closer registration.
+     *
+     * @param validation the default rule
+     * @return the tier validation
+     * @throws IllegalArgumentException if validation is null
+     */
+    public static TierValidation of(UserValidation validation) {
+        return new TierValidation(new Class<?>[0], new UserValidation[0]).with(User.class, validation);
+    }
+
+    /**
+     * Returns a copy with a rule registered for a user class and its subclasses,
+     * replacing any rule registered for exactly that class.
+     *
+     * @param type the user class, such as {@code PremiumUser.class}
+     * @param validation the rule for that class
+     * @return the new tier validation; this one is unchanged
+     * @throws IllegalArgumentException if type or validation is null
+     */
+    public TierValidation with(Class<? extends User> type, UserValidation validation) {
+        if (type == null) {
+            throw new IllegalArgumentException("User class cannot be null");
+        }
+        if (validation == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        int id = Arrays.asList(types).indexOf(type);
+        Class<?>[] newTypes = types;
+        UserValidation[] newValidations;
+        if (id < 0) {
+            id = types.length;
+            newTypes = Arrays.copyOf(types, id + 1);
+            newTypes[id] = type;
+            newValidations = Arrays.copyOf(validations, id + 1);
+        } else {
+            newValidations = validations.clone();
+        }
+        newValidations[id] = validation;
+        return new TierValidation(newTypes, newValidations);
+    }
+
+    /**
+     * Gets the rule that applies to a user class.
+     *
+     * @param type a user class
+     * @return the rule registered for the class or its closest superclass
+     * @throws IllegalArgumentException if type is null
+     */
+    public UserValidation forClass(Class<? extends User> type) {
+        if (type == null) {
+            throw new IllegalArgumentException("User class cannot be null");
+        }
+        return resolved.get(type);
+    }
+
+    /** Walks up from a class to the closest registered one. */
+    private UserValidation resolve(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == c) {
+                    return validations[i];
+                }
+            }
+        }
+        // Every user is a User, which is always registered
+        throw new IllegalStateException("Not a user class: " + type.getName());
+    }
+
+    // ================== Validation ==================
+
+    @Override
+    public ValidationResult apply(User user) {
+        return resolved.get(user.getTierClass()).apply(user);
+    }
+
+    /**
+     * Validates users grouped by tier: the users are ordered by tier class with a counting sort
+     * of their indexes, each tier class is validated in one loop with its own rule, and the
+     * results are reported in the original order. Tiers that share a rule still get separate
+     * runs.
+     *
+     * @param users the users to validate
+     * @return the batch result, indexed like the array
+     * @throws IllegalArgumentException if users is null or holds null
+     */
+    @Override
+    public BatchValidationResult validateAll(User[] users) {
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        int count = users.length;
+
+        // === Group: number the tier classes in order of appearance (there are few) ===
+        int[] groupIds = new int[count];
+        Class<?>[] groups = new Class<?>[4];
+        int groupCount = 0;
+        int[] starts = new int[groups.length + 1];
+        for (int i = 0; i < count; i++) {
+            if (users[i] == null) {
+                throw new IllegalArgumentException("User array cannot contain null");
+            }
+            Class<?> tier = users[i].getTierClass();
+            int id = 0;
+            while (id < groupCount && groups[id] != tier) {
+                id++;
+            }
+            if (id == groupCount) {
+                if (groupCount == groups.length) {
+                    groups = Arrays.copyOf(groups, 2 * groupCount);
+                    starts = Arrays.copyOf(starts, 2 * groupCount + 1);
+                }
+                groups[groupCount++] = tier;
+            }
+            groupIds[i] = id;
+            starts[id + 1]++;
+        }
+
+        // === Counting sort of indexes by group ===
+        for (int id = 0; id < groupCount; id++) {
+            starts[id + 1] += starts[id];
+        }
+        int[] order = new int[count];
+        int[] next = Arrays.copyOf(starts, groupCount);
+        for (int i = 0; i < count; i++) {
+            order[next[groupIds[i]]++] = i;
+        }
+
+        // === Validate one tier at a time ===
+        ValidationResult[] results = new ValidationResult[count];
+        for (int id = 0; id < groupCount; id++) {
+            validateGroup(resolved.get(groups[id]), users, order, starts[id], starts[id + 1], results);
+        }
+
+        BatchValidationResult.Collector collector = new BatchValidationResult.Collector(null, 0);
+        for (ValidationResult result : results) {
+            collector.add(result);
+        }
+        return collector.build();
+    }
+
+    private static void validateGroup(UserValidation validation, User[] users, int[] order, int from, int to,
+                                      ValidationResult[] results) {
+        for (int k = from; k < to; k++) {
+            int index = order[k];
+            results[index] = validation.apply(users[index]);
+        }
+    }
+}
@@ -1,22 +1,53 @@
 package il.ac.hit.validation;
 
+import java.util.Arrays;
+
 /**
  * Represents a generic user in the system.
  * Holds basic account information including username, email, password, and age.
+ * The password is kept only as a salted hash (see {@link PasswordHasher}). The constructors and
+ * the one-argument password setters hash at {@link PasswordHasher#FAST} cost; credentials that
+ * guard a login are set with {@link #setPassword(char[], PasswordHasher)} and
+ * {@link PasswordHasher#LOGIN}.
+ * <p>
+ * There is no password getter, since the password is not kept: check a password with
+ * {@link #verifyPassword(char[])} (or a {@link PasswordVerifier} for login traffic), and read
+ * or copy the stored hash with {@link #getCredential()}.
  */
 public class User {
 
     // ================== Fields ==================
     private String username;
-    private String email;
-    private String password;
+    private String email; // Only the local part when emailDomain is set
     private int age;
 
+    // The password itself is never kept (see HashedPassword)
+    private PasswordCredential credential;
+    private boolean passwordMatchesUsername;
+
+    // Interned domain of the email (see EmailDomain), or null if the email is stored whole
+    private EmailDomain emailDomain;
+    // Whole address of an interned email, joined on the first getEmail() call; cleared by setEmail
+    private String joinedEmail;
+
+    // Character-class summaries (see CharClassProfile), recomputed whenever the field changes
+    private long emailProfile;
+    private long passwordProfile;
+
+    // Incremented by every setter; lets derived data (such as cache keys) detect changes
+    private int modificationCount;
+    private ValidationCacheKey validationCacheKey;
+
+    // Notified after every setter call (for example by UserIndex); copy-on-write
+    private static final UserListener[] NO_LISTENERS = new UserListener[0];
+    private volatile UserListener[] listeners = NO_LISTENERS;
+
     // ================== Constructor ==================
 
     /**
      * Constructs a new {@code User} with the specified details.
-     * All parameters are validated through their respective setters.
+     * All parameters are validated through their respective setters; the password is hashed
+     * as by {@link #setPassword(String)}.
      *
      * @param username the user's username
      * @param email the user's email
@@ -31,6 +62,47 @@ public class User {
         setAge(age);
     }
 
+    /**
+     * Constructs a new {@code User} from a password given as an array, so no string of it
+     * is ever made. The array is zeroed. See {@link #setPassword(char[])}.
+     *
+     * @param username the user's username
+     * @param email the user's email
+     * @param password the user's password
+     * @param age the user's age
+     */
+    public User(String username, String email, char[] password, int age) {
+        try {
+            setUsername(username);
+            setEmail(email);
+            setPassword(password);
+        } finally {
+            // Also when an earlier field is rejected and the password was never hashed
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+        setAge(age);
+    }
+
+    /**
+     * Constructs a {@code User} from an already hashed password, for stores that keep
+     * credentials (such as {@link UserStore}).
+     */
+    User(String username, String email, HashedPassword password, int age) {
+        setUsername(username);
+        setEmail(email);
+        storePassword(password);
+        setAge(age);
+    }
+
+    /**
+     * Constructs a {@code User} without field values, for subclasses that
+     * override the getters to read their fields from elsewhere (such as flyweight views).
+     */
+    User() {
+    }
+
     // ================== Getters ==================
 
     /**
@@ -43,18 +115,55 @@ public class User {
 
     /**
      * Gets the email.
+     * <p>
+     * An interned email (see {@link #getEmailDomain()}) is joined from its local part and domain
+     * on the first call and the result is kept until the email changes, so later calls do not
+     * allocate. The kept address costs the memory interning saved, but only for users whose
+     * whole email is read; the built-in rules test the parts in place and never join it.
+     *
      * @return the email
      */
     public String getEmail() {
-        return email;
+        if (emailDomain == null) {
+            return email;
+        }
+        // Racy but safe: Strings are immutable, so at worst two threads both join the address
+        String joined = joinedEmail;
+        if (joined == null) {
+            joined = email + '@' + emailDomain.getName();
+            joinedEmail = joined;
+        }
+        return joined;
+    }
+
+    /**
+     * Gets the interned domain of the email.
+     * @return the domain, or null if the email was stored whole because interning was off
+     *         when it was set (see {@link EmailDomain#setInterning(boolean)}) or it has no domain
+     */
+    public EmailDomain getEmailDomain() {
+        return emailDomain;
     }
 
     /**
-     * Gets the password.
-     * @return the password
+     * Gets the salted hash of the password.
+     * @return the credential
+     */
+    public PasswordCredential getCredential() {
+        return credential;
+    }
+
+    /**
+     * Checks a password, for example at login. The check takes time in proportion to the
+     * hash cost, so bursts of logins are better run on a {@link PasswordVerifier}.
+     * The array is not modified.
+     *
+     * @param candidate the password to check
+     * @return true if it is this user's password
      */
-    public String getPassword() {
-        return password;
+    public boolean verifyPassword(char[] candidate) {
+        PasswordCredential current = getCredential();
+        return candidate != null && current != null && current.verify(candidate);
     }
 
     /**
@@ -65,42 +174,268 @@ public class User {
         return age;
     }
 
+    /**
+     * Gets the character-class profile of the email, computed when it was set.
+     * @return the packed profile
+     */
+    long getEmailProfile() {
+        return emailProfile;
+    }
+
+    /**
+     * Gets the character-class profile of the password, computed when it was set.
+     * @return the packed profile
+     */
+    long getPasswordProfile() {
+        return passwordProfile;
+    }
+
+    /**
+     * Gets the number of setter calls made on this user so far.
+     * @return the modification count
+     */
+    int getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Gets the cached validation cache key.
+     * @return the key, or null if none was computed yet
+     */
+    ValidationCacheKey getValidationCacheKey() {
+        return validationCacheKey;
+    }
+
+    /**
+     * Caches the validation cache key of this user.
+     * @param validationCacheKey the key
+     */
+    void setValidationCacheKey(ValidationCacheKey validationCacheKey) {
+        this.validationCacheKey = validationCacheKey;
+    }
+
+    /**
+     * Checks whether the password equals the username. The answer is worked out from the raw
+     * characters when the password is set, and again when the username changes, so this never
+     * runs the hash. A new username is checked against the credential only if it has the
+     * password's length and character classes; such a rename costs one hash run.
+     *
+     * @return true if the password equals the current username
+     */
+    boolean passwordEqualsUsername() {
+        return passwordMatchesUsername;
+    }
+
+    /**
+     * Registers a listener to be notified after every setter call.
+     * @param listener the listener
+     */
+    synchronized void addListener(UserListener listener) {
+        UserListener[] current = listeners;
+        UserListener[] updated = new UserListener[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addListener(UserListener)}.
+     * @param listener the listener
+     */
+    synchronized void removeListener(UserListener listener) {
+        UserListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                UserListener[] updated = new UserListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    private void fieldChanged(int fields) {
+        modificationCount++;
+        notifyListeners(fields);
+    }
+
+    /**
+     * Notifies the registered listeners that fields changed.
+     * @param fields the changed fields, a combination of the {@link UserChange} field bits
+     */
+    void notifyListeners(int fields) {
+        for (UserListener listener : listeners) {
+            listener.userChanged(this, fields);
+        }
+    }
+
+    /**
+     * Tells whether this is a read-only view over data held elsewhere (such as a
+     * {@link UserStore} row) rather than a user holding its own fields.
+     * @return true for views
+     */
+    boolean isView() {
+        return false;
+    }
+
+    /**
+     * Gets the class whose tier rules apply to this user. Views report the class of the
+     * user they show, so tier-keyed lookups such as {@link TierValidation} treat them alike.
+     * @return the tier class
+     */
+    Class<? extends User> getTierClass() {
+        return getClass();
+    }
+
+    // ================== Email text ==================
+    // Text tests on the email that read the local part and the interned domain in place,
+    // so rules on interned users never join the address (see getEmail)
+
+    /**
+     * Tells whether the email equals a text.
+     * @param text the text
+     * @return true if {@code getEmail().equals(text)}
+     */
+    boolean emailEquals(String text) {
+        if (emailDomain == null) {
+            return getEmail().equals(text);
+        }
+        String domain = emailDomain.getName();
+        int at = email.length();
+        return text.length() == at + 1 + domain.length()
+                && text.startsWith(email) && text.charAt(at) == '@' && text.startsWith(domain, at + 1);
+    }
+
+    /**
+     * Tells whether the email starts with a prefix.
+     * @param prefix the prefix
+     * @return true if {@code getEmail().startsWith(prefix)}
+     */
+    boolean emailStartsWith(String prefix) {
+        if (emailDomain == null) {
+            return getEmail().startsWith(prefix);
+        }
+        int at = email.length();
+        if (prefix.length() <= at) {
+            return email.startsWith(prefix);
+        }
+        String domain = emailDomain.getName();
+        int domainPart = prefix.length() - at - 1;
+        return domainPart <= domain.length() && prefix.startsWith(email) && prefix.charAt(at) == '@'
+                && domain.regionMatches(0, prefix, at + 1, domainPart);
+    }
+
+    /**
+     * Tells whether the email ends with a suffix.
+     * @param suffix the suffix
+     * @return true if {@code getEmail().endsWith(suffix)}
+     */
+    boolean emailEndsWith(String suffix) {
+        if (emailDomain == null) {
+            return getEmail().endsWith(suffix);
+        }
+        String domain = emailDomain.getName();
+        if (suffix.length() <= domain.length()) {
+            return domain.endsWith(suffix);
+        }
+        int localPart = suffix.length() - domain.length() - 1;
+        return localPart <= email.length() && suffix.endsWith(domain) && suffix.charAt(localPart) == '@'
+                && email.regionMatches(email.length() - localPart, suffix, 0, localPart);
+    }
+
+    /**
+     * Tells whether the email contains a text.
+     * @param text the text
+     * @return true if {@code getEmail().contains(text)}
+     */
+    boolean emailContains(String text) {
+        if (emailDomain == null || text.indexOf('@') >= 0) {
+            // A match across the '@' is rare enough to join (and keep) the whole address for
+            return getEmail().contains(text);
+        }
+        return email.contains(text) || emailDomain.getName().contains(text);
+    }
+
     // ================== Setters ==================
 
     /**
-     * Sets the username. Must not be null or empty.
+     * Sets the username. Must not be null or empty. Whether the password equals the new
+     * username is checked again; see {@link #passwordEqualsUsername()}.
      * @param username the username to set
      * @throws IllegalArgumentException if the username is invalid
      */
     public void setUsername(String username) {
-        if (username == null || username.trim().isEmpty()) {
-            throw new IllegalArgumentException("Username cannot be empty");
-        }
+        checkUsername(username);
         this.username = username;
+        if (credential != null) {
+            this.passwordMatchesUsername = HashedPassword.matches(credential, passwordProfile, username);
+        }
+        fieldChanged(UserChange.USERNAME);
     }
 
     /**
-     * Sets the email. Must not be null or empty.
+     * Sets the email. Must not be null or empty. While {@link EmailDomain#isInterning()} is on,
+     * only the local part is kept and the domain is shared with other users.
      * @param email the email to set
      * @throws IllegalArgumentException if the email is invalid
      */
     public void setEmail(String email) {
-        if (email == null || email.trim().isEmpty()) {
-            throw new IllegalArgumentException("Email cannot be empty");
-        }
-        this.email = email;
+        checkEmail(email);
+        EmailDomain domain = EmailDomain.isInterning() ? EmailDomain.ofEmail(email) : null;
+        this.email = domain == null ? email : email.substring(0, email.length() - domain.getName().length() - 1);
+        this.emailDomain = domain;
+        this.joinedEmail = null;
+        this.emailProfile = CharClassProfile.of(email);
+        fieldChanged(UserChange.EMAIL);
     }
 
     /**
-     * Sets the password. Must not be null or empty.
+     * Sets the password. Must not be null or empty. Like {@link #setPassword(char[])}, only a
+     * salted hash is kept; the string is copied to a temporary array that is zeroed after hashing.
+     * Prefer the {@code char[]} form where the caller can avoid making a string.
      * @param password the password to set
      * @throws IllegalArgumentException if the password is invalid
      */
     public void setPassword(String password) {
-        if (password == null || password.trim().isEmpty()) {
-            throw new IllegalArgumentException("Password cannot be empty");
-        }
-        this.password = password;
+        storePassword(HashedPassword.hash(password, username, PasswordHasher.FAST));
+    }
+
+    /**
+     * Sets the password, keeping only a salted hash made with {@link PasswordHasher#FAST}.
+     * @param password the password to set; zeroed when this method returns, even on failure
+     * @throws IllegalArgumentException if the password is invalid
+     * @see #setPassword(char[], PasswordHasher)
+     */
+    public void setPassword(char[] password) {
+        setPassword(password, PasswordHasher.FAST);
+    }
+
+    /**
+     * Sets the password, keeping only a salted hash. The character-class profile used by the
+     * password rules, and whether the password equals the username, are worked out here from
+     * the raw characters, which are then zeroed; no string of the password is ever created.
+     * @param password the password to set; zeroed when this method returns, even on failure
+     * @param hasher the hasher, which sets the hash cost
+     * @throws IllegalArgumentException if the password is invalid or hasher is null
+     */
+    public void setPassword(char[] password, PasswordHasher hasher) {
+        storePassword(HashedPassword.hash(password, username, hasher));
+    }
+
+    /**
+     * Replaces the password with an already hashed one, for stores that rebuild users of
+     * registered tiers (see {@link UserFactory.Tier}).
+     */
+    void restorePassword(HashedPassword password) {
+        storePassword(password.forUsername(username));
+    }
+
+    private void storePassword(HashedPassword password) {
+        this.credential = password.credential;
+        this.passwordProfile = password.profile;
+        this.passwordMatchesUsername = password.matchesUsername;
+        fieldChanged(UserChange.PASSWORD);
     }
 
     /**
@@ -109,11 +444,35 @@ public class User {
      * @throws IllegalArgumentException if the age is invalid
      */
     public void setAge(int age) {
+        checkAge(age);
+        this.age = age;
+        fieldChanged(UserChange.AGE);
+    }
+
+    // ================== Field checks ==================
+    // Shared with subclasses that store their fields elsewhere (such as ConcurrentUser)
+
+    static void checkUsername(String username) {
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be empty");
+        }
+    }
+
+    static void checkEmail(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            throw new IllegalArgumentException("Email cannot be empty");
+        }
+    }
+
+    static void checkPassword(String password) {
+        if (password == null || password.trim().isEmpty()) {
+            throw new IllegalArgumentException("Password cannot be empty");
+        }
+    }
+
+    static void checkAge(int age) {
         if (age <= 0) {
             throw new IllegalArgumentException("Age must be positive");
         }
-        this.age = age;
     }
 }
-
-
@@ -0,0 +1,87 @@
+package il.ac.hit.validation;
+
+/**
+ * One mutation of a {@link User} through its setters, as published by a {@link UserChangeStream}.
+ * <p>
+ * The changed fields are bits of an {@code int}, so they can be merged with {@code |} and
+ * tested with {@link #affects(int)}. Instances are immutable.
+ */
+public final class UserChange {
+
+    /** The username changed. */
+    public static final int USERNAME = 1;
+    /** The email changed. */
+    public static final int EMAIL = 1 << 1;
+    /** The password changed. */
+    public static final int PASSWORD = 1 << 2;
+    /** The age changed. */
+    public static final int AGE = 1 << 3;
+    /** Every field. */
+    public static final int ALL = USERNAME | EMAIL | PASSWORD | AGE;
+
+    private final long sequence;
+    private final User user;
+    private final int fields;
+
+    UserChange(long sequence, User user, int fields) {
+        this.sequence = sequence;
+        this.user = user;
+        this.fields = fields;
+    }
+
+    /**
+     * Gets the position of this change in its stream; changes are numbered from 0 without gaps.
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the changed user.
+     * @return the user, with the change already applied
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the changed fields.
+     * @return a combination of the field bits
+     */
+    public int getFields() {
+        return fields;
+    }
+
+    /**
+     * Checks whether any of the given fields changed.
+     *
+     * @param fields a combination of the field bits
+     * @return true if at least one of them changed
+     */
+    public boolean affects(int fields) {
+        return (this.fields & fields) != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "UserChange{sequence=" + sequence + ", user=" + user.getUsername() + ", fields=" + fieldNames(fields) + "}";
+    }
+
+    /**
+     * Lists the names of the fields in a combination of field bits.
+     */
+    static String fieldNames(int fields) {
+        StringBuilder names = new StringBuilder("[");
+        String[] all = {"username", "email", "password", "age"};
+        for (int i = 0; i < all.length; i++) {
+            if ((fields & (1 << i)) != 0) {
+                if (names.length() > 1) {
+                    names.append(", ");
+                }
+                names.append(all[i]);
+            }
+        }
+        return names.append(']').toString();
+    }
+}
@@ -0,0 +1,190 @@
+package il.ac.hit.validation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A lock-free ring buffer of {@link UserChange} events, fed by the setters of watched users.
+ * <p>
+ * Each setter call on a watched user claims the next sequence number with one atomic
+ * increment and stores its event in the slot for that number with a compare-and-set; setters
+ * never block and never wait for subscribers. Every {@link Subscription} reads the events in
+ * sequence order with its own cursor. A subscriber that falls more than the capacity behind
+ * loses the oldest events; it skips to the oldest event still held and counts what it missed
+ * (see {@link Subscription#getLostCount()}), so it can fall back to a full refresh.
+ * <p>
+ * The buffer keeps the users of its last {@code capacity} events reachable.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * UserChangeStream stream = new UserChangeStream(4096);
+ * stream.watch(user);
+ * UserChangeStream.Subscription changes = stream.subscribe();
+ * user.setAge(30);
+ * UserChange change = changes.poll();   // fields == UserChange.AGE
+ * }</pre>
+ */
+public final class UserChangeStream {
+
+    private final AtomicReferenceArray<UserChange> slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // Next sequence number to claim
+    private final UserListener listener = this::publish;
+
+    /**
+     * Constructs a stream.
+     *
+     * @param capacity the number of events kept for subscribers; rounded up to a power of two
+     * @throws IllegalArgumentException if capacity is not positive or above 2^30
+     */
+    public UserChangeStream(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    // ================== Producers ==================
+
+    /**
+     * Publishes the changes made through a user's setters from now on.
+     *
+     * @param user the user
+     * @throws IllegalArgumentException if user is null
+     */
+    public void watch(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        user.addListener(listener);
+    }
+
+    /**
+     * Stops publishing the changes of a user.
+     *
+     * @param user the user
+     */
+    public void unwatch(User user) {
+        if (user != null) {
+            user.removeListener(listener);
+        }
+    }
+
+    private void publish(User user, int fields) {
+        long sequence = head.getAndIncrement();
+        UserChange change = new UserChange(sequence, user, fields);
+        int index = (int) sequence & mask;
+        while (true) {
+            UserChange current = slots.get(index);
+            // A producer a whole lap ahead already took the slot: this event is lost anyway
+            if (current != null && current.getSequence() > sequence) {
+                return;
+            }
+            if (slots.compareAndSet(index, current, change)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of events published so far.
+     * @return the next sequence number
+     */
+    public long getPublishedCount() {
+        return head.get();
+    }
+
+    /**
+     * Gets the number of events kept for subscribers.
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    // ================== Consumers ==================
+
+    /**
+     * Starts reading the events published from now on.
+     * @return a new subscription
+     */
+    public Subscription subscribe() {
+        return new Subscription(head.get());
+    }
+
+    /**
+     * One reader of the stream. A subscription must be used by one thread at a time.
+     */
+    public final class Subscription {
+        private long cursor;
+        private long lost;
+
+        private Subscription(long cursor) {
+            this.cursor = cursor;
+        }
+
+        /**
+         * Takes the next event.
+         * @return the event, or null if no newer event has been published yet
+         */
+        public UserChange poll() {
+            while (true) {
+                UserChange change = slots.get((int) cursor & mask);
+                if (change == null || change.getSequence() < cursor) {
+                    return null;
+                }
+                if (change.getSequence() == cursor) {
+                    cursor++;
+                    return change;
+                }
+                // Overwritten by a later lap: skip to the oldest event that can still be held
+                long next = Math.max(cursor + 1, head.get() - (mask + 1));
+                lost += next - cursor;
+                cursor = next;
+            }
+        }
+
+        /**
+         * Takes up to {@code max} events, in order.
+         *
+         * @param consumer receives each event
+         * @param max the largest number of events to take
+         * @return the number of events taken
+         * @throws IllegalArgumentException if consumer is null
+         */
+        public int drain(Consumer<? super UserChange> consumer, int max) {
+            if (consumer == null) {
+                throw new IllegalArgumentException("Consumer cannot be null");
+            }
+            int count = 0;
+            UserChange change;
+            while (count < max && (change = poll()) != null) {
+                consumer.accept(change);
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Gets the number of events that were overwritten before this subscription read them.
+         * @return the lost event count
+         */
+        public long getLostCount() {
+            return lost;
+        }
+
+        /**
+         * Gets the number of published events not read yet, including lost ones.
+         * @return the backlog
+         */
+        public long getBacklog() {
+            return Math.max(0, head.get() - cursor);
+        }
+    }
+}
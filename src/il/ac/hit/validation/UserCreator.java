@@ -0,0 +1,72 @@
+package il.ac.hit.validation;
+
+import java.util.Arrays;
+
+/**
+ * Creates users of one tier. Registered with {@link UserFactory#register(String, Class, UserCreator)};
+ * the constructors of the {@link User} subclasses fit directly, for example {@code BasicUser::new}.
+ */
+@FunctionalInterface
+public interface UserCreator {
+
+    /**
+     * Creates a user.
+     *
+     * @param username the user's username
+     * @param email the user's email
+     * @param password the user's password
+     * @param age the user's age
+     * @return the new user
+     * @throws IllegalArgumentException if a field is invalid
+     */
+    User create(String username, String email, String password, int age);
+
+    /**
+     * Creates a user from a password given as an array. The built-in tiers hash the array
+     * directly; this default hands a string copy to {@link #create(String, String, String, int)}.
+     *
+     * @param username the user's username
+     * @param email the user's email
+     * @param password the user's password; zeroed when this method returns, even on failure
+     * @param age the user's age
+     * @return the new user
+     * @throws IllegalArgumentException if a field is invalid
+     */
+    default User create(String username, String email, char[] password, int age) {
+        try {
+            return create(username, email, password == null ? null : new String(password), age);
+        } finally {
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+
+    /**
+     * Creates a user whose password is hashed with the given hasher. The built-in tiers hash
+     * the array once, with that hasher; this default creates the user from a copy of the array
+     * and then replaces its password through {@link User#setPassword(char[], PasswordHasher)}.
+     *
+     * @param username the user's username
+     * @param email the user's email
+     * @param password the user's password; zeroed when this method returns, even on failure
+     * @param age the user's age
+     * @param hasher the hasher, which sets the hash cost
+     * @return the new user
+     * @throws IllegalArgumentException if a field is invalid or hasher is null
+     */
+    default User create(String username, String email, char[] password, int age, PasswordHasher hasher) {
+        try {
+            if (hasher == null) {
+                throw new IllegalArgumentException("Password hasher cannot be null");
+            }
+            User user = create(username, email, password == null ? null : password.clone(), age);
+            user.setPassword(password, hasher);
+            return user;
+        } finally {
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+        }
+    }
+}
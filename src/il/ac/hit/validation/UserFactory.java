@@ -1,15 +1,203 @@
 package il.ac.hit.validation;
 
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Factory class for creating instances of {@link User} subclasses.
- * Supports creation of BasicUser, PremiumUser, and PlatinumUser.
+ * Supports creation of BasicUser, PremiumUser, and PlatinumUser; further
+ * tiers can be added at runtime with {@link #register(String, Class, UserCreator)}.
+ * <p>
+ * Every tier has a code, used by the byte tier columns of {@link UserStore} and
+ * {@link UserSnapshot} and by the {@code tier} field of {@link RuleExpression}: 0 is a plain
+ * {@link User} ({@link UserStore#TIER_USER}), the built-in tiers are 1 to 3, and registered
+ * tiers are numbered on from 4 in registration order. A user belongs to the tier registered
+ * for its class or, failing that, for its closest registered superclass.
+ * <p>
+ * Type names are case-insensitive. A name that is already lower case is found
+ * without allocating; callers creating many users of one tier can resolve it once
+ * with {@link #tier(String)} and skip the lookup altogether.
+ * <p>
+ * Only the salted hash of each password is kept. Passwords are hashed with
+ * {@link PasswordHasher#FAST} unless a hasher is passed; a pipeline that creates login
+ * credentials passes its own, such as {@link PasswordHasher#LOGIN}, to the overloads that
+ * take one. Nothing here reads a global hash setting.
  */
 public class UserFactory {
- 
+
+    // ================== Registry ==================
+
+    /** Largest tier code; codes fit the byte tier columns of the stores. */
+    static final int MAX_TIER_CODE = Byte.MAX_VALUE;
+
+    /** Registered tiers by lower-case type name. */
+    private static final Map<String, Tier> TIERS = new ConcurrentHashMap<>();
+    private static final Map<Class<? extends User>, Tier> TIERS_BY_CLASS = new ConcurrentHashMap<>();
+    private static final AtomicReferenceArray<Tier> TIERS_BY_CODE = new AtomicReferenceArray<>(MAX_TIER_CODE + 1);
+    private static int nextCode = UserStore.TIER_USER + 1; // Guarded by the class lock
+
+    static {
+        register("basic", BasicUser.class, new HashingCreator(BasicUser::new));
+        register("premium", PremiumUser.class, new HashingCreator(PremiumUser::new));
+        register("platinum", PlatinumUser.class, new HashingCreator(PlatinumUser::new));
+    }
+
+    /** The hashed password constructor of a built-in tier. */
+    private interface HashingConstructor {
+        User create(String username, String email, HashedPassword password, int age);
+    }
+
+    /**
+     * Adapts a built-in tier constructor. The other fields are checked first, so a rejected
+     * user costs no hash; the password is then hashed once, with the caller's hasher.
+     */
+    private static final class HashingCreator implements UserCreator {
+        private final HashingConstructor constructor;
+
+        HashingCreator(HashingConstructor constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        public User create(String username, String email, String password, int age) {
+            return create(username, email, password == null ? null : password.toCharArray(), age);
+        }
+
+        @Override
+        public User create(String username, String email, char[] password, int age) {
+            return create(username, email, password, age, PasswordHasher.FAST);
+        }
+
+        @Override
+        public User create(String username, String email, char[] password, int age, PasswordHasher hasher) {
+            try {
+                User.checkUsername(username);
+                User.checkEmail(email);
+                User.checkAge(age);
+            } catch (IllegalArgumentException e) {
+                if (password != null) {
+                    Arrays.fill(password, '\0');
+                }
+                throw e;
+            }
+            return constructor.create(username, email, HashedPassword.hash(password, username, hasher), age);
+        }
+    }
+
+    /**
+     * Registers a new user type, with the next free tier code.
+     *
+     * @param type the type name; matched case-insensitively
+     * @param userClass the class of the users the type creates; its instances, and those of
+     *                  its subclasses without a tier of their own, belong to the new tier
+     * @param creator creates users of the type
+     * @return the resolved tier
+     * @throws IllegalArgumentException if type is null or empty, userClass or creator is null,
+     *                                  userClass is {@link User} itself, the type is "user" (which
+     *                                  names plain users), the type or class is already
+     *                                  registered, or every tier code is taken
+     */
+    public static synchronized Tier register(String type, Class<? extends User> userClass, UserCreator creator) {
+        if (type == null || type.trim().isEmpty()) {
+            throw new IllegalArgumentException("User type cannot be null or empty");
+        }
+        if (userClass == null) {
+            throw new IllegalArgumentException("User class cannot be null");
+        }
+        if (userClass == User.class) {
+            throw new IllegalArgumentException("A user type needs its own subclass of User");
+        }
+        if (creator == null) {
+            throw new IllegalArgumentException("User creator cannot be null");
+        }
+        String name = type.toLowerCase(Locale.ROOT);
+        if (name.equals("user")) {
+            throw new IllegalArgumentException("User type name is reserved for plain users: " + type);
+        }
+        if (TIERS.containsKey(name)) {
+            throw new IllegalArgumentException("User type already registered: " + type);
+        }
+        if (TIERS_BY_CLASS.containsKey(userClass)) {
+            throw new IllegalArgumentException("User class already registered: " + userClass.getName());
+        }
+        if (nextCode > MAX_TIER_CODE) {
+            throw new IllegalArgumentException("Cannot register more than " + MAX_TIER_CODE + " user types");
+        }
+        Tier tier = new Tier(name, (byte) nextCode++, userClass, creator);
+        TIERS_BY_CODE.set(tier.code, tier);
+        TIERS_BY_CLASS.put(userClass, tier);
+        TIERS.put(name, tier);
+        return tier;
+    }
+
+    /**
+     * Resolves a type name to its registered tier.
+     *
+     * @param type the type of user (for example "basic", "premium", or "platinum")
+     * @return the tier
+     * @throws IllegalArgumentException if the type is null, empty or unknown
+     */
+    public static Tier tier(String type) {
+        // === Argument Validation ===
+        if (type == null || type.trim().isEmpty()) {
+            throw new IllegalArgumentException("User type cannot be null or empty");
+        }
+
+        // === Exact name first; lower-case only names that miss ===
+        Tier tier = TIERS.get(type);
+        if (tier == null) {
+            tier = TIERS.get(type.toLowerCase(Locale.ROOT));
+            if (tier == null) {
+                throw new IllegalArgumentException("Unknown user type: " + type);
+            }
+        }
+        return tier;
+    }
+
+    /**
+     * Looks up a type name, case-insensitively.
+     *
+     * @return the tier, or null if no such type is registered
+     */
+    static Tier findTier(String type) {
+        Tier tier = TIERS.get(type);
+        return tier != null ? tier : TIERS.get(type.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Looks up a tier code.
+     *
+     * @return the tier, or null for {@link UserStore#TIER_USER} and codes not yet assigned
+     */
+    static Tier tierOf(int code) {
+        return code > UserStore.TIER_USER && code <= MAX_TIER_CODE ? TIERS_BY_CODE.get(code) : null;
+    }
+
+    /**
+     * Finds the tier of a user class: the one registered for the class or for its closest
+     * registered superclass.
+     *
+     * @return the tier, or null if the user is a plain {@link User}
+     */
+    static Tier tierOf(Class<?> userClass) {
+        for (Class<?> type = userClass; type != null && type != User.class; type = type.getSuperclass()) {
+            Tier tier = TIERS_BY_CLASS.get(type);
+            if (tier != null) {
+                return tier;
+            }
+        }
+        return null;
+    }
+
+    // ================== Creation ==================
+
     /**
      * Creates a specific type of user based on the provided type string.
      *
-     * @param type the type of user ("basic", "premium", or "platinum")
+     * @param type the type of user ("basic", "premium", "platinum", or a registered type)
      * @param username the username for the user
      * @param email the email address for the user
      * @param password the password for the user
@@ -18,28 +206,244 @@ public class UserFactory {
      * @throws IllegalArgumentException if the type is unknown or invalid
      */
     public static User createUser(String type, String username, String email, String password, int age) {
-        // === Argument Validation ===
-        if (type == null || type.trim().isEmpty()) {
-            throw new IllegalArgumentException("User type cannot be null or empty");
+        return tier(type).create(username, email, password, age);
+    }
+
+    /**
+     * Creates a specific type of user from a password given as an array, so no string
+     * of the password is made by the built-in tiers.
+     *
+     * @param type the type of user ("basic", "premium", "platinum", or a registered type)
+     * @param username the username for the user
+     * @param email the email address for the user
+     * @param password the password for the user; zeroed when this method returns
+     * @param age the age of the user
+     * @return a new instance of {@link User} subclass
+     * @throws IllegalArgumentException if the type is unknown or invalid
+     */
+    public static User createUser(String type, String username, String email, char[] password, int age) {
+        return createUser(type, username, email, password, age, PasswordHasher.FAST);
+    }
+
+    /**
+     * Creates a specific type of user, hashing the password with the given hasher.
+     *
+     * @param type the type of user ("basic", "premium", "platinum", or a registered type)
+     * @param username the username for the user
+     * @param email the email address for the user
+     * @param password the password for the user; zeroed when this method returns
+     * @param age the age of the user
+     * @param hasher the hasher, which sets the hash cost
+     * @return a new instance of {@link User} subclass
+     * @throws IllegalArgumentException if the type is unknown or invalid, or hasher is null
+     */
+    public static User createUser(String type, String username, String email, char[] password, int age,
+                                  PasswordHasher hasher) {
+        Tier tier;
+        try {
+            tier = tier(type);
+        } catch (IllegalArgumentException e) {
+            if (password != null) {
+                Arrays.fill(password, '\0');
+            }
+            throw e;
+        }
+        return tier.create(username, email, password, age, hasher);
+    }
+
+    /**
+     * Creates many users of one type from column arrays. The type is resolved once;
+     * element {@code i} of every column describes user {@code i}.
+     *
+     * @param type the type of user
+     * @param usernames the usernames
+     * @param emails the email addresses
+     * @param passwords the passwords
+     * @param ages the ages
+     * @return the new users, in column order
+     * @throws IllegalArgumentException if the type is unknown or invalid, a column is null,
+     *                                  the columns differ in length, or a field is invalid
+     */
+    public static User[] createUsers(String type, String[] usernames, String[] emails, String[] passwords, int[] ages) {
+        return tier(type).createUsers(usernames, emails, passwords, ages);
+    }
+
+    /**
+     * Creates many users of one type from column arrays, hashing every password with the
+     * given hasher.
+     *
+     * @param type the type of user
+     * @param usernames the usernames
+     * @param emails the email addresses
+     * @param passwords the passwords
+     * @param ages the ages
+     * @param hasher the hasher, which sets the hash cost
+     * @return the new users, in column order
+     * @throws IllegalArgumentException if the type is unknown or invalid, a column is null,
+     *                                  the columns differ in length, a field is invalid, or hasher is null
+     */
+    public static User[] createUsers(String type, String[] usernames, String[] emails, String[] passwords, int[] ages,
+                                     PasswordHasher hasher) {
+        return tier(type).createUsers(usernames, emails, passwords, ages, hasher);
+    }
+
+    // ================== Tier ==================
+
+    /**
+     * A registered user type, resolved from its name.
+     */
+    public static final class Tier {
+        /** Password handed to creators of registered types when a stored user is rebuilt. */
+        private static final char[] RESTORE_PLACEHOLDER = {'*'};
+
+        private final String name;
+        private final byte code;
+        private final Class<? extends User> userClass;
+        private final UserCreator creator;
+
+        private Tier(String name, byte code, Class<? extends User> userClass, UserCreator creator) {
+            this.name = name;
+            this.code = code;
+            this.userClass = userClass;
+            this.creator = creator;
+        }
+
+        /**
+         * Gets the lower-case type name.
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the tier code, as stored by {@link UserStore} and {@link UserSnapshot}.
+         * @return the code, from 1 for the first built-in tier
+         */
+        public byte getCode() {
+            return code;
         }
 
-        // === Convert type to lowercase and create appropriate user ===
-        switch (type.toLowerCase()) {
-            // Creating a BasicUser
-            case "basic":
-                return new BasicUser(username, email, password, age);
+        /**
+         * Gets the class of the users of this tier.
+         * @return the user class
+         */
+        public Class<? extends User> getUserClass() {
+            return userClass;
+        }
 
-            // Creating a PremiumUser
-            case "premium":
-                return new PremiumUser(username, email, password, age);
+        /**
+         * Rebuilds a stored user of this tier around its already hashed password.
+         * Built-in tiers take the hash directly; creators of registered types are called
+         * with a placeholder password whose credential is then replaced.
+         */
+        User restore(String username, String email, HashedPassword password, int age) {
+            if (creator instanceof HashingCreator) {
+                return ((HashingCreator) creator).constructor.create(username, email, password, age);
+            }
+            User user = creator.create(username, email, RESTORE_PLACEHOLDER.clone(), age);
+            user.restorePassword(password);
+            return user;
+        }
 
-            // Creating a PlatinumUser
-            case "platinum":
-                return new PlatinumUser(username, email, password, age);
+        /**
+         * Creates a user of this tier.
+         *
+         * @param username the username for the user
+         * @param email the email address for the user
+         * @param password the password for the user
+         * @param age the age of the user
+         * @return the new user
+         * @throws IllegalArgumentException if a field is invalid
+         */
+        public User create(String username, String email, String password, int age) {
+            return creator.create(username, email, password, age);
+        }
 
-            // Unknown user type
-            default:
-                throw new IllegalArgumentException("Unknown user type: " + type);
+        /**
+         * Creates a user of this tier from a password given as an array.
+         *
+         * @param username the username for the user
+         * @param email the email address for the user
+         * @param password the password for the user; zeroed when this method returns
+         * @param age the age of the user
+         * @return the new user
+         * @throws IllegalArgumentException if a field is invalid
+         */
+        public User create(String username, String email, char[] password, int age) {
+            return create(username, email, password, age, PasswordHasher.FAST);
+        }
+
+        /**
+         * Creates a user of this tier, hashing the password with the given hasher.
+         *
+         * @param username the username for the user
+         * @param email the email address for the user
+         * @param password the password for the user; zeroed when this method returns
+         * @param age the age of the user
+         * @param hasher the hasher, which sets the hash cost
+         * @return the new user
+         * @throws IllegalArgumentException if a field is invalid or hasher is null
+         */
+        public User create(String username, String email, char[] password, int age, PasswordHasher hasher) {
+            try {
+                return creator.create(username, email, password, age, hasher);
+            } finally {
+                if (password != null) {
+                    Arrays.fill(password, '\0');
+                }
+            }
+        }
+
+        /**
+         * Creates many users of this tier from column arrays.
+         *
+         * @param usernames the usernames
+         * @param emails the email addresses
+         * @param passwords the passwords
+         * @param ages the ages
+         * @return the new users, in column order
+         * @throws IllegalArgumentException if a column is null, the columns differ in length,
+         *                                  or a field is invalid
+         */
+        public User[] createUsers(String[] usernames, String[] emails, String[] passwords, int[] ages) {
+            return createUsers(usernames, emails, passwords, ages, PasswordHasher.FAST);
+        }
+
+        /**
+         * Creates many users of this tier from column arrays, hashing every password with
+         * the given hasher.
+         *
+         * @param usernames the usernames
+         * @param emails the email addresses
+         * @param passwords the passwords
+         * @param ages the ages
+         * @param hasher the hasher, which sets the hash cost
+         * @return the new users, in column order
+         * @throws IllegalArgumentException if a column is null, the columns differ in length,
+         *                                  a field is invalid, or hasher is null
+         */
+        public User[] createUsers(String[] usernames, String[] emails, String[] passwords, int[] ages,
+                                  PasswordHasher hasher) {
+            if (usernames == null || emails == null || passwords == null || ages == null) {
+                throw new IllegalArgumentException("Columns cannot be null");
+            }
+            int count = usernames.length;
+            if (emails.length != count || passwords.length != count || ages.length != count) {
+                throw new IllegalArgumentException("Columns must have the same length");
+            }
+            User[] users = new User[count];
+            for (int i = 0; i < count; i++) {
+                String password = passwords[i];
+                users[i] = creator.create(usernames[i], emails[i],
+                        password == null ? null : password.toCharArray(), ages[i], hasher);
+            }
+            return users;
+        }
+
+        @Override
+        public String toString() {
+            return "Tier{" + name + "}";
         }
     }
 }
@@ -0,0 +1,1114 @@
+package il.ac.hit.validation;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Streaming bulk import: CSV or NDJSON records to {@link UserFactory} to {@link UserValidation}.
+ * <p>
+ * The import runs as a pipeline of three stages connected by bounded queues:
+ * <ol>
+ *     <li>a reader thread fills a byte buffer from the channel and cuts it into batches
+ *         of raw records, without decoding or splitting lines into strings;</li>
+ *     <li>worker threads parse the fields of each record straight from the bytes, create
+ *         the users and validate them;</li>
+ *     <li>the calling thread hands the batches, in file order, to the sinks: valid users go
+ *         to the accepted consumer, everything else to the {@link RejectSink} with its reason.</li>
+ * </ol>
+ * At most {@code queueCapacity + workers} batches exist at any time; the reader blocks
+ * once that many are waiting to be delivered. A batch ends after {@code batchSize} records or
+ * about 4 MB of them, whichever comes first, so memory use depends neither on the file size
+ * nor on how long its records are.
+ * <p>
+ * CSV records have the columns {@code type,username,email,password,age}; fields may be
+ * quoted, with {@code ""} as an escaped quote, and an optional header line starting with
+ * {@code type,} is skipped. NDJSON records are flat objects with the keys {@code type},
+ * {@code username}, {@code email}, {@code password} (strings) and {@code age} (integer);
+ * other keys with scalar values are ignored. Blank lines are skipped in both formats.
+ * <p>
+ * Passwords are decoded from the bytes straight into arrays and handed to
+ * {@link UserFactory#createUser(String, String, String, char[], int, PasswordHasher)}, so no
+ * string of them is made. Each user's password is hashed with the importer's hasher,
+ * {@link PasswordHasher#FAST} unless one is given; at login strength the hash dominates the
+ * cost of an import, so size the worker count accordingly.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * UserImporter importer = new UserImporter(UserValidation.all(
+ *         UserValidation.emailEndsWithIL(), UserValidation.ageBiggerThan18()));
+ * UserImporter.Summary summary = importer.importFile(path, UserImporter.Format.CSV,
+ *         store::add,
+ *         (line, user, reason) -> log.warn("line " + line + ": " + reason.getReasonOrNull()));
+ * }</pre>
+ */
+public final class UserImporter {
+
+    /** Input formats understood by the importer. */
+    public enum Format {
+        /** Comma-separated values, one user per record. */
+        CSV,
+        /** Newline-delimited JSON, one flat object per line. */
+        NDJSON
+    }
+
+    /**
+     * Receives records that were not imported.
+     */
+    @FunctionalInterface
+    public interface RejectSink {
+        /**
+         * Called once for every rejected record, in file order, on the importing thread.
+         *
+         * @param lineNumber the 1-based line on which the record starts
+         * @param user the created user if the record was rejected by validation,
+         *             or null if no user could be created from it
+         * @param reason why the record was rejected
+         */
+        void reject(long lineNumber, User user, Invalid reason);
+    }
+
+    /** Default number of records per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /** Records longer than this are rejected without being buffered. */
+    static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    /**
+     * A batch is closed early once it buffers this many bytes, so a batch holds at most
+     * {@code MAX_BATCH_BYTES + MAX_RECORD_LENGTH} bytes of records whatever the batch size.
+     */
+    static final int MAX_BATCH_BYTES = 1 << 22;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int FIELD_COUNT = 5;
+    private static final long POLL_MILLIS = 100;
+
+    private final UserValidation validation;
+    private final int batchSize;
+    private final int workers;
+    private final int queueCapacity;
+    private final PasswordHasher hasher;
+
+    /**
+     * Constructs an importer with default batch size, one worker per processor
+     * and a queue of two batches per worker.
+     *
+     * @param validation the validation every imported user must pass; must be thread-safe
+     * @throws IllegalArgumentException if validation is null
+     */
+    public UserImporter(UserValidation validation) {
+        this(validation, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors(),
+                2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an importer.
+     *
+     * @param validation the validation every imported user must pass; must be thread-safe
+     * @param batchSize the number of records per batch
+     * @param workers the number of worker threads that parse, create and validate
+     * @param queueCapacity the number of batches that may wait between two stages
+     * @throws IllegalArgumentException if validation is null, or a size is not positive
+     */
+    public UserImporter(UserValidation validation, int batchSize, int workers, int queueCapacity) {
+        this(validation, batchSize, workers, queueCapacity, PasswordHasher.FAST);
+    }
+
+    /**
+     * Constructs an importer that hashes passwords with the given hasher.
+     *
+     * @param validation the validation every imported user must pass; must be thread-safe
+     * @param batchSize the number of records per batch
+     * @param workers the number of worker threads that parse, create and validate
+     * @param queueCapacity the number of batches that may wait between two stages
+     * @param hasher hashes the password of every imported user
+     * @throws IllegalArgumentException if validation or hasher is null, or a size is not positive
+     */
+    public UserImporter(UserValidation validation, int batchSize, int workers, int queueCapacity,
+                        PasswordHasher hasher) {
+        if (validation == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        if (hasher == null) {
+            throw new IllegalArgumentException("Password hasher cannot be null");
+        }
+        this.validation = validation;
+        this.batchSize = batchSize;
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.hasher = hasher;
+    }
+
+    // ================== Import ==================
+
+    /**
+     * Imports every record of a file.
+     *
+     * @param path the file to read
+     * @param format the file format
+     * @param accepted receives every user that passed validation, in file order
+     * @param rejects receives every record that could not be parsed or failed validation
+     * @return the import counts
+     * @throws IOException if the file cannot be read, or the import was interrupted
+     * @throws IllegalArgumentException if an argument is null
+     */
+    public Summary importFile(Path path, Format format, Consumer<? super User> accepted, RejectSink rejects)
+            throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return importFrom(channel, format, accepted, rejects);
+        }
+    }
+
+    /**
+     * Imports every record read from a channel. The channel is not closed.
+     *
+     * @param channel the channel to read until end of stream
+     * @param format the input format
+     * @param accepted receives every user that passed validation, in input order
+     * @param rejects receives every record that could not be parsed or failed validation
+     * @return the import counts
+     * @throws IOException if the channel cannot be read, or the import was interrupted
+     * @throws IllegalArgumentException if an argument is null
+     */
+    public Summary importFrom(ReadableByteChannel channel, Format format, Consumer<? super User> accepted,
+                              RejectSink rejects) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Channel cannot be null");
+        }
+        if (format == null) {
+            throw new IllegalArgumentException("Format cannot be null");
+        }
+        if (accepted == null || rejects == null) {
+            throw new IllegalArgumentException("Sinks cannot be null");
+        }
+        return new Run(channel, format, accepted, rejects).execute();
+    }
+
+    /**
+     * One import: owns the queues and threads of the pipeline.
+     */
+    private final class Run {
+        private final Format format;
+        private final Consumer<? super User> accepted;
+        private final RejectSink rejects;
+
+        private final RecordReader reader;
+        private final int window = queueCapacity + workers;
+        private final Semaphore inFlight = new Semaphore(window);
+        private final BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<Batch> validated = new ArrayBlockingQueue<>(window + workers);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final Thread[] threads = new Thread[workers + 1];
+
+        private long recordCount;
+        private long acceptedCount;
+        private long rejectedCount;
+
+        Run(ReadableByteChannel channel, Format format, Consumer<? super User> accepted, RejectSink rejects) {
+            this.format = format;
+            this.accepted = accepted;
+            this.rejects = rejects;
+            this.reader = new RecordReader(channel, format == Format.CSV, batchSize);
+        }
+
+        Summary execute() throws IOException {
+            threads[0] = new Thread(this::read, "user-import-reader");
+            for (int i = 1; i <= workers; i++) {
+                threads[i] = new Thread(this::work, "user-import-worker-" + i);
+            }
+            for (Thread thread : threads) {
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            boolean completed = false;
+            try {
+                deliver();
+                completed = failure.get() == null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                stop(!completed);
+            }
+            rethrowFailure();
+            return new Summary(recordCount, acceptedCount, rejectedCount);
+        }
+
+        // === Stage 1: reader ===
+
+        private void read() {
+            try {
+                long sequence = 0;
+                while (true) {
+                    inFlight.acquire();
+                    Batch batch = reader.next();
+                    if (batch == null) {
+                        break;
+                    }
+                    batch.sequence = sequence++;
+                    parsed.put(batch);
+                }
+                for (int i = 0; i < workers; i++) {
+                    parsed.put(Batch.END);
+                }
+            } catch (InterruptedException e) {
+                // Aborted by the importing thread
+            } catch (IOException | RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        // === Stage 2: workers ===
+
+        private void work() {
+            RecordParser parser = format == Format.CSV ? new CsvParser(hasher) : new JsonParser(hasher);
+            try {
+                while (true) {
+                    Batch batch = parsed.take();
+                    if (batch == Batch.END) {
+                        validated.put(Batch.END);
+                        return;
+                    }
+                    process(batch, parser);
+                    validated.put(batch);
+                }
+            } catch (InterruptedException e) {
+                // Aborted by the importing thread
+            } catch (RuntimeException | Error e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        private void process(Batch batch, RecordParser parser) {
+            batch.users = new User[batch.size];
+            batch.rejections = new Invalid[batch.size];
+            for (int i = 0; i < batch.size; i++) {
+                User user;
+                try {
+                    if (batch.lengths[i] < 0) {
+                        throw new IllegalArgumentException("Record exceeds " + MAX_RECORD_LENGTH + " bytes");
+                    }
+                    user = parser.parse(batch.data, batch.starts[i], batch.starts[i] + batch.lengths[i]);
+                } catch (IllegalArgumentException e) {
+                    batch.rejections[i] = new Invalid(reasonOf(e.getMessage(), "Malformed record"));
+                    continue;
+                }
+                batch.users[i] = user;
+                ValidationResult result = validation.apply(user);
+                if (!result.isValid()) {
+                    batch.rejections[i] = result instanceof Invalid
+                            ? (Invalid) result
+                            : new Invalid(reasonOf(result.getReasonOrNull(), "Validation failed"));
+                }
+            }
+            // The raw bytes are no longer needed; drop them before the batch waits for delivery
+            batch.data = null;
+        }
+
+        // === Stage 3: delivery on the importing thread ===
+
+        private void deliver() throws InterruptedException {
+            // Batches complete out of order; every batch in flight has a sequence number within
+            // [next, next + window), so a ring of that size holds them until their turn
+            Batch[] pending = new Batch[window];
+            long next = 0;
+            int ended = 0;
+
+            while (ended < workers) {
+                Batch batch = validated.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    if (failure.get() != null) {
+                        return;
+                    }
+                    continue;
+                }
+                if (batch == Batch.END) {
+                    ended++;
+                    continue;
+                }
+                pending[(int) (batch.sequence % window)] = batch;
+
+                int slot;
+                while ((batch = pending[slot = (int) (next % window)]) != null) {
+                    pending[slot] = null;
+                    emit(batch);
+                    inFlight.release();
+                    next++;
+                }
+            }
+        }
+
+        private void emit(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                recordCount++;
+                Invalid rejection = batch.rejections[i];
+                if (rejection == null) {
+                    acceptedCount++;
+                    accepted.accept(batch.users[i]);
+                } else {
+                    rejectedCount++;
+                    rejects.reject(batch.lines[i], batch.users[i], rejection);
+                }
+            }
+        }
+
+        private void stop(boolean abort) throws IOException {
+            if (abort) {
+                for (Thread thread : threads) {
+                    thread.interrupt();
+                }
+            }
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        thread.interrupt();
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Import interrupted");
+            }
+        }
+
+        private void rethrowFailure() throws IOException {
+            Throwable cause = failure.get();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+        }
+    }
+
+    private static String reasonOf(String message, String fallback) {
+        return message == null || message.trim().isEmpty() ? fallback : message;
+    }
+
+    // ================== Summary ==================
+
+    /**
+     * Counts of one completed import.
+     */
+    public static final class Summary {
+        private final long recordCount;
+        private final long acceptedCount;
+        private final long rejectedCount;
+
+        Summary(long recordCount, long acceptedCount, long rejectedCount) {
+            this.recordCount = recordCount;
+            this.acceptedCount = acceptedCount;
+            this.rejectedCount = rejectedCount;
+        }
+
+        /**
+         * Gets the number of records read, excluding blank lines and the CSV header.
+         * @return the record count
+         */
+        public long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * Gets the number of users handed to the accepted consumer.
+         * @return the accepted count
+         */
+        public long getAcceptedCount() {
+            return acceptedCount;
+        }
+
+        /**
+         * Gets the number of records handed to the reject sink.
+         * @return the rejected count
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{records=" + recordCount + ", accepted=" + acceptedCount
+                    + ", rejected=" + rejectedCount + "}";
+        }
+    }
+
+    // ================== Batches ==================
+
+    /**
+     * Raw records of consecutive lines, and after validation the users and rejections.
+     */
+    private static final class Batch {
+        static final Batch END = new Batch(0, 0);
+
+        long sequence;
+        byte[] data;
+        int used;
+        final int[] starts;
+        final int[] lengths; // -1 marks a record longer than MAX_RECORD_LENGTH
+        final long[] lines;
+        int size;
+
+        User[] users;
+        Invalid[] rejections;
+
+        Batch(int capacity, int bytes) {
+            this.data = new byte[bytes];
+            this.starts = new int[capacity];
+            this.lengths = new int[capacity];
+            this.lines = new long[capacity];
+        }
+
+        void append(byte[] source, int from, int to) {
+            int length = to - from;
+            if (used + length > data.length) {
+                // Doubling stops at the most a batch can hold (see MAX_BATCH_BYTES)
+                int doubled = (int) Math.min(data.length * 2L, MAX_BATCH_BYTES + MAX_RECORD_LENGTH);
+                byte[] grown = new byte[Math.max(doubled, used + length)];
+                System.arraycopy(data, 0, grown, 0, used);
+                data = grown;
+            }
+            System.arraycopy(source, from, data, used, length);
+            used += length;
+        }
+    }
+
+    /**
+     * Cuts a channel into batches of records. Only looks for record ends (and, for CSV,
+     * quotes that may hide them); fields are left to the workers.
+     */
+    private static final class RecordReader {
+        private static final byte[] CSV_HEADER = "type,".getBytes(StandardCharsets.US_ASCII);
+
+        private final ReadableByteChannel channel;
+        private final boolean csv;
+        private final int batchSize;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        private int position;
+        private int limit;
+        private boolean endOfStream;
+        private boolean filled;
+        private boolean atStart = true;
+        private long line = 1;
+
+        RecordReader(ReadableByteChannel channel, boolean csv, int batchSize) {
+            this.channel = channel;
+            this.csv = csv;
+            this.batchSize = batchSize;
+        }
+
+        /** Reads the next batch, or returns null at end of stream. */
+        Batch next() throws IOException {
+            Batch batch = new Batch(batchSize, (int) Math.min(batchSize * 64L, MAX_BATCH_BYTES));
+            while (batch.size < batchSize && batch.used < MAX_BATCH_BYTES && nextRecord(batch)) {
+                batch.size++;
+            }
+            return batch.size == 0 ? null : batch;
+        }
+
+        /** Appends the next non-blank record to the batch; returns false at end of stream. */
+        private boolean nextRecord(Batch batch) throws IOException {
+            int index = batch.size;
+            while (true) {
+                int start = batch.used;
+                long startLine = line;
+                boolean inQuotes = false;
+                boolean oversized = false;
+                boolean terminated = false;
+
+                while (!terminated) {
+                    if (position == limit && !fill()) {
+                        break;
+                    }
+                    int end = position;
+                    while (end < limit) {
+                        byte b = buffer[end];
+                        if (b == '\n') {
+                            line++;
+                            if (!inQuotes) {
+                                terminated = true;
+                                break;
+                            }
+                        } else if (b == '"' && csv) {
+                            inQuotes = !inQuotes;
+                        }
+                        end++;
+                    }
+                    if (!oversized) {
+                        if (batch.used - start + end - position > MAX_RECORD_LENGTH) {
+                            // Keep scanning for the end of the record, but stop buffering it
+                            oversized = true;
+                            batch.used = start;
+                        } else {
+                            batch.append(buffer, position, end);
+                        }
+                    }
+                    position = terminated ? end + 1 : end;
+                }
+
+                if (!terminated && !oversized && batch.used == start) {
+                    return false; // End of stream
+                }
+                if (oversized) {
+                    batch.starts[index] = start;
+                    batch.lengths[index] = -1;
+                    batch.lines[index] = startLine;
+                    return true;
+                }
+
+                int length = batch.used - start;
+                if (length > 0 && batch.data[start + length - 1] == '\r') {
+                    length--;
+                }
+                boolean skip = isBlank(batch.data, start, start + length)
+                        || (csv && atStart && startsWithIgnoreCase(batch.data, start, length, CSV_HEADER));
+                if (length > 0) {
+                    atStart = false;
+                }
+                if (skip) {
+                    batch.used = start;
+                    if (!terminated) {
+                        return false;
+                    }
+                    continue;
+                }
+                batch.starts[index] = start;
+                batch.lengths[index] = length;
+                batch.lines[index] = startLine;
+                return true;
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if (endOfStream) {
+                return false;
+            }
+            wrapped.clear();
+            int read;
+            do {
+                read = channel.read(wrapped);
+            } while (read == 0);
+            if (read < 0) {
+                endOfStream = true;
+                return false;
+            }
+            position = 0;
+            limit = read;
+            if (!filled && limit >= 3
+                    && buffer[0] == (byte) 0xEF && buffer[1] == (byte) 0xBB && buffer[2] == (byte) 0xBF) {
+                position = 3; // UTF-8 byte order mark
+            }
+            filled = true;
+            return true;
+        }
+
+        private static boolean isBlank(byte[] data, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (data[i] != ' ' && data[i] != '\t') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean startsWithIgnoreCase(byte[] data, int from, int length, byte[] prefix) {
+            if (length < prefix.length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if ((data[from + i] | 0x20) != prefix[i] && data[from + i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // ================== Record parsers ==================
+
+    /**
+     * Turns the bytes of one record into a user. One instance per worker thread.
+     */
+    private interface RecordParser {
+        /**
+         * @throws IllegalArgumentException if the record is malformed or the factory rejects it
+         */
+        User parse(byte[] data, int from, int to);
+    }
+
+    /**
+     * Decodes UTF-8 bytes straight into a new array, so no string of them is made.
+     * Malformed input is replaced as by {@code new String(bytes, UTF_8)}.
+     */
+    private static char[] decodeChars(byte[] data, int from, int to) {
+        CharBuffer decoded = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(data, from, to - from));
+        char[] chars = Arrays.copyOfRange(decoded.array(), decoded.arrayOffset() + decoded.position(),
+                decoded.arrayOffset() + decoded.limit());
+        Arrays.fill(decoded.array(), '\0');
+        return chars;
+    }
+
+    /** Zeroes a password array, if there is one. */
+    private static void clear(char[] password) {
+        if (password != null) {
+            Arrays.fill(password, '\0');
+        }
+    }
+
+    private static int parseAge(byte[] data, int from, int to) {
+        int i = from;
+        boolean negative = i < to && data[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == to || to - i > 10) {
+            throw new IllegalArgumentException("Invalid age: " + new String(data, from, to - from, StandardCharsets.UTF_8));
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Invalid age: " + new String(data, from, to - from, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid age: " + new String(data, from, to - from, StandardCharsets.UTF_8));
+        }
+        return (int) value;
+    }
+
+    /**
+     * {@code type,username,email,password,age}, with optional RFC 4180 quoting.
+     */
+    private static final class CsvParser implements RecordParser {
+        private static final int PASSWORD_FIELD = 3;
+
+        private final PasswordHasher hasher;
+        private final String[] fields = new String[FIELD_COUNT - 1];
+        private byte[] scratch = new byte[256];
+        private char[] password;
+
+        // Location of the last field read by nextField
+        private byte[] fieldData;
+        private int fieldFrom;
+        private int fieldTo;
+
+        CsvParser(PasswordHasher hasher) {
+            this.hasher = hasher;
+        }
+
+        @Override
+        public User parse(byte[] data, int from, int to) {
+            try {
+                return parseRecord(data, from, to);
+            } finally {
+                clear(password);
+                password = null;
+            }
+        }
+
+        private User parseRecord(byte[] data, int from, int to) {
+            int count = 0;
+            int age = 0;
+            int position = from;
+            while (true) {
+                if (count == FIELD_COUNT) {
+                    throw new IllegalArgumentException("Expected " + FIELD_COUNT + " fields but found more");
+                }
+                position = nextField(data, position, to);
+                if (count == PASSWORD_FIELD) {
+                    password = decodeChars(fieldData, fieldFrom, fieldTo);
+                } else if (count < FIELD_COUNT - 1) {
+                    fields[count] = new String(fieldData, fieldFrom, fieldTo - fieldFrom, StandardCharsets.UTF_8);
+                } else {
+                    age = parseAge(fieldData, fieldFrom, fieldTo);
+                }
+                count++;
+                if (position == to) {
+                    break;
+                }
+                position++; // Comma
+            }
+            if (count != FIELD_COUNT) {
+                throw new IllegalArgumentException("Expected " + FIELD_COUNT + " fields but found " + count);
+            }
+            return UserFactory.createUser(fields[0], fields[1], fields[2], password, age, hasher);
+        }
+
+        /** Locates the field starting at position; returns the position of the following comma or the end. */
+        private int nextField(byte[] data, int position, int to) {
+            if (position == to || data[position] != '"') {
+                int end = position;
+                while (end < to && data[end] != ',') {
+                    end++;
+                }
+                fieldData = data;
+                fieldFrom = position;
+                fieldTo = end;
+                return end;
+            }
+
+            // Quoted: copy into scratch, turning "" into "
+            int length = 0;
+            int i = position + 1;
+            while (true) {
+                if (i == to) {
+                    throw new IllegalArgumentException("Unterminated quoted field");
+                }
+                byte b = data[i++];
+                if (b == '"') {
+                    if (i < to && data[i] == '"') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (length == scratch.length) {
+                    byte[] grown = new byte[scratch.length * 2];
+                    System.arraycopy(scratch, 0, grown, 0, length);
+                    scratch = grown;
+                }
+                scratch[length++] = b;
+            }
+            if (i < to && data[i] != ',') {
+                throw new IllegalArgumentException("Unexpected character after quoted field");
+            }
+            fieldData = scratch;
+            fieldFrom = 0;
+            fieldTo = length;
+            return i;
+        }
+    }
+
+    /**
+     * A flat JSON object per record. Keys are matched on their raw bytes.
+     */
+    private static final class JsonParser implements RecordParser {
+        private static final byte[] TYPE = key("type");
+        private static final byte[] USERNAME = key("username");
+        private static final byte[] EMAIL = key("email");
+        private static final byte[] PASSWORD = key("password");
+        private static final byte[] AGE = key("age");
+
+        private final PasswordHasher hasher;
+        private byte[] data;
+        private int position;
+        private int to;
+        private char[] password;
+
+        JsonParser(PasswordHasher hasher) {
+            this.hasher = hasher;
+        }
+
+        private static byte[] key(String name) {
+            return name.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        @Override
+        public User parse(byte[] data, int from, int to) {
+            try {
+                return parseRecord(data, from, to);
+            } finally {
+                clear(password);
+                password = null;
+            }
+        }
+
+        private User parseRecord(byte[] data, int from, int to) {
+            this.data = data;
+            this.position = from;
+            this.to = to;
+
+            String type = null;
+            String username = null;
+            String email = null;
+            int age = 0;
+            boolean hasAge = false;
+
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+            } else {
+                while (true) {
+                    expect('"');
+                    int keyFrom = position;
+                    skipString();
+                    int keyTo = position - 1;
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+
+                    if (matches(keyFrom, keyTo, TYPE)) {
+                        type = stringValue("type");
+                    } else if (matches(keyFrom, keyTo, USERNAME)) {
+                        username = stringValue("username");
+                    } else if (matches(keyFrom, keyTo, EMAIL)) {
+                        email = stringValue("email");
+                    } else if (matches(keyFrom, keyTo, PASSWORD)) {
+                        clear(password);
+                        password = charsValue("password");
+                    } else if (matches(keyFrom, keyTo, AGE)) {
+                        int numberFrom = position;
+                        skipNumber();
+                        age = parseAge(data, numberFrom, position);
+                        hasAge = true;
+                    } else {
+                        skipScalar();
+                    }
+
+                    skipWhitespace();
+                    int separator = peek();
+                    position++;
+                    if (separator == '}') {
+                        break;
+                    }
+                    if (separator != ',') {
+                        throw new IllegalArgumentException("Expected ',' or '}' in JSON object");
+                    }
+                    skipWhitespace();
+                }
+            }
+            skipWhitespace();
+            if (position != to) {
+                throw new IllegalArgumentException("Unexpected characters after JSON object");
+            }
+            if (!hasAge) {
+                throw new IllegalArgumentException("Missing field: age");
+            }
+            return UserFactory.createUser(type, username, email, password, age, hasher);
+        }
+
+        private int peek() {
+            if (position >= to) {
+                throw new IllegalArgumentException("Unexpected end of JSON record");
+            }
+            return data[position];
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' in JSON record");
+            }
+            position++;
+        }
+
+        private void skipWhitespace() {
+            while (position < to) {
+                byte b = data[position];
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        private boolean matches(int from, int end, byte[] name) {
+            if (end - from != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (data[from + i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Moves past the closing quote of a string whose opening quote was consumed; returns true if it had escapes. */
+        private boolean skipString() {
+            boolean escaped = false;
+            while (true) {
+                if (position >= to) {
+                    throw new IllegalArgumentException("Unterminated JSON string");
+                }
+                byte b = data[position++];
+                if (b == '"') {
+                    return escaped;
+                }
+                if (b == '\\') {
+                    escaped = true;
+                    position++;
+                }
+            }
+        }
+
+        /** Reads a string or null value. */
+        private String stringValue(String field) {
+            if (peek() == 'n') {
+                skipLiteral("null");
+                return null;
+            }
+            if (peek() != '"') {
+                throw new IllegalArgumentException("Field " + field + " must be a string");
+            }
+            int from = ++position;
+            boolean escaped = skipString();
+            int end = position - 1;
+            return escaped ? new String(unescape(from, end)) : new String(data, from, end - from, StandardCharsets.UTF_8);
+        }
+
+        /** Reads a string or null value into a new array, without making a string of it. */
+        private char[] charsValue(String field) {
+            if (peek() == 'n') {
+                skipLiteral("null");
+                return null;
+            }
+            if (peek() != '"') {
+                throw new IllegalArgumentException("Field " + field + " must be a string");
+            }
+            int from = ++position;
+            boolean escaped = skipString();
+            int end = position - 1;
+            return escaped ? unescape(from, end) : decodeChars(data, from, end);
+        }
+
+        private char[] unescape(int from, int end) {
+            // Never longer than its UTF-8 bytes: every char takes at least one byte, every escape two
+            char[] chars = new char[end - from];
+            try {
+                int length = 0;
+                int run = from;
+                int i = from;
+                while (i < end) {
+                    if (data[i] != '\\') {
+                        i++;
+                        continue;
+                    }
+                    length = appendDecoded(chars, length, run, i);
+                    char escape = (char) data[i + 1];
+                    i += 2;
+                    switch (escape) {
+                        case '"':
+                        case '\\':
+                        case '/':
+                            chars[length++] = escape;
+                            break;
+                        case 'b':
+                            chars[length++] = '\b';
+                            break;
+                        case 'f':
+                            chars[length++] = '\f';
+                            break;
+                        case 'n':
+                            chars[length++] = '\n';
+                            break;
+                        case 'r':
+                            chars[length++] = '\r';
+                            break;
+                        case 't':
+                            chars[length++] = '\t';
+                            break;
+                        case 'u':
+                            if (i + 4 > end) {
+                                throw new IllegalArgumentException("Invalid unicode escape in JSON string");
+                            }
+                            int code = 0;
+                            for (int j = 0; j < 4; j++) {
+                                int digit = Character.digit(data[i + j], 16);
+                                if (digit < 0) {
+                                    throw new IllegalArgumentException("Invalid unicode escape in JSON string");
+                                }
+                                code = (code << 4) | digit;
+                            }
+                            chars[length++] = (char) code;
+                            i += 4;
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Invalid escape in JSON string: \\" + escape);
+                    }
+                    run = i;
+                }
+                length = appendDecoded(chars, length, run, end);
+                return Arrays.copyOf(chars, length);
+            } finally {
+                clear(chars);
+            }
+        }
+
+        private int appendDecoded(char[] chars, int length, int from, int end) {
+            char[] run = decodeChars(data, from, end);
+            System.arraycopy(run, 0, chars, length, run.length);
+            clear(run);
+            return length + run.length;
+        }
+
+        private void skipNumber() {
+            while (position < to) {
+                byte b = data[position];
+                if ((b < '0' || b > '9') && b != '-' && b != '+' && b != '.' && b != 'e' && b != 'E') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        private void skipLiteral(String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                if (position >= to || data[position] != literal.charAt(i)) {
+                    throw new IllegalArgumentException("Invalid literal in JSON record");
+                }
+                position++;
+            }
+        }
+
+        /** Skips the value of an ignored key; only scalars are supported. */
+        private void skipScalar() {
+            int c = peek();
+            if (c == '"') {
+                position++;
+                skipString();
+            } else if (c == 'n') {
+                skipLiteral("null");
+            } else if (c == 't') {
+                skipLiteral("true");
+            } else if (c == 'f') {
+                skipLiteral("false");
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                skipNumber();
+            } else {
+                throw new IllegalArgumentException("Unsupported JSON value; records must be flat objects");
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package il.ac.hit.validation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Secondary indexes over a collection of users, kept up to date as users change.
+ * <p>
+ * Three indexes are maintained:
+ * <ul>
+ *     <li>username, in a sorted map: exact and prefix lookups in {@code O(log n + k)};</li>
+ *     <li>email domain, in a hash map: a user is filed under its domain and every parent
+ *         domain, so {@code "il"} finds all users of {@code ac.il}, {@code co.il} and so on;</li>
+ *     <li>age, over a sorted {@code int[]} of distinct ages with one bucket each:
+ *         range lookups binary-search the bounds.</li>
+ * </ul>
+ * An indexed user is observed through its setters, so changing its username, email or age
+ * moves it in the indexes right away. Lookups return new lists the caller may keep.
+ * <p>
+ * Only users holding their own fields can be indexed; read-only views such as those of
+ * {@link UserStore#view(int)} are rejected. Instances are thread-safe; every operation
+ * holds the index lock.
+ */
+public final class UserIndex {
+
+    /** Fields a user was filed under, so it can be found again when they change. */
+    private static final class Entry {
+        String username;
+        String[] domains;
+        int age;
+    }
+
+    private final Listener listener = new Listener();
+    private final Map<User, Entry> entries = new IdentityHashMap<>();
+    private final NavigableMap<String, Set<User>> byUsername = new TreeMap<>();
+    private final Map<String, Set<User>> byDomain = new HashMap<>();
+
+    // Age index: distinct ages in ascending order and the users of each age
+    private int[] ages = new int[16];
+    private List<Set<User>> ageBuckets = new ArrayList<>();
+
+    /**
+     * Constructs an empty index.
+     */
+    public UserIndex() {
+    }
+
+    /**
+     * Constructs an index over the given users.
+     *
+     * @param users the users to index
+     * @throws IllegalArgumentException if users is null or holds a user that cannot be indexed
+     */
+    public UserIndex(Iterable<? extends User> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        for (User user : users) {
+            add(user);
+        }
+    }
+
+    // ================== Membership ==================
+
+    /**
+     * Adds a user to the index. Adding a user that is already indexed has no effect.
+     *
+     * @param user the user to index
+     * @return true if the user was added
+     * @throws IllegalArgumentException if user is null or is a read-only view
+     */
+    public synchronized boolean add(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        if (user.isView()) {
+            throw new IllegalArgumentException("User views cannot be indexed");
+        }
+        if (entries.containsKey(user)) {
+            return false;
+        }
+        Entry entry = new Entry();
+        entries.put(user, entry);
+        file(user, entry);
+        user.addListener(listener);
+        return true;
+    }
+
+    /**
+     * Removes a user from the index.
+     *
+     * @param user the user to remove
+     * @return true if the user was indexed
+     */
+    public synchronized boolean remove(User user) {
+        Entry entry = entries.remove(user);
+        if (entry == null) {
+            return false;
+        }
+        user.removeListener(listener);
+        unfile(user, entry);
+        return true;
+    }
+
+    /**
+     * Checks whether a user is indexed.
+     *
+     * @param user the user
+     * @return true if the user is indexed
+     */
+    public synchronized boolean contains(User user) {
+        return entries.containsKey(user);
+    }
+
+    /**
+     * Gets the number of indexed users.
+     * @return the size
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // ================== Queries ==================
+
+    /**
+     * Finds the users with the given username.
+     *
+     * @param username the username
+     * @return the matching users
+     * @throws IllegalArgumentException if username is null
+     */
+    public synchronized List<User> findByUsername(String username) {
+        if (username == null) {
+            throw new IllegalArgumentException("Username cannot be null");
+        }
+        Set<User> bucket = byUsername.get(username);
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket);
+    }
+
+    /**
+     * Finds the users whose username starts with a prefix, ordered by username.
+     *
+     * @param prefix the prefix; the empty prefix matches every user
+     * @return the matching users
+     * @throws IllegalArgumentException if prefix is null
+     */
+    public synchronized List<User> findByUsernamePrefix(String prefix) {
+        if (prefix == null) {
+            throw new IllegalArgumentException("Prefix cannot be null");
+        }
+        List<User> result = new ArrayList<>();
+        for (Map.Entry<String, Set<User>> bucket : byUsername.tailMap(prefix, true).entrySet()) {
+            if (!bucket.getKey().startsWith(prefix)) {
+                break;
+            }
+            result.addAll(bucket.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Finds the users whose email domain is the given domain or one of its subdomains.
+     * Domains are compared case-insensitively.
+     *
+     * @param domain the domain, for example {@code "hit.ac.il"} or {@code "il"}
+     * @return the matching users
+     * @throws IllegalArgumentException if domain is null
+     */
+    public synchronized List<User> findByEmailDomain(String domain) {
+        if (domain == null) {
+            throw new IllegalArgumentException("Domain cannot be null");
+        }
+        Set<User> bucket = byDomain.get(domain.toLowerCase(Locale.ROOT));
+        return bucket == null ? new ArrayList<>() : new ArrayList<>(bucket);
+    }
+
+    /**
+     * Finds the users whose age lies in a range, ordered by age.
+     *
+     * @param minAge the smallest age, inclusive
+     * @param maxAge the largest age, inclusive
+     * @return the matching users
+     */
+    public synchronized List<User> findByAgeRange(int minAge, int maxAge) {
+        List<User> result = new ArrayList<>();
+        if (minAge > maxAge) {
+            return result;
+        }
+        int to = slotAbove(maxAge);
+        for (int i = slotAtLeast(minAge); i < to; i++) {
+            result.addAll(ageBuckets.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Counts the users whose age lies in a range.
+     *
+     * @param minAge the smallest age, inclusive
+     * @param maxAge the largest age, inclusive
+     * @return the number of matching users
+     */
+    public synchronized int countByAgeRange(int minAge, int maxAge) {
+        if (minAge > maxAge) {
+            return 0;
+        }
+        int to = slotAbove(maxAge);
+        int count = 0;
+        for (int i = slotAtLeast(minAge); i < to; i++) {
+            count += ageBuckets.get(i).size();
+        }
+        return count;
+    }
+
+    // ================== Maintenance ==================
+
+    /**
+     * Re-files users whose indexed fields changed.
+     */
+    private final class Listener implements UserListener {
+        @Override
+        public void userChanged(User user, int fields) {
+            if ((fields & (UserChange.USERNAME | UserChange.EMAIL | UserChange.AGE)) == 0) {
+                return;
+            }
+            synchronized (UserIndex.this) {
+                Entry entry = entries.get(user);
+                if (entry == null) {
+                    return;
+                }
+                String[] domains = domainsOf(user);
+                boolean usernameChanged = !entry.username.equals(user.getUsername());
+                boolean ageChanged = entry.age != user.getAge();
+                boolean domainChanged = domains != entry.domains && !Arrays.equals(domains, entry.domains);
+                if (usernameChanged || ageChanged || domainChanged) {
+                    unfile(user, entry);
+                    file(user, entry);
+                }
+            }
+        }
+    }
+
+    private void file(User user, Entry entry) {
+        entry.username = user.getUsername();
+        entry.domains = domainsOf(user);
+        entry.age = user.getAge();
+
+        byUsername.computeIfAbsent(entry.username, key -> newBucket()).add(user);
+        for (String domain : entry.domains) {
+            byDomain.computeIfAbsent(domain, key -> newBucket()).add(user);
+        }
+        int slot = ageSlot(entry.age);
+        if (slot < 0) {
+            slot = -slot - 1;
+            insertAge(slot, entry.age);
+        }
+        ageBuckets.get(slot).add(user);
+    }
+
+    private void unfile(User user, Entry entry) {
+        removeFrom(byUsername, entry.username, user);
+        for (String domain : entry.domains) {
+            removeFrom(byDomain, domain, user);
+        }
+        int slot = ageSlot(entry.age);
+        Set<User> bucket = ageBuckets.get(slot);
+        bucket.remove(user);
+        if (bucket.isEmpty()) {
+            removeAge(slot);
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<User>> index, String key, User user) {
+        Set<User> bucket = index.get(key);
+        bucket.remove(user);
+        if (bucket.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static Set<User> newBucket() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    // === Email domains ===
+
+    private static String domainOf(String email) {
+        int at = email.lastIndexOf('@');
+        return at < 0 || at == email.length() - 1 ? "" : email.substring(at + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The domain of a user's email followed by its parent domains, for example hit.ac.il,
+     * ac.il, il. Interned domains share one precomputed array.
+     */
+    private static String[] domainsOf(User user) {
+        EmailDomain domain = user.getEmailDomain();
+        return domain != null ? domain.getHierarchy() : EmailDomain.hierarchyOf(domainOf(user.getEmail()));
+    }
+
+    // === Age keys ===
+
+    private int ageSlot(int age) {
+        return Arrays.binarySearch(ages, 0, ageBuckets.size(), age);
+    }
+
+    /** Index of the first distinct age not below the given one. */
+    private int slotAtLeast(int age) {
+        int slot = ageSlot(age);
+        return slot < 0 ? -slot - 1 : slot;
+    }
+
+    /** Index of the first distinct age above the given one. */
+    private int slotAbove(int age) {
+        int slot = ageSlot(age);
+        return slot < 0 ? -slot - 1 : slot + 1;
+    }
+
+    private void insertAge(int slot, int age) {
+        int count = ageBuckets.size();
+        if (count == ages.length) {
+            ages = Arrays.copyOf(ages, count * 2);
+        }
+        System.arraycopy(ages, slot, ages, slot + 1, count - slot);
+        ages[slot] = age;
+        ageBuckets.add(slot, newBucket());
+    }
+
+    private void removeAge(int slot) {
+        int count = ageBuckets.size();
+        System.arraycopy(ages, slot + 1, ages, slot, count - slot - 1);
+        ageBuckets.remove(slot);
+    }
+}
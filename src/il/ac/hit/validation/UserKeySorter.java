@@ -0,0 +1,353 @@
+package il.ac.hit.validation;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Key-extracting sorts behind {@link UserUtils#sortByIntKey} and {@link UserUtils#sortByStringKey}.
+ * <p>
+ * Each user's key is read exactly once into a primitive array. The keys are then sorted
+ * without calling back into {@link User} or a {@link java.util.Comparator}, and the
+ * resulting order is applied to the user array in a single permutation pass.
+ * All sorts here are stable.
+ */
+final class UserKeySorter {
+
+    /** Ranges shorter than this are sorted by insertion sort. */
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    /** Largest key range (max - min + 1) handled by counting sort instead of radix sort. */
+    private static final int COUNTING_SORT_MAX_RANGE = 1 << 16;
+
+    /** Radix sort digit width, in bits. */
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX - 1;
+
+    /** Number of leading characters packed into a string prefix key. */
+    private static final int PREFIX_CHARS = 3;
+    private static final int PREFIX_CHAR_BITS = 17;
+
+    private UserKeySorter() {
+    }
+
+    // ================== Int keys ==================
+
+    /**
+     * Sorts users by an int key: counting sort for narrow key ranges (such as ages),
+     * LSD radix sort otherwise.
+     *
+     * @param users the array to sort
+     * @param keyExtractor reads the key of each user, called once per user
+     */
+    static void sortByIntKey(User[] users, ToIntFunction<User> keyExtractor) {
+        int n = users.length;
+        if (n < 2) {
+            return;
+        }
+
+        // === Extract keys once ===
+        int[] keys = new int[n];
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int key = keyExtractor.applyAsInt(users[i]);
+            keys[i] = key;
+            if (key < min) {
+                min = key;
+            }
+            if (key > max) {
+                max = key;
+            }
+        }
+
+        if (min == max) {
+            return;
+        }
+        if (n < INSERTION_SORT_THRESHOLD) {
+            insertionSort(keys, users);
+            return;
+        }
+
+        long range = (long) max - min + 1;
+        if (range <= COUNTING_SORT_MAX_RANGE) {
+            countingSort(keys, users, min, (int) range);
+        } else {
+            radixSort(keys, users, min);
+        }
+    }
+
+    private static void insertionSort(int[] keys, User[] users) {
+        for (int i = 1; i < keys.length; i++) {
+            int key = keys[i];
+            User user = users[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                users[j + 1] = users[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            users[j + 1] = user;
+        }
+    }
+
+    private static void countingSort(int[] keys, User[] users, int min, int range) {
+        int[] positions = new int[range + 1];
+        for (int key : keys) {
+            positions[key - min + 1]++;
+        }
+        for (int i = 1; i <= range; i++) {
+            positions[i] += positions[i - 1];
+        }
+
+        User[] sorted = new User[users.length];
+        for (int i = 0; i < keys.length; i++) {
+            sorted[positions[keys[i] - min]++] = users[i];
+        }
+        System.arraycopy(sorted, 0, users, 0, users.length);
+    }
+
+    /**
+     * LSD radix sort on {@code key - min}, treated as an unsigned 32-bit value.
+     * Digits on which every key agrees are skipped.
+     */
+    private static void radixSort(int[] keys, User[] users, int min) {
+        int n = keys.length;
+        for (int i = 0; i < n; i++) {
+            keys[i] -= min;
+        }
+
+        int[] keysIn = keys;
+        User[] usersIn = users;
+        int[] keysOut = new int[n];
+        User[] usersOut = new User[n];
+        int[] counts = new int[RADIX];
+
+        for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int key : keysIn) {
+                counts[(key >>> shift) & RADIX_MASK]++;
+            }
+            if (counts[(keysIn[0] >>> shift) & RADIX_MASK] == n) {
+                continue;
+            }
+
+            int total = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int count = counts[digit];
+                counts[digit] = total;
+                total += count;
+            }
+            for (int i = 0; i < n; i++) {
+                int position = counts[(keysIn[i] >>> shift) & RADIX_MASK]++;
+                keysOut[position] = keysIn[i];
+                usersOut[position] = usersIn[i];
+            }
+
+            int[] swapKeys = keysIn;
+            keysIn = keysOut;
+            keysOut = swapKeys;
+            User[] swapUsers = usersIn;
+            usersIn = usersOut;
+            usersOut = swapUsers;
+        }
+
+        if (usersIn != users) {
+            System.arraycopy(usersIn, 0, users, 0, n);
+        }
+    }
+
+    // ================== Int key indexes ==================
+
+    /**
+     * Sorts the positions of an int column by their key, stable. Counting sort is used only
+     * while the key range stays within a few times the row count, so one extreme key cannot
+     * blow up the count array; wider ranges are radix sorted.
+     *
+     * @param keys the key column; not modified
+     * @param count the number of rows, from the start of the column
+     * @return the row indexes, in key order
+     */
+    static int[] sortedIndexesByIntKey(int[] keys, int count) {
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        if (count < 2) {
+            return order;
+        }
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, keys[i]);
+            max = Math.max(max, keys[i]);
+        }
+        if (min == max) {
+            return order;
+        }
+
+        long range = (long) max - min + 1;
+        if (range <= Math.max(INSERTION_SORT_THRESHOLD, 4L * count)) {
+            int[] positions = new int[(int) range + 1];
+            for (int i = 0; i < count; i++) {
+                positions[keys[i] - min + 1]++;
+            }
+            for (int i = 1; i <= range; i++) {
+                positions[i] += positions[i - 1];
+            }
+            for (int i = 0; i < count; i++) {
+                order[positions[keys[i] - min]++] = i;
+            }
+            return order;
+        }
+        return radixSortIndexes(keys, order, min);
+    }
+
+    /** LSD radix sort of row indexes on {@code keys[row] - min}, as in {@link #radixSort}. */
+    private static int[] radixSortIndexes(int[] keys, int[] order, int min) {
+        int n = order.length;
+        int[] keysIn = new int[n];
+        for (int i = 0; i < n; i++) {
+            keysIn[i] = keys[i] - min;
+        }
+
+        int[] orderIn = order;
+        int[] keysOut = new int[n];
+        int[] orderOut = new int[n];
+        int[] counts = new int[RADIX];
+
+        for (int shift = 0; shift < Integer.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int key : keysIn) {
+                counts[(key >>> shift) & RADIX_MASK]++;
+            }
+            if (counts[(keysIn[0] >>> shift) & RADIX_MASK] == n) {
+                continue;
+            }
+
+            int total = 0;
+            for (int digit = 0; digit < RADIX; digit++) {
+                int digitCount = counts[digit];
+                counts[digit] = total;
+                total += digitCount;
+            }
+            for (int i = 0; i < n; i++) {
+                int position = counts[(keysIn[i] >>> shift) & RADIX_MASK]++;
+                keysOut[position] = keysIn[i];
+                orderOut[position] = orderIn[i];
+            }
+
+            int[] swapKeys = keysIn;
+            keysIn = keysOut;
+            keysOut = swapKeys;
+            int[] swapOrder = orderIn;
+            orderIn = orderOut;
+            orderOut = swapOrder;
+        }
+        return orderIn;
+    }
+
+    // ================== String keys ==================
+
+    /**
+     * Sorts users by the natural order of a string key.
+     * <p>
+     * The leading characters of each key are packed into a {@code long} so most
+     * comparisons are a single primitive compare; only keys with an equal prefix
+     * fall back to {@link String#compareTo(String)} on the already extracted strings.
+     *
+     * @param users the array to sort
+     * @param keyExtractor reads the key of each user, called once per user
+     * @throws IllegalArgumentException if the extractor returns null
+     */
+    static void sortByStringKey(User[] users, Function<User, String> keyExtractor) {
+        int n = users.length;
+        if (n < 2) {
+            return;
+        }
+
+        // === Extract keys and prefixes once ===
+        String[] keys = new String[n];
+        long[] prefixes = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            String key = keyExtractor.apply(users[i]);
+            if (key == null) {
+                throw new IllegalArgumentException("Key extractor returned null for index " + i);
+            }
+            keys[i] = key;
+            prefixes[i] = prefixOf(key);
+            order[i] = i;
+        }
+
+        // === Sort indices, then apply the permutation ===
+        mergeSort(order, new int[n], 0, n, prefixes, keys);
+
+        User[] sorted = new User[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = users[order[i]];
+        }
+        System.arraycopy(sorted, 0, users, 0, n);
+    }
+
+    /**
+     * Packs the first characters of a string so that comparing prefixes as longs agrees
+     * with {@link String#compareTo(String)} whenever the prefixes differ.
+     * Each character is stored as {@code c + 1}, leaving 0 for "no character".
+     */
+    private static long prefixOf(String key) {
+        long prefix = 0;
+        for (int i = 0; i < PREFIX_CHARS; i++) {
+            prefix <<= PREFIX_CHAR_BITS;
+            if (i < key.length()) {
+                prefix |= key.charAt(i) + 1;
+            }
+        }
+        return prefix;
+    }
+
+    private static int compare(int a, int b, long[] prefixes, String[] keys) {
+        int result = Long.compare(prefixes[a], prefixes[b]);
+        return result != 0 ? result : keys[a].compareTo(keys[b]);
+    }
+
+    /** Stable top-down merge sort of {@code order[lo, hi)}. */
+    private static void mergeSort(int[] order, int[] buffer, int lo, int hi, long[] prefixes, String[] keys) {
+        if (hi - lo < INSERTION_SORT_THRESHOLD) {
+            for (int i = lo + 1; i < hi; i++) {
+                int current = order[i];
+                int j = i - 1;
+                while (j >= lo && compare(order[j], current, prefixes, keys) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = current;
+            }
+            return;
+        }
+
+        int mid = (lo + hi) >>> 1;
+        mergeSort(order, buffer, lo, mid, prefixes, keys);
+        mergeSort(order, buffer, mid, hi, prefixes, keys);
+        if (compare(order[mid - 1], order[mid], prefixes, keys) <= 0) {
+            return;
+        }
+
+        System.arraycopy(order, lo, buffer, lo, hi - lo);
+        int i = lo;
+        int j = mid;
+        int k = lo;
+        while (i < mid && j < hi) {
+            // Ties go to the left half, which keeps the sort stable
+            if (compare(buffer[j], buffer[i], prefixes, keys) < 0) {
+                order[k++] = buffer[j++];
+            } else {
+                order[k++] = buffer[i++];
+            }
+        }
+        System.arraycopy(buffer, i, order, k, mid - i);
+        System.arraycopy(buffer, j, order, k, hi - j);
+    }
+}
@@ -0,0 +1,15 @@
+package il.ac.hit.validation;
+
+/**
+ * Observes changes made to a {@link User} through its setters.
+ */
+interface UserListener {
+
+    /**
+     * Called on the mutating thread after a setter has changed a field of the user.
+     *
+     * @param user the changed user
+     * @param fields the changed fields, a combination of the {@link UserChange} field bits
+     */
+    void userChanged(User user, int fields);
+}
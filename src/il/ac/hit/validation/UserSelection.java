@@ -0,0 +1,173 @@
+package il.ac.hit.validation;
+
+import java.util.Comparator;
+
+/**
+ * Selection algorithms behind {@link UserUtils#topK} and {@link UserUtils#partialSort}.
+ * <p>
+ * Both avoid sorting the whole array: top-K keeps a bounded heap of the best candidates
+ * seen so far ({@code O(n log k)}), partial sort moves the wanted ranks into place with
+ * introselect ({@code O(n)} on average) and only sorts that window.
+ */
+final class UserSelection {
+
+    /** Ranges no longer than this are finished by the sort engine instead of partitioned. */
+    private static final int SELECT_THRESHOLD = 16;
+
+    private UserSelection() {
+    }
+
+    // ================== Top-K ==================
+
+    /**
+     * Returns the first {@code k} users of the order, sorted, without modifying the array.
+     * Ties are broken by array position, so the result equals the first {@code k}
+     * elements of a stable sort.
+     *
+     * @param users the users to select from
+     * @param k the number of users to return, between 1 and {@code users.length}
+     * @param comparator the order
+     * @return the selected users
+     */
+    static User[] topK(User[] users, int k, Comparator<User> comparator) {
+        // Max-heap of indexes: the root is the worst of the best k seen so far
+        int[] heap = new int[k];
+        for (int i = 0; i < k; i++) {
+            heap[i] = i;
+        }
+        for (int i = (k >>> 1) - 1; i >= 0; i--) {
+            siftDown(users, heap, i, k, comparator);
+        }
+
+        for (int i = k; i < users.length; i++) {
+            // A later user that only ties with the root loses the tie
+            if (comparator.compare(users[i], users[heap[0]]) < 0) {
+                heap[0] = i;
+                siftDown(users, heap, 0, k, comparator);
+            }
+        }
+
+        // Pop the worst remaining candidate into the last free slot
+        User[] result = new User[k];
+        for (int end = k - 1; end >= 0; end--) {
+            result[end] = users[heap[0]];
+            heap[0] = heap[end];
+            siftDown(users, heap, 0, end, comparator);
+        }
+        return result;
+    }
+
+    /** Orders indexes by user, then by position; true if {@code a} comes after {@code b}. */
+    private static boolean after(User[] users, int a, int b, Comparator<User> comparator) {
+        int order = comparator.compare(users[a], users[b]);
+        return order > 0 || (order == 0 && a > b);
+    }
+
+    private static void siftDown(User[] users, int[] heap, int node, int size, Comparator<User> comparator) {
+        int value = heap[node];
+        while (true) {
+            int child = 2 * node + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && after(users, heap[child + 1], heap[child], comparator)) {
+                child++;
+            }
+            if (!after(users, heap[child], value, comparator)) {
+                break;
+            }
+            heap[node] = heap[child];
+            node = child;
+        }
+        heap[node] = value;
+    }
+
+    // ================== Partial sort ==================
+
+    /**
+     * Rearranges the array so that {@code [from, to)} holds, in order, the users that a full
+     * sort would place there; every user before {@code from} compares at most equal to them and
+     * every user from {@code to} on at least equal. Users outside the window are left unordered.
+     *
+     * @param users the users to rearrange
+     * @param from the first rank to place, inclusive
+     * @param to the last rank to place, exclusive; greater than {@code from}
+     * @param comparator the order
+     */
+    static void partialSort(User[] users, int from, int to, Comparator<User> comparator) {
+        int lo = 0;
+        if (from > 0) {
+            select(users, 0, users.length, from, comparator);
+            lo = from;
+        }
+        if (to < users.length) {
+            select(users, lo, users.length, to - 1, comparator);
+        }
+        UserSortEngine.sort(users, from, to, comparator);
+    }
+
+    /**
+     * Introselect: moves the user of rank {@code k} within {@code [lo, hi)} to index {@code k},
+     * with no greater user before it and no smaller user after it. Partitions around a
+     * median-of-three pivot and falls back to sorting the range after {@code 2 log n} rounds
+     * that did not shrink it enough, so the worst case is {@code O(n log n)}.
+     */
+    static void select(User[] users, int lo, int hi, int k, Comparator<User> comparator) {
+        int budget = 2 * (32 - Integer.numberOfLeadingZeros(hi - lo));
+        while (hi - lo > SELECT_THRESHOLD) {
+            if (budget-- == 0) {
+                UserSortEngine.sort(users, lo, hi, comparator);
+                return;
+            }
+            User pivot = medianOfThree(users, lo, lo + ((hi - lo) >>> 1), hi - 1, comparator);
+
+            // Three-way partition: [lo, lt) < pivot, [lt, gt) == pivot, [gt, hi) > pivot
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i < gt) {
+                int order = comparator.compare(users[i], pivot);
+                if (order < 0) {
+                    swap(users, lt++, i++);
+                } else if (order > 0) {
+                    swap(users, i, --gt);
+                } else {
+                    i++;
+                }
+            }
+
+            if (k < lt) {
+                hi = lt;
+            } else if (k >= gt) {
+                lo = gt;
+            } else {
+                return; // k falls among users equal to the pivot
+            }
+        }
+        UserSortEngine.sort(users, lo, hi, comparator);
+    }
+
+    private static User medianOfThree(User[] users, int a, int b, int c, Comparator<User> comparator) {
+        User x = users[a];
+        User y = users[b];
+        User z = users[c];
+        if (comparator.compare(x, y) > 0) {
+            User t = x;
+            x = y;
+            y = t;
+        }
+        if (comparator.compare(y, z) > 0) {
+            y = z;
+            if (comparator.compare(x, y) > 0) {
+                y = x;
+            }
+        }
+        return y;
+    }
+
+    private static void swap(User[] users, int i, int j) {
+        User t = users[i];
+        users[i] = users[j];
+        users[j] = t;
+    }
+}
@@ -0,0 +1,583 @@
+package il.ac.hit.validation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Binary, memory-mapped snapshot of a user population.
+ * <p>
+ * {@link #write(Path, User[])} stores tier, age, username, email and the PBKDF2 password
+ * credential of every user (see {@link PasswordCredential}; never the password itself). {@link #open(Path)} maps
+ * the file read-only, so startup costs one mmap: no {@link User} is constructed and no
+ * setter runs. Fixed-size fields are read straight from the mapping; strings are decoded
+ * only when asked for.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * header   magic, version, count, record size (4 x int), heap offset, tier table offset (2 x long)
+ * records  count x fixed-size record:
+ *          tier (byte), flags (byte), 2 padding bytes, age (int), email profile (long),
+ *          password profile (long), username offset, username length, email offset,
+ *          email length (4 x int), PBKDF2 iterations (int), salt (16 bytes), hash (32 bytes)
+ *          flags bit 0: the password equals the username
+ * heap     UTF-8 usernames and emails; offsets are relative to the heap start
+ * tiers    count of tier codes used (int), then for each code from 0: name length (int) and
+ *          UTF-8 type name, empty for a plain user
+ * </pre>
+ * Codes of registered tiers depend on registration order (see {@link UserFactory}), so the
+ * tier table records the type name behind each code, and {@link #open(Path)} maps the stored
+ * codes to those of the same types in the reading process.
+ * A mapping is limited to 2 GB, which is enough for roughly ten million users.
+ * <p>
+ * A snapshot is written to a temporary file in the same directory, forced to disk and then
+ * renamed over the target in one atomic step, so a reader or a crash never sees a partly
+ * written file. Snapshots already open keep mapping the file they opened.
+ */
+public final class UserSnapshot {
+
+    // ================== Format ==================
+
+    private static final int MAGIC = 0x55534E50; // "USNP"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + 2 * Long.BYTES;
+
+    private static final int SALT_LENGTH = PasswordHasher.SALT_LENGTH;
+    private static final int HASH_LENGTH = PasswordHasher.HASH_LENGTH;
+
+    private static final byte PASSWORD_MATCHES_USERNAME = 1;
+
+    private static final int TIER = 0;
+    private static final int FLAGS = 1;
+    private static final int AGE = 4;
+    private static final int EMAIL_PROFILE = 8;
+    private static final int PASSWORD_PROFILE = 16;
+    private static final int USERNAME_OFFSET = 24;
+    private static final int USERNAME_LENGTH = 28;
+    private static final int EMAIL_OFFSET = 32;
+    private static final int EMAIL_LENGTH = 36;
+    private static final int ITERATIONS = 40;
+    private static final int SALT = 44;
+    private static final int HASH = SALT + SALT_LENGTH;
+    private static final int RECORD_SIZE = HASH + HASH_LENGTH;
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long heapOffset;
+    private final byte[] tierCodes; // Current tier code of each stored code
+
+    private UserSnapshot(MappedByteBuffer buffer, int count, long heapOffset, byte[] tierCodes) {
+        this.buffer = buffer;
+        this.count = count;
+        this.heapOffset = heapOffset;
+        this.tierCodes = tierCodes;
+    }
+
+    // ================== Writing ==================
+
+    /**
+     * Writes a snapshot of an array of users, atomically replacing the file if it exists.
+     *
+     * @param path the file to write
+     * @param users the users to store
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if path or users is null, or the array holds null
+     */
+    public static void write(Path path, User[] users) throws IOException {
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        for (User user : users) {
+            if (user == null) {
+                throw new IllegalArgumentException("User array cannot contain null");
+            }
+        }
+        write(path, users.length, i -> users[i], i -> UserStore.tierOf(users[i]));
+    }
+
+    /**
+     * Writes a snapshot of every user in a store, atomically replacing the file if it exists.
+     *
+     * @param path the file to write
+     * @param store the store to copy
+     * @throws IOException if the file cannot be written
+     * @throws IllegalArgumentException if path or store is null
+     */
+    public static void write(Path path, UserStore store) throws IOException {
+        if (store == null) {
+            throw new IllegalArgumentException("User store cannot be null");
+        }
+        write(path, store.size(), store::view, store::getTier);
+    }
+
+    /** Supplies the user at an index. */
+    private interface UserSource {
+        User get(int index);
+    }
+
+    /** Supplies the tier code of the user at an index. */
+    private interface TierSource {
+        byte get(int index);
+    }
+
+    private static void write(Path path, int count, UserSource users, TierSource tiers) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+
+        Path target = path.toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            writeFile(temporary, count, users, tiers);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // Only left behind if writing or renaming failed
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeFile(Path path, int count, UserSource users, TierSource tiers) throws IOException {
+        long recordsEnd = HEADER_SIZE + (long) count * RECORD_SIZE;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Records and strings are written to their own regions through two buffers
+            PositionedWriter records = new PositionedWriter(channel, HEADER_SIZE);
+            PositionedWriter heap = new PositionedWriter(channel, recordsEnd);
+            long heapSize = 0;
+            int tierCount = UserStore.TIER_USER + 1;
+
+            for (int i = 0; i < count; i++) {
+                User user = users.get(i);
+                byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+                byte[] email = user.getEmail().getBytes(StandardCharsets.UTF_8);
+                if (recordsEnd + heapSize + username.length + email.length > Integer.MAX_VALUE) {
+                    throw new IOException("Snapshot would exceed 2 GB");
+                }
+
+                HashedPassword password = HashedPassword.of(user);
+
+                byte tier = tiers.get(i);
+                tierCount = Math.max(tierCount, tier + 1);
+
+                ByteBuffer record = records.reserve(RECORD_SIZE);
+                record.put(tier).put(password.matchesUsername ? PASSWORD_MATCHES_USERNAME : 0)
+                        .put((byte) 0).put((byte) 0)
+                        .putInt(user.getAge())
+                        .putLong(user.getEmailProfile())
+                        .putLong(password.profile)
+                        .putInt((int) heapSize).putInt(username.length)
+                        .putInt((int) (heapSize + username.length)).putInt(email.length)
+                        .putInt(password.credential.getIterations())
+                        .put(password.credential.getSalt())
+                        .put(password.credential.getHash());
+
+                heap.write(username);
+                heap.write(email);
+                heapSize += username.length + email.length;
+            }
+            // === Tier table: the type name behind every code used ===
+            long tiersOffset = recordsEnd + heapSize;
+            byte[][] names = new byte[tierCount][];
+            int tableSize = Integer.BYTES;
+            for (int code = 0; code < tierCount; code++) {
+                UserFactory.Tier tier = UserFactory.tierOf(code);
+                names[code] = tier == null ? new byte[0] : tier.getName().getBytes(StandardCharsets.UTF_8);
+                tableSize += Integer.BYTES + names[code].length;
+            }
+            if (tiersOffset + tableSize > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot would exceed 2 GB");
+            }
+            ByteBuffer table = ByteBuffer.allocate(tableSize).putInt(tierCount);
+            for (byte[] name : names) {
+                table.putInt(name.length).put(name);
+            }
+            heap.write(table.array());
+            records.flush();
+            heap.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(RECORD_SIZE)
+                    .putLong(recordsEnd).putLong(tiersOffset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Buffered writer appending to one region of a file.
+     */
+    private static final class PositionedWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        private long position;
+
+        PositionedWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        ByteBuffer reserve(int length) throws IOException {
+            if (buffer.remaining() < length) {
+                flush();
+            }
+            return buffer;
+        }
+
+        void write(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+    }
+
+    // ================== Reading ==================
+
+    /**
+     * Maps a snapshot file read-only.
+     *
+     * @param path the file to open
+     * @return the mapped snapshot
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     * @throws IllegalArgumentException if path is null
+     */
+    public static UserSnapshot open(Path path) throws IOException {
+        if (path == null) {
+            throw new IllegalArgumentException("Path cannot be null");
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a user snapshot: " + path);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB cannot be mapped: " + path);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a user snapshot: " + path);
+            }
+            if (buffer.getInt(4) != VERSION || buffer.getInt(12) != RECORD_SIZE) {
+                throw new IOException("Unsupported snapshot version: " + path);
+            }
+            int count = buffer.getInt(8);
+            long heapOffset = buffer.getLong(16);
+            long tiersOffset = buffer.getLong(24);
+            if (count < 0 || heapOffset != HEADER_SIZE + (long) count * RECORD_SIZE
+                    || tiersOffset < heapOffset || tiersOffset > size - Integer.BYTES) {
+                throw new IOException("Corrupt snapshot header: " + path);
+            }
+            return new UserSnapshot(buffer, count, heapOffset, readTierCodes(buffer, (int) tiersOffset, path));
+        }
+    }
+
+    /**
+     * Reads the tier table and maps each stored code to the code the same type has here.
+     *
+     * @throws IOException if the table is corrupt or names a type that is not registered
+     */
+    private static byte[] readTierCodes(ByteBuffer buffer, int offset, Path path) throws IOException {
+        int tierCount = buffer.getInt(offset);
+        if (tierCount <= UserStore.TIER_USER || tierCount > UserFactory.MAX_TIER_CODE + 1) {
+            throw new IOException("Corrupt snapshot tier table: " + path);
+        }
+        byte[] codes = new byte[tierCount];
+        int position = offset + Integer.BYTES;
+        for (int code = 0; code < tierCount; code++) {
+            if (position > buffer.limit() - Integer.BYTES) {
+                throw new IOException("Corrupt snapshot tier table: " + path);
+            }
+            int length = buffer.getInt(position);
+            position += Integer.BYTES;
+            if (length < 0 || length > buffer.limit() - position) {
+                throw new IOException("Corrupt snapshot tier table: " + path);
+            }
+            if (length == 0) {
+                codes[code] = UserStore.TIER_USER;
+                continue;
+            }
+            byte[] name = new byte[length];
+            buffer.get(position, name);
+            position += length;
+            UserFactory.Tier tier = UserFactory.findTier(new String(name, StandardCharsets.UTF_8));
+            if (tier == null) {
+                throw new IOException("Snapshot uses an unregistered user type '"
+                        + new String(name, StandardCharsets.UTF_8) + "': " + path);
+            }
+            codes[code] = tier.getCode();
+        }
+        return codes;
+    }
+
+    /**
+     * Gets the number of users in the snapshot.
+     * @return the size
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the tier code of a user, as {@link UserStore#getTier(int)} reports it in this process.
+     * @param index the user index
+     * @return the tier code
+     */
+    public byte getTier(int index) {
+        int stored = buffer.get(recordOffset(index) + TIER);
+        return stored >= 0 && stored < tierCodes.length ? tierCodes[stored] : UserStore.TIER_USER;
+    }
+
+    /**
+     * Gets the age of a user.
+     * @param index the user index
+     * @return the age
+     */
+    public int getAge(int index) {
+        return buffer.getInt(recordOffset(index) + AGE);
+    }
+
+    /**
+     * Decodes the username of a user.
+     * @param index the user index
+     * @return the username
+     */
+    public String getUsername(int index) {
+        int record = recordOffset(index);
+        return decode(buffer.getInt(record + USERNAME_OFFSET), buffer.getInt(record + USERNAME_LENGTH));
+    }
+
+    /**
+     * Decodes the email of a user.
+     * @param index the user index
+     * @return the email
+     */
+    public String getEmail(int index) {
+        int record = recordOffset(index);
+        return decode(buffer.getInt(record + EMAIL_OFFSET), buffer.getInt(record + EMAIL_LENGTH));
+    }
+
+    /**
+     * Reads the password credential of a user.
+     * @param index the user index
+     * @return a new credential copied from the mapping
+     */
+    public PasswordCredential getCredential(int index) {
+        int record = recordOffset(index);
+        byte[] salt = new byte[SALT_LENGTH];
+        byte[] hash = new byte[HASH_LENGTH];
+        buffer.get(record + SALT, salt);
+        buffer.get(record + HASH, hash);
+        return new PasswordCredential(buffer.getInt(record + ITERATIONS), salt, hash);
+    }
+
+    /**
+     * Checks a password against a user's stored credential. Takes time in proportion
+     * to the hash cost the credential was made with.
+     *
+     * @param index the user index
+     * @param password the password to check
+     * @return true if the password matches
+     * @throws IllegalArgumentException if password is null
+     * @see #verifyPassword(int, char[])
+     */
+    public boolean verifyPassword(int index, String password) {
+        if (password == null) {
+            throw new IllegalArgumentException("Password cannot be null");
+        }
+        char[] chars = password.toCharArray();
+        try {
+            return verifyPassword(index, chars);
+        } finally {
+            Arrays.fill(chars, '\0');
+        }
+    }
+
+    /**
+     * Checks a password given as an array against a user's stored credential, so no string
+     * of it is made. The array is not modified.
+     *
+     * @param index the user index
+     * @param password the password to check
+     * @return true if the password matches
+     * @throws IllegalArgumentException if password is null
+     */
+    public boolean verifyPassword(int index, char[] password) {
+        if (password == null) {
+            throw new IllegalArgumentException("Password cannot be null");
+        }
+        return getCredential(index).verify(password);
+    }
+
+    /**
+     * Returns a read-only view of a user backed by the mapping. Fields are decoded lazily;
+     * the password is available only as its credential, which every built-in rule works with.
+     * Views are plain {@link User} instances regardless of tier; use {@link #getTier(int)}. Tier-keyed lookups such as
+     * {@link TierValidation} still see the stored tier.
+     *
+     * @param index the user index
+     * @return a view of the user
+     */
+    public User view(int index) {
+        recordOffset(index);
+        return new SnapshotUser(index);
+    }
+
+    /**
+     * Validates every user in index order.
+     *
+     * @param validation the validation to apply
+     * @return the batch result, indexed like the snapshot
+     * @throws IllegalArgumentException if validation is null
+     */
+    public BatchValidationResult validateAll(UserValidation validation) {
+        if (validation == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        BatchValidationResult.Collector collector = new BatchValidationResult.Collector(null, 0);
+        for (int i = 0; i < count; i++) {
+            collector.add(validation.apply(new SnapshotUser(i)));
+        }
+        return collector.build();
+    }
+
+    private int recordOffset(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for " + count + " users");
+        }
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+
+    private String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get((int) (heapOffset + offset), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ================== View ==================
+
+    /**
+     * Read-only {@link User} backed by one record of the mapping.
+     * Strings are decoded on first use and then kept.
+     */
+    private final class SnapshotUser extends User {
+        private final int index;
+        private String username;
+        private String email;
+
+        SnapshotUser(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getUsername() {
+            if (username == null) {
+                username = UserSnapshot.this.getUsername(index);
+            }
+            return username;
+        }
+
+        @Override
+        public String getEmail() {
+            if (email == null) {
+                email = UserSnapshot.this.getEmail(index);
+            }
+            return email;
+        }
+
+        @Override
+        public PasswordCredential getCredential() {
+            return UserSnapshot.this.getCredential(index);
+        }
+
+        @Override
+        public int getAge() {
+            return UserSnapshot.this.getAge(index);
+        }
+
+        @Override
+        long getEmailProfile() {
+            return buffer.getLong(recordOffset(index) + EMAIL_PROFILE);
+        }
+
+        @Override
+        long getPasswordProfile() {
+            return buffer.getLong(recordOffset(index) + PASSWORD_PROFILE);
+        }
+
+        @Override
+        boolean passwordEqualsUsername() {
+            return (buffer.get(recordOffset(index) + FLAGS) & PASSWORD_MATCHES_USERNAME) != 0;
+        }
+
+        @Override
+        boolean isView() {
+            return true;
+        }
+
+        @Override
+        Class<? extends User> getTierClass() {
+            return UserStore.tierClass(getTier(index));
+        }
+
+        // Nothing is cached on the view: keys are rebuilt from the stored credential hash
+        @Override
+        ValidationCacheKey getValidationCacheKey() {
+            return null;
+        }
+
+        @Override
+        void setValidationCacheKey(ValidationCacheKey validationCacheKey) {
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("Snapshot users are read-only");
+        }
+
+        @Override
+        public void setEmail(String email) {
+            throw new UnsupportedOperationException("Snapshot users are read-only");
+        }
+
+        @Override
+        public void setPassword(String password) {
+            throw new UnsupportedOperationException("Snapshot users are read-only");
+        }
+
+        @Override
+        public void setPassword(char[] password, PasswordHasher hasher) {
+            throw new UnsupportedOperationException("Snapshot users are read-only");
+        }
+
+        @Override
+        public void setAge(int age) {
+            throw new UnsupportedOperationException("Snapshot users are read-only");
+        }
+    }
+}
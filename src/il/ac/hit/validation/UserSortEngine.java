@@ -0,0 +1,412 @@
+package il.ac.hit.validation;
+
+import java.util.Comparator;
+
+/**
+ * Adaptive, stable sort engine used behind {@link UserUtils#sort(User[], Comparator)}.
+ * <p>
+ * The algorithm is a natural merge sort in the style of TimSort:
+ * <ul>
+ *     <li>short ranges are sorted with binary insertion sort,</li>
+ *     <li>already ordered (or strictly descending) runs are detected and reused,</li>
+ *     <li>runs are merged with a stable merge that switches to galloping
+ *     when one side keeps winning, so partially sorted input is close to linear.</li>
+ * </ul>
+ * Instances hold the merge state of a single sort call and are not shared.
+ */
+final class UserSortEngine {
+
+    /** Ranges shorter than this are sorted by binary insertion sort only. */
+    static final int MIN_MERGE = 32;
+
+    /** Initial number of consecutive wins before the merge enters galloping mode. */
+    private static final int INITIAL_MIN_GALLOP = 7;
+
+    /** Maximum number of pending runs; enough for any array length below 2^31. */
+    private static final int MAX_PENDING_RUNS = 49;
+
+    private final User[] users;
+    private final Comparator<User> comparator;
+    private int minGallop = INITIAL_MIN_GALLOP;
+    private User[] buffer = new User[0];
+
+    private final int[] runBase = new int[MAX_PENDING_RUNS];
+    private final int[] runLen = new int[MAX_PENDING_RUNS];
+    private int stackSize;
+
+    private UserSortEngine(User[] users, Comparator<User> comparator) {
+        this.users = users;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Sorts the range {@code [from, to)} of the array in place.
+     * Arguments are expected to be validated by the caller.
+     *
+     * @param users the array to sort
+     * @param from the first index, inclusive
+     * @param to the last index, exclusive
+     * @param comparator the comparator used to determine the order
+     */
+    static void sort(User[] users, int from, int to, Comparator<User> comparator) {
+        int remaining = to - from;
+        if (remaining < 2) {
+            return;
+        }
+
+        // === Small ranges: one run plus insertion sort ===
+        if (remaining < MIN_MERGE) {
+            int initialRun = countRunAndMakeAscending(users, from, to, comparator);
+            binaryInsertionSort(users, from, to, from + initialRun, comparator);
+            return;
+        }
+
+        // === Large ranges: collect runs of at least minRun and merge them ===
+        UserSortEngine engine = new UserSortEngine(users, comparator);
+        int minRun = minRunLength(remaining);
+        int lo = from;
+        do {
+            int run = countRunAndMakeAscending(users, lo, to, comparator);
+            if (run < minRun) {
+                int forced = Math.min(remaining, minRun);
+                binaryInsertionSort(users, lo, lo + forced, lo + run, comparator);
+                run = forced;
+            }
+            engine.pushRun(lo, run);
+            engine.mergeCollapse();
+
+            lo += run;
+            remaining -= run;
+        } while (remaining != 0);
+
+        engine.mergeForceCollapse();
+    }
+
+    /**
+     * Stably merges the two adjacent sorted ranges {@code [lo, mid)} and {@code [mid, hi)}.
+     * Exposed for callers that sort ranges independently and merge them afterwards.
+     *
+     * @param users the array holding both ranges
+     * @param lo the start of the first range
+     * @param mid the start of the second range
+     * @param hi the end of the second range, exclusive
+     * @param comparator the comparator used to determine the order
+     */
+    static void merge(User[] users, int lo, int mid, int hi, Comparator<User> comparator) {
+        if (lo >= mid || mid >= hi) {
+            return;
+        }
+        new UserSortEngine(users, comparator).mergeRuns(lo, mid - lo, mid, hi - mid);
+    }
+
+    // ================== Run handling ==================
+
+    /**
+     * Returns the length of the run starting at {@code lo}, reversing it first
+     * if it is strictly descending (strictness keeps the sort stable).
+     */
+    private static int countRunAndMakeAscending(User[] users, int lo, int hi, Comparator<User> comparator) {
+        int runHi = lo + 1;
+        if (runHi == hi) {
+            return 1;
+        }
+
+        if (comparator.compare(users[runHi++], users[lo]) < 0) {
+            while (runHi < hi && comparator.compare(users[runHi], users[runHi - 1]) < 0) {
+                runHi++;
+            }
+            reverseRange(users, lo, runHi);
+        } else {
+            while (runHi < hi && comparator.compare(users[runHi], users[runHi - 1]) >= 0) {
+                runHi++;
+            }
+        }
+        return runHi - lo;
+    }
+
+    private static void reverseRange(User[] users, int lo, int hi) {
+        hi--;
+        while (lo < hi) {
+            User temp = users[lo];
+            users[lo++] = users[hi];
+            users[hi--] = temp;
+        }
+    }
+
+    /**
+     * Sorts {@code [lo, hi)} by binary insertion, given that {@code [lo, start)} is already sorted.
+     */
+    private static void binaryInsertionSort(User[] users, int lo, int hi, int start, Comparator<User> comparator) {
+        if (start == lo) {
+            start++;
+        }
+        for (; start < hi; start++) {
+            User pivot = users[start];
+
+            // Find the rightmost insertion point so equal elements keep their order
+            int left = lo;
+            int right = start;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                if (comparator.compare(pivot, users[mid]) < 0) {
+                    right = mid;
+                } else {
+                    left = mid + 1;
+                }
+            }
+            System.arraycopy(users, left, users, left + 1, start - left);
+            users[left] = pivot;
+        }
+    }
+
+    /**
+     * Returns the minimum run length for a range of length {@code n}, chosen so that
+     * {@code n / minRun} is close to, but not above, a power of two.
+     */
+    private static int minRunLength(int n) {
+        int r = 0;
+        while (n >= MIN_MERGE) {
+            r |= (n & 1);
+            n >>= 1;
+        }
+        return n + r;
+    }
+
+    // ================== Run stack ==================
+
+    private void pushRun(int base, int len) {
+        runBase[stackSize] = base;
+        runLen[stackSize] = len;
+        stackSize++;
+    }
+
+    /**
+     * Merges pending runs until the stack invariants hold again:
+     * every run is longer than the sum of the two runs above it.
+     */
+    private void mergeCollapse() {
+        while (stackSize > 1) {
+            int n = stackSize - 2;
+            if (n > 0 && runLen[n - 1] <= runLen[n] + runLen[n + 1]
+                    || n > 1 && runLen[n - 2] <= runLen[n] + runLen[n - 1]) {
+                if (runLen[n - 1] < runLen[n + 1]) {
+                    n--;
+                }
+            } else if (runLen[n] > runLen[n + 1]) {
+                break;
+            }
+            mergeAt(n);
+        }
+    }
+
+    /** Merges all remaining runs into one. */
+    private void mergeForceCollapse() {
+        while (stackSize > 1) {
+            int n = stackSize - 2;
+            if (n > 0 && runLen[n - 1] < runLen[n + 1]) {
+                n--;
+            }
+            mergeAt(n);
+        }
+    }
+
+    /** Merges the runs at stack positions {@code i} and {@code i + 1}. */
+    private void mergeAt(int i) {
+        int base1 = runBase[i];
+        int len1 = runLen[i];
+        int base2 = runBase[i + 1];
+        int len2 = runLen[i + 1];
+
+        runLen[i] = len1 + len2;
+        if (i == stackSize - 3) {
+            runBase[i + 1] = runBase[i + 2];
+            runLen[i + 1] = runLen[i + 2];
+        }
+        stackSize--;
+
+        mergeRuns(base1, len1, base2, len2);
+    }
+
+    // ================== Merging ==================
+
+    /**
+     * Merges two adjacent sorted runs, first trimming the elements of each
+     * run that are already in their final position.
+     */
+    private void mergeRuns(int base1, int len1, int base2, int len2) {
+        // Elements of run 1 not greater than run 2's head are already in place
+        int skipped = gallopRight(users[base2], users, base1, len1, comparator);
+        base1 += skipped;
+        len1 -= skipped;
+        if (len1 == 0) {
+            return;
+        }
+
+        // Elements of run 2 not less than run 1's tail are already in place
+        len2 = gallopLeft(users[base1 + len1 - 1], users, base2, len2, comparator);
+        if (len2 == 0) {
+            return;
+        }
+
+        mergeLo(base1, len1, base2, len2);
+    }
+
+    /**
+     * Merges run 1 (copied aside) with run 2 (left in place), writing from left to right.
+     * Ties go to run 1, which keeps the merge stable.
+     */
+    private void mergeLo(int base1, int len1, int base2, int len2) {
+        User[] left = ensureBuffer(len1);
+        System.arraycopy(users, base1, left, 0, len1);
+
+        int cursor1 = 0;
+        int cursor2 = base2;
+        int dest = base1;
+        int end1 = len1;
+        int end2 = base2 + len2;
+        int gallopThreshold = minGallop;
+
+        outer:
+        while (cursor1 < end1 && cursor2 < end2) {
+            int wins1 = 0;
+            int wins2 = 0;
+
+            // === One element at a time until one run keeps winning ===
+            do {
+                if (comparator.compare(users[cursor2], left[cursor1]) < 0) {
+                    users[dest++] = users[cursor2++];
+                    wins2++;
+                    wins1 = 0;
+                } else {
+                    users[dest++] = left[cursor1++];
+                    wins1++;
+                    wins2 = 0;
+                }
+                if (cursor1 == end1 || cursor2 == end2) {
+                    break outer;
+                }
+            } while ((wins1 | wins2) < gallopThreshold);
+
+            // === Galloping: copy whole blocks found by exponential search ===
+            do {
+                wins1 = gallopRight(users[cursor2], left, cursor1, end1 - cursor1, comparator);
+                if (wins1 != 0) {
+                    System.arraycopy(left, cursor1, users, dest, wins1);
+                    dest += wins1;
+                    cursor1 += wins1;
+                    if (cursor1 == end1) {
+                        break outer;
+                    }
+                }
+                users[dest++] = users[cursor2++];
+                if (cursor2 == end2) {
+                    break outer;
+                }
+
+                wins2 = gallopLeft(left[cursor1], users, cursor2, end2 - cursor2, comparator);
+                if (wins2 != 0) {
+                    System.arraycopy(users, cursor2, users, dest, wins2);
+                    dest += wins2;
+                    cursor2 += wins2;
+                    if (cursor2 == end2) {
+                        break outer;
+                    }
+                }
+                users[dest++] = left[cursor1++];
+                if (cursor1 == end1) {
+                    break outer;
+                }
+                gallopThreshold--;
+            } while (wins1 >= INITIAL_MIN_GALLOP || wins2 >= INITIAL_MIN_GALLOP);
+
+            // Galloping stopped paying off; make it harder to re-enter
+            if (gallopThreshold < 0) {
+                gallopThreshold = 0;
+            }
+            gallopThreshold += 2;
+        }
+        minGallop = Math.max(1, gallopThreshold);
+
+        // Whatever is left of run 2 is already in place
+        if (cursor1 < end1) {
+            System.arraycopy(left, cursor1, users, dest, end1 - cursor1);
+        }
+    }
+
+    private User[] ensureBuffer(int length) {
+        if (buffer.length < length) {
+            buffer = new User[Math.max(length, buffer.length * 2)];
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns how many leading elements of {@code [base, base + len)} are strictly less than {@code key}.
+     */
+    private static int gallopLeft(User key, User[] array, int base, int len, Comparator<User> comparator) {
+        if (len == 0 || comparator.compare(key, array[base]) <= 0) {
+            return 0;
+        }
+
+        // Exponential search: array[base + lastOffset] < key
+        int lastOffset = 0;
+        int offset = 1;
+        while (offset < len && comparator.compare(key, array[base + offset]) > 0) {
+            lastOffset = offset;
+            offset = (offset << 1) + 1;
+            if (offset <= 0) {
+                offset = len;
+            }
+        }
+        if (offset > len) {
+            offset = len;
+        }
+
+        // Binary search in (lastOffset, offset]
+        lastOffset++;
+        while (lastOffset < offset) {
+            int mid = (lastOffset + offset) >>> 1;
+            if (comparator.compare(key, array[base + mid]) > 0) {
+                lastOffset = mid + 1;
+            } else {
+                offset = mid;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Returns how many leading elements of {@code [base, base + len)} are less than or equal to {@code key}.
+     */
+    private static int gallopRight(User key, User[] array, int base, int len, Comparator<User> comparator) {
+        if (len == 0 || comparator.compare(key, array[base]) < 0) {
+            return 0;
+        }
+
+        // Exponential search: array[base + lastOffset] <= key
+        int lastOffset = 0;
+        int offset = 1;
+        while (offset < len && comparator.compare(key, array[base + offset]) >= 0) {
+            lastOffset = offset;
+            offset = (offset << 1) + 1;
+            if (offset <= 0) {
+                offset = len;
+            }
+        }
+        if (offset > len) {
+            offset = len;
+        }
+
+        // Binary search in (lastOffset, offset]
+        lastOffset++;
+        while (lastOffset < offset) {
+            int mid = (lastOffset + offset) >>> 1;
+            if (comparator.compare(key, array[base + mid]) >= 0) {
+                lastOffset = mid + 1;
+            } else {
+                offset = mid;
+            }
+        }
+        return offset;
+    }
+}
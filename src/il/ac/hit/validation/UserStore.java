@@ -0,0 +1,514 @@
+package il.ac.hit.validation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Columnar (struct-of-arrays) storage for large user populations.
+ * <p>
+ * Instead of one {@link User} object per user, the store keeps one array per field:
+ * ages in an {@code int[]}, the tier in a {@code byte[]}, usernames and emails as packed
+ * UTF-8 arenas with offset arrays, and password credentials (iteration count, salt and
+ * hash, see {@link PasswordCredential}) as fixed-width columns. The character-class profiles
+ * read by the built-in rules are kept as {@code long[]} columns, so those rules run
+ * without decoding any string.
+ * <p>
+ * Users are read back either as real objects ({@link #get(int)}) or as lightweight,
+ * read-only flyweight views ({@link #view(int)}). Validation and sorting run directly
+ * over the columns. The store is append-only and not thread-safe for writers.
+ */
+public class UserStore {
+
+    // ================== Tier codes ==================
+
+    /** Tier code of a plain {@link User}. */
+    public static final byte TIER_USER = 0;
+    /** Tier code of a {@link BasicUser}. */
+    public static final byte TIER_BASIC = 1;
+    /** Tier code of a {@link PremiumUser}. */
+    public static final byte TIER_PREMIUM = 2;
+    /** Tier code of a {@link PlatinumUser}. */
+    public static final byte TIER_PLATINUM = 3;
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int CREDENTIAL_BYTES = PasswordHasher.SALT_LENGTH + PasswordHasher.HASH_LENGTH;
+
+    // ================== Columns ==================
+
+    private int size;
+    private int[] ages;
+    private byte[] tiers;
+    private long[] emailProfiles;
+    private long[] passwordProfiles;
+    private boolean[] passwordMatchesUsername;
+    private int[] passwordIterations;
+    private byte[] passwordHashes; // Salt then hash, CREDENTIAL_BYTES per user
+    private final Utf8Arena usernames;
+    private final Utf8Arena emails;
+    private final PasswordHasher hasher;
+
+    /**
+     * Constructs an empty store that hashes added passwords with {@link PasswordHasher#FAST}.
+     */
+    public UserStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty store sized for the expected number of users, hashing added
+     * passwords with {@link PasswordHasher#FAST}.
+     *
+     * @param initialCapacity the expected number of users
+     * @throws IllegalArgumentException if initialCapacity is negative
+     */
+    public UserStore(int initialCapacity) {
+        this(initialCapacity, PasswordHasher.FAST);
+    }
+
+    /**
+     * Constructs an empty store sized for the expected number of users.
+     *
+     * @param initialCapacity the expected number of users
+     * @param hasher hashes the passwords given to {@link #add(String, String, String, String, int)}
+     * @throws IllegalArgumentException if initialCapacity is negative or hasher is null
+     */
+    public UserStore(int initialCapacity, PasswordHasher hasher) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("Initial capacity cannot be negative");
+        }
+        if (hasher == null) {
+            throw new IllegalArgumentException("Password hasher cannot be null");
+        }
+        this.hasher = hasher;
+        int capacity = Math.max(1, initialCapacity);
+        this.ages = new int[capacity];
+        this.tiers = new byte[capacity];
+        this.emailProfiles = new long[capacity];
+        this.passwordProfiles = new long[capacity];
+        this.passwordMatchesUsername = new boolean[capacity];
+        this.passwordIterations = new int[capacity];
+        this.passwordHashes = new byte[capacity * CREDENTIAL_BYTES];
+        this.usernames = new Utf8Arena(capacity);
+        this.emails = new Utf8Arena(capacity);
+    }
+
+    // ================== Writing ==================
+
+    /**
+     * Adds a user, applying the same checks as the {@link User} setters and {@link UserFactory}.
+     * The password is hashed with the hasher the store was constructed with, so adding many
+     * users takes time in proportion to its cost.
+     *
+     * @param type the user type ("basic", "premium", "platinum", or a registered type)
+     * @param username the user's username
+     * @param email the user's email
+     * @param password the user's password; only its salted hash is kept
+     * @param age the user's age
+     * @return the index of the new user
+     * @throws IllegalArgumentException if the type is unknown or a field is invalid
+     */
+    public int add(String type, String username, String email, String password, int age) {
+        if (type == null || type.trim().isEmpty()) {
+            throw new IllegalArgumentException("User type cannot be null or empty");
+        }
+        byte tier = tierOf(type);
+        // === Same rules as the User setters ===
+        User.checkUsername(username);
+        User.checkEmail(email);
+        User.checkAge(age);
+        return append(tier, username, email, HashedPassword.hash(password, username, hasher), age);
+    }
+
+    /**
+     * Copies a user into the store. The password hash is copied, not recomputed.
+     *
+     * @param user the user to copy
+     * @return the index of the new user
+     * @throws IllegalArgumentException if user is null
+     */
+    public int add(User user) {
+        if (user == null) {
+            throw new IllegalArgumentException("User cannot be null");
+        }
+        return append(tierOf(user), user.getUsername(), user.getEmail(), HashedPassword.of(user), user.getAge());
+    }
+
+    private int append(byte tier, String username, String email, HashedPassword password, int age) {
+        ensureCapacity(size + 1);
+        ages[size] = age;
+        tiers[size] = tier;
+        emailProfiles[size] = CharClassProfile.of(email);
+        passwordProfiles[size] = password.profile;
+        passwordMatchesUsername[size] = password.matchesUsername;
+        passwordIterations[size] = password.credential.getIterations();
+        System.arraycopy(password.credential.getSalt(), 0, passwordHashes, size * CREDENTIAL_BYTES, PasswordHasher.SALT_LENGTH);
+        System.arraycopy(password.credential.getHash(), 0, passwordHashes,
+                size * CREDENTIAL_BYTES + PasswordHasher.SALT_LENGTH, PasswordHasher.HASH_LENGTH);
+        usernames.add(username);
+        emails.add(email);
+        return size++;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= ages.length) {
+            return;
+        }
+        int capacity = Math.max(required, ages.length + (ages.length >> 1));
+        ages = Arrays.copyOf(ages, capacity);
+        tiers = Arrays.copyOf(tiers, capacity);
+        emailProfiles = Arrays.copyOf(emailProfiles, capacity);
+        passwordProfiles = Arrays.copyOf(passwordProfiles, capacity);
+        passwordMatchesUsername = Arrays.copyOf(passwordMatchesUsername, capacity);
+        passwordIterations = Arrays.copyOf(passwordIterations, capacity);
+        passwordHashes = Arrays.copyOf(passwordHashes, capacity * CREDENTIAL_BYTES);
+    }
+
+    // ================== Reading ==================
+
+    /**
+     * Gets the number of users.
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the age of a user.
+     * @param index the user index
+     * @return the age
+     */
+    public int getAge(int index) {
+        checkIndex(index);
+        return ages[index];
+    }
+
+    /**
+     * Gets the tier code of a user: {@link #TIER_USER}, or the code of its
+     * {@link UserFactory.Tier}.
+     * @param index the user index
+     * @return the tier code
+     */
+    public byte getTier(int index) {
+        checkIndex(index);
+        return tiers[index];
+    }
+
+    /**
+     * Decodes the username of a user.
+     * @param index the user index
+     * @return the username
+     */
+    public String getUsername(int index) {
+        checkIndex(index);
+        return usernames.get(index);
+    }
+
+    /**
+     * Decodes the email of a user.
+     * @param index the user index
+     * @return the email
+     */
+    public String getEmail(int index) {
+        checkIndex(index);
+        return emails.get(index);
+    }
+
+    /**
+     * Gets the password hash of a user.
+     * @param index the user index
+     * @return a new credential read from the columns
+     */
+    public PasswordCredential getCredential(int index) {
+        checkIndex(index);
+        return credentialAt(index);
+    }
+
+    private PasswordCredential credentialAt(int row) {
+        int from = row * CREDENTIAL_BYTES;
+        return new PasswordCredential(passwordIterations[row],
+                Arrays.copyOfRange(passwordHashes, from, from + PasswordHasher.SALT_LENGTH),
+                Arrays.copyOfRange(passwordHashes, from + PasswordHasher.SALT_LENGTH, from + CREDENTIAL_BYTES));
+    }
+
+    /**
+     * Materializes a user as a regular object of its tier's class.
+     * The returned user is a copy; changing it does not change the store. The password
+     * hash is copied, not recomputed.
+     *
+     * @param index the user index
+     * @return a new user
+     */
+    public User get(int index) {
+        checkIndex(index);
+        String username = usernames.get(index);
+        String email = emails.get(index);
+        HashedPassword password = new HashedPassword(credentialAt(index), passwordProfiles[index], passwordMatchesUsername[index]);
+        int age = ages[index];
+        UserFactory.Tier tier = UserFactory.tierOf(tiers[index]);
+        return tier == null ? new User(username, email, password, age) : tier.restore(username, email, password, age);
+    }
+
+    /**
+     * Returns a read-only flyweight view of a user. The view holds no copies of the
+     * fields; strings are decoded when a getter is called and setters throw.
+     * Views are plain {@link User} instances regardless of tier; use {@link #getTier(int)}.
+     * Tier-keyed lookups such as {@link TierValidation} still see the stored tier.
+     *
+     * @param index the user index
+     * @return a view of the user
+     */
+    public User view(int index) {
+        checkIndex(index);
+        UserView view = new UserView();
+        view.moveTo(index);
+        return view;
+    }
+
+    // ================== Column operations ==================
+
+    /**
+     * Validates every user, in index order, by moving a single flyweight view over the rows.
+     * The built-in email and password rules read the profile columns without decoding strings.
+     *
+     * @param validation the validation to apply
+     * @return the batch result, indexed like the store
+     * @throws IllegalArgumentException if validation is null
+     */
+    public BatchValidationResult validateAll(UserValidation validation) {
+        if (validation == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        BatchValidationResult.Collector collector = new BatchValidationResult.Collector(null, 0);
+        UserView cursor = new UserView();
+        for (int i = 0; i < size; i++) {
+            cursor.moveTo(i);
+            collector.add(validation.apply(cursor));
+        }
+        return collector.build();
+    }
+
+    /**
+     * Returns user indexes sorted by age, stable: a counting sort over the age column when the
+     * ages span a narrow range, a radix sort otherwise (see {@link UserKeySorter}).
+     * @return the sorted indexes
+     */
+    public int[] sortedIndexesByAge() {
+        return UserKeySorter.sortedIndexesByIntKey(ages, size);
+    }
+
+    /**
+     * Returns user indexes sorted by username, stable, in the order of {@link String#compareTo(String)}.
+     * ASCII usernames are compared directly on their UTF-8 bytes.
+     *
+     * @return the sorted indexes
+     */
+    public int[] sortedIndexesByUsername() {
+        boolean[] ascii = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            ascii[i] = usernames.isAscii(i);
+        }
+        return sortRows((a, b) -> ascii[a] && ascii[b]
+                ? usernames.compare(a, b)
+                : usernames.get(a).compareTo(usernames.get(b)));
+    }
+
+    /**
+     * Returns user indexes sorted by any user comparator, stable.
+     * The comparator is given two flyweight views and must not keep references to them.
+     *
+     * @param comparator the comparator used to determine the order
+     * @return the sorted indexes
+     * @throws IllegalArgumentException if comparator is null
+     */
+    public int[] sortedIndexes(Comparator<User> comparator) {
+        if (comparator == null) {
+            throw new IllegalArgumentException("Comparator cannot be null");
+        }
+        UserView left = new UserView();
+        UserView right = new UserView();
+        return sortRows((a, b) -> {
+            left.moveTo(a);
+            right.moveTo(b);
+            return comparator.compare(left, right);
+        });
+    }
+
+    /**
+     * Estimates the heap used by the columns.
+     * @return the approximate size in bytes
+     */
+    public long estimatedSizeInBytes() {
+        long perUserColumns = (long) ages.length
+                * (2 * Integer.BYTES + 2 * Byte.BYTES + 2 * Long.BYTES + CREDENTIAL_BYTES);
+        long offsetColumns = 2L * (size + 1) * Integer.BYTES;
+        return perUserColumns + offsetColumns + usernames.usedBytes() + emails.usedBytes();
+    }
+
+    // ================== Helpers ==================
+
+    /** Compares two rows by index. */
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    /** Stable merge sort of row indexes. */
+    private int[] sortRows(RowComparator comparator) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        mergeSort(order, new int[size], 0, size, comparator);
+        return order;
+    }
+
+    private static void mergeSort(int[] order, int[] buffer, int lo, int hi, RowComparator comparator) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(order, buffer, lo, mid, comparator);
+        mergeSort(order, buffer, mid, hi, comparator);
+        if (comparator.compare(order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(order, lo, buffer, lo, hi - lo);
+        int i = lo;
+        int j = mid;
+        int k = lo;
+        while (i < mid && j < hi) {
+            // Ties go to the left half, which keeps the sort stable
+            order[k++] = comparator.compare(buffer[j], buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+        }
+        System.arraycopy(buffer, i, order, k, mid - i);
+        System.arraycopy(buffer, j, order, k, hi - j);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range for " + size + " users");
+        }
+    }
+
+    /**
+     * Maps a factory type name to its tier code (see {@link UserFactory.Tier#getCode()}).
+     *
+     * @throws IllegalArgumentException if the type is unknown
+     */
+    static byte tierOf(String type) {
+        return UserFactory.tier(type).getCode();
+    }
+
+    /**
+     * Maps a user's tier class to a tier code; views keep the tier of the user they show.
+     * Users of classes without a registered tier of their own take the tier of their
+     * closest registered superclass.
+     */
+    static byte tierOf(User user) {
+        UserFactory.Tier tier = UserFactory.tierOf(user.getTierClass());
+        return tier == null ? TIER_USER : tier.getCode();
+    }
+
+    /**
+     * Maps a tier code to the user class of that tier; {@link User} for {@link #TIER_USER}.
+     */
+    static Class<? extends User> tierClass(byte tier) {
+        UserFactory.Tier registered = UserFactory.tierOf(tier);
+        return registered == null ? User.class : registered.getUserClass();
+    }
+
+    // ================== Flyweight view ==================
+
+    /**
+     * Read-only {@link User} positioned on one row of the store. Moving the view to another
+     * row is free; strings are decoded only when their getter is called.
+     */
+    private final class UserView extends User {
+        private int row;
+
+        void moveTo(int row) {
+            this.row = row;
+        }
+
+        @Override
+        public String getUsername() {
+            return usernames.get(row);
+        }
+
+        @Override
+        public String getEmail() {
+            return emails.get(row);
+        }
+
+        @Override
+        public PasswordCredential getCredential() {
+            return credentialAt(row);
+        }
+
+        @Override
+        public int getAge() {
+            return ages[row];
+        }
+
+        @Override
+        long getEmailProfile() {
+            return emailProfiles[row];
+        }
+
+        @Override
+        long getPasswordProfile() {
+            return passwordProfiles[row];
+        }
+
+        @Override
+        boolean passwordEqualsUsername() {
+            return passwordMatchesUsername[row];
+        }
+
+        @Override
+        boolean isView() {
+            return true;
+        }
+
+        @Override
+        Class<? extends User> getTierClass() {
+            return tierClass(tiers[row]);
+        }
+
+        // Views move between rows, so a cached key would belong to another row
+        @Override
+        ValidationCacheKey getValidationCacheKey() {
+            return null;
+        }
+
+        @Override
+        void setValidationCacheKey(ValidationCacheKey validationCacheKey) {
+        }
+
+        @Override
+        public void setUsername(String username) {
+            throw new UnsupportedOperationException("User views are read-only");
+        }
+
+        @Override
+        public void setEmail(String email) {
+            throw new UnsupportedOperationException("User views are read-only");
+        }
+
+        @Override
+        public void setPassword(String password) {
+            throw new UnsupportedOperationException("User views are read-only");
+        }
+
+        @Override
+        public void setPassword(char[] password, PasswordHasher hasher) {
+            throw new UnsupportedOperationException("User views are read-only");
+        }
+
+        @Override
+        public void setAge(int age) {
+            throw new UnsupportedOperationException("User views are read-only");
+        }
+    }
+}
@@ -1,25 +1,96 @@
 package il.ac.hit.validation;
 
 import java.util.Comparator;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
 /**
  * Utility class providing operations on arrays of {@link User} objects.
- * Sorting using the Bubble Sort algorithm.
+ * Sorting uses an adaptive, stable merge sort (see {@link UserSortEngine}).
  */
 public class UserUtils {
 
+    /** Default number of elements below which {@link #parallelSort} sorts sequentially. */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 8192;
+
     /**
-     * Sorts an array of users using the Bubble Sort algorithm.
+     * Sorts an array of users.
      * <p>
      * Template Method Pattern:
-     * The sorting logic (bubble sort) is fixed,
+     * The sorting logic (adaptive stable merge sort) is fixed,
      * The comparison logic is passed via a {@link Comparator}.
+     * <p>
+     * The sort is stable: users that compare as equal keep their relative order.
      *
      * @param users the array of users to sort
      * @param comparator the comparator used to determine the order
      * @throws IllegalArgumentException if users array or comparator is null
      */
     public static void sort(User[] users, Comparator<User> comparator) {
+        // === Validate Arguments ===
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        sort(users, 0, users.length, comparator);
+    }
+
+    /**
+     * Sorts the range {@code [fromIndex, toIndex)} of an array of users.
+     * Elements outside the range are left untouched.
+     * <p>
+     * Short ranges are sorted with insertion sort, existing ordered runs are
+     * detected and merged with galloping, so presorted input costs close to O(n)
+     * and the worst case is O(n log n).
+     *
+     * @param users the array of users to sort
+     * @param fromIndex the index of the first element to sort, inclusive
+     * @param toIndex the index of the last element to sort, exclusive
+     * @param comparator the comparator used to determine the order
+     * @throws IllegalArgumentException if users array or comparator is null, or the range is invalid
+     */
+    public static void sort(User[] users, int fromIndex, int toIndex, Comparator<User> comparator) {
+        // === Validate Arguments ===
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        if (comparator == null) {
+            throw new IllegalArgumentException("Comparator cannot be null");
+        }
+        checkRange(users.length, fromIndex, toIndex);
+
+        UserSortEngine.sort(users, fromIndex, toIndex, comparator);
+    }
+
+    /**
+     * Sorts an array of users on several threads, using {@link #DEFAULT_PARALLEL_THRESHOLD}.
+     *
+     * @param users the array of users to sort
+     * @param comparator the comparator used to determine the order
+     * @param parallelism the number of worker threads to use
+     * @throws IllegalArgumentException if users array or comparator is null, or parallelism is not positive
+     * @see #parallelSort(User[], Comparator, int, int)
+     */
+    public static void parallelSort(User[] users, Comparator<User> comparator, int parallelism) {
+        parallelSort(users, comparator, parallelism, DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Sorts an array of users on several threads.
+     * <p>
+     * The array is split into fork/join tasks, each chunk is sorted with the same
+     * engine as {@link #sort(User[], Comparator)}, and sorted chunks are merged in parallel.
+     * Arrays no longer than {@code threshold}, or a parallelism of 1, use the sequential sort.
+     * <p>
+     * The sort is stable, so the result is exactly the same as {@link #sort(User[], Comparator)}.
+     *
+     * @param users the array of users to sort
+     * @param comparator the comparator used to determine the order
+     * @param parallelism the number of worker threads to use
+     * @param threshold the largest chunk that is sorted without splitting further
+     * @throws IllegalArgumentException if users array or comparator is null,
+     *                                  or parallelism or threshold is not positive
+     */
+    public static void parallelSort(User[] users, Comparator<User> comparator, int parallelism, int threshold) {
         // === Validate Arguments ===
         if (users == null) {
             throw new IllegalArgumentException("User array cannot be null");
@@ -27,29 +98,174 @@ public class UserUtils {
         if (comparator == null) {
             throw new IllegalArgumentException("Comparator cannot be null");
         }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+
+        // === Small inputs are not worth the fork/join overhead ===
+        if (parallelism == 1 || users.length <= threshold) {
+            UserSortEngine.sort(users, 0, users.length, comparator);
+            return;
+        }
+
+        ParallelUserSorter.sort(users, comparator, parallelism, threshold);
+    }
 
-        /*
-         * Bubble Sort Algorithm:
-         * Repeatedly step through the list, compare adjacent elements,
-         * and swap them if they are in the wrong order.
-         * Continue until the list is sorted.
-         */
-        boolean sorted;
-        do {
-            sorted = true;
-
-            // Iterate through array to find unsorted pairs
-            for (int i = 0; i < users.length - 1; i++) {
-                if (comparator.compare(users[i], users[i + 1]) > 0) {
-                    // Swap adjacent elements
-                    User temp = users[i];
-                    users[i] = users[i + 1];
-                    users[i + 1] = temp;
-
-                    // Mark as unsorted to repeat loop
-                    sorted = false;
-                }
+    /**
+     * Sorts an array of users by an int key, such as {@link User#getAge()}.
+     * <p>
+     * Gives the same order as {@code sort(users, Comparator.comparingInt(keyExtractor))},
+     * but each key is read only once and the keys are sorted as primitives
+     * (counting sort for narrow key ranges, radix sort otherwise).
+     *
+     * @param users the array of users to sort
+     * @param keyExtractor the function reading the sort key of a user
+     * @throws IllegalArgumentException if users array or key extractor is null
+     */
+    public static void sortByIntKey(User[] users, ToIntFunction<User> keyExtractor) {
+        // === Validate Arguments ===
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        if (keyExtractor == null) {
+            throw new IllegalArgumentException("Key extractor cannot be null");
+        }
+
+        UserKeySorter.sortByIntKey(users, keyExtractor);
+    }
+
+    /**
+     * Sorts an array of users by a string key, such as {@link User#getUsername()}.
+     * <p>
+     * Gives the same order as {@code sort(users, Comparator.comparing(keyExtractor))},
+     * but each key is read only once and most comparisons are done on a packed
+     * primitive prefix of the key.
+     *
+     * @param users the array of users to sort
+     * @param keyExtractor the function reading the sort key of a user; must not return null
+     * @throws IllegalArgumentException if users array or key extractor is null,
+     *                                  or the extractor returns null
+     */
+    public static void sortByStringKey(User[] users, Function<User, String> keyExtractor) {
+        // === Validate Arguments ===
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        if (keyExtractor == null) {
+            throw new IllegalArgumentException("Key extractor cannot be null");
+        }
+
+        UserKeySorter.sortByStringKey(users, keyExtractor);
+    }
+
+    /**
+     * Returns the first {@code k} users of the given order, sorted, without sorting the array.
+     * <p>
+     * Keeps a bounded heap of the best {@code k} candidates, so the cost is O(n log k)
+     * instead of O(n log n). Ties are resolved by array position, so the result is the
+     * same as the first {@code k} users after {@link #sort(User[], Comparator)}.
+     * For the 100 oldest users, pass a comparator by descending age.
+     *
+     * @param users the array of users; not modified
+     * @param k the number of users wanted; if larger than the array, all users are returned
+     * @param comparator the comparator used to determine the order
+     * @return a new array of {@code min(k, users.length)} users, in order
+     * @throws IllegalArgumentException if users array or comparator is null, or k is negative
+     */
+    public static User[] topK(User[] users, int k, Comparator<User> comparator) {
+        // === Validate Arguments ===
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        if (comparator == null) {
+            throw new IllegalArgumentException("Comparator cannot be null");
+        }
+        if (k < 0) {
+            throw new IllegalArgumentException("K cannot be negative");
+        }
+
+        if (k == 0 || users.length == 0) {
+            return new User[0];
+        }
+        if (k >= users.length) {
+            User[] all = users.clone();
+            UserSortEngine.sort(all, 0, all.length, comparator);
+            return all;
+        }
+        return UserSelection.topK(users, k, comparator);
+    }
+
+    /**
+     * Sorts only the ranks {@code [fromIndex, toIndex)} of an array of users: afterwards that range
+     * holds, in order, the users a full sort would put there. Users before {@code fromIndex} are
+     * not greater than them and users after are not smaller, but both sides are left unordered.
+     * <p>
+     * Unlike {@link #sort(User[], int, int, Comparator)}, which sorts the elements that happen
+     * to be in the range, this selects them from the whole array using introselect
+     * (O(n) on average, O(n log n) at worst) and sorts just the window, which makes
+     * fetching one page of a large array cheap. The selection is not stable.
+     *
+     * @param users the array of users to rearrange
+     * @param fromIndex the first rank to place, inclusive
+     * @param toIndex the last rank to place, exclusive
+     * @param comparator the comparator used to determine the order
+     * @throws IllegalArgumentException if users array or comparator is null, or the range is invalid
+     */
+    public static void partialSort(User[] users, int fromIndex, int toIndex, Comparator<User> comparator) {
+        // === Validate Arguments ===
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        if (comparator == null) {
+            throw new IllegalArgumentException("Comparator cannot be null");
+        }
+        checkRange(users.length, fromIndex, toIndex);
+
+        if (fromIndex < toIndex) {
+            UserSelection.partialSort(users, fromIndex, toIndex, comparator);
+        }
+    }
+
+    /**
+     * Creates a {@link SortedUserList} holding the given users, sorted once.
+     * New users can then be inserted in place instead of re-sorting everything.
+     *
+     * @param users the initial users; the array is copied, not modified
+     * @param comparator the comparator used to determine the order
+     * @return the sorted list
+     * @throws IllegalArgumentException if users array or comparator is null, or the array holds null
+     */
+    public static SortedUserList sortedList(User[] users, Comparator<User> comparator) {
+        // === Validate Arguments ===
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        if (comparator == null) {
+            throw new IllegalArgumentException("Comparator cannot be null");
+        }
+        for (User user : users) {
+            if (user == null) {
+                throw new IllegalArgumentException("User array cannot contain null");
             }
-        } while (!sorted);
+        }
+
+        User[] sorted = users.clone();
+        UserSortEngine.sort(sorted, 0, sorted.length, comparator);
+        return new SortedUserList(comparator, sorted);
+    }
+
+    /**
+     * Validates that {@code [fromIndex, toIndex)} is a valid range of an array of the given length.
+     *
+     * @throws IllegalArgumentException if the range is out of bounds or reversed
+     */
+    static void checkRange(int length, int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IllegalArgumentException(
+                    "Invalid range [" + fromIndex + ", " + toIndex + ") for array of length " + length);
+        }
     }
 }
@@ -1,6 +1,10 @@
 package il.ac.hit.validation;
 
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * A combinator-based functional interface for validating {@link User} objects.
@@ -21,10 +25,7 @@ public interface UserValidation extends Function<User, ValidationResult> {
      * @return a composed validation representing the logical AND
      */
     default UserValidation and(UserValidation other) {
-        return user -> {
-            ValidationResult result = this.apply(user);
-            return result.isValid() ? other.apply(user) : result;
-        };
+        return new CompositeValidation(CompositeValidation.Kind.AND, this, other);
     }
 
     /**
@@ -35,10 +36,7 @@ public interface UserValidation extends Function<User, ValidationResult> {
      * @return a composed validation representing the logical OR
      */
     default UserValidation or(UserValidation other) {
-        return user -> {
-            ValidationResult result = this.apply(user);
-            return result.isValid() ? result : other.apply(user);
-        };
+        return new CompositeValidation(CompositeValidation.Kind.OR, this, other);
     }
 
     /**
@@ -49,15 +47,130 @@ public interface UserValidation extends Function<User, ValidationResult> {
      * @return a composed validation representing the logical XOR
      */
     default UserValidation xor(UserValidation other) {
-        return user -> {
-            boolean first = this.apply(user).isValid();
-            boolean second = other.apply(user).isValid();
-            if (first ^ second) {
-                return new Valid();
-            } else {
-                return new Invalid("XOR validation failed: both are either valid or invalid");
-            }
-        };
+        return new CompositeValidation(CompositeValidation.Kind.XOR, this, other);
+    }
+
+    /**
+     * Attaches a relative cost hint to this validation.
+     *
+     * @param cost the relative cost of one evaluation; rules without a hint count as 1
+     * @return an equivalent validation carrying the hint
+     * @throws IllegalArgumentException if cost is not a positive number
+     * @see #withHints(double, double)
+     */
+    default UserValidation withCost(double cost) {
+        return new HintedValidation(this, cost, HintedValidation.passRateOf(this));
+    }
+
+    /**
+     * Attaches cost and selectivity hints to this validation.
+     * <p>
+     * Hints never change the result; they let cost-aware combinators such as
+     * {@link #adaptiveNone(UserValidation...)} try cheap, decisive rules first.
+     *
+     * @param cost the relative cost of one evaluation; rules without a hint count as 1
+     * @param passRate the expected probability that a user passes, between 0 and 1
+     * @return an equivalent validation carrying the hints
+     * @throws IllegalArgumentException if a hint is out of range
+     */
+    default UserValidation withHints(double cost, double passRate) {
+        return new HintedValidation(this, cost, passRate);
+    }
+
+    /**
+     * Wraps this validation in a bounded cache of results.
+     * <p>
+     * Results are memoized by a fingerprint of the user's tier class, username, email, age and
+     * a keyed hash of the stored password hash (the password itself is never stored).
+     * Changing a user through a setter changes its fingerprint, so the old result is no longer used.
+     * This validation must depend only on those fields.
+     *
+     * @param maxEntries the maximum number of cached results
+     * @param policy the eviction policy
+     * @return a caching validation exposing hit and miss statistics
+     * @throws IllegalArgumentException if maxEntries is not positive or policy is null
+     */
+    default CachedValidation cached(int maxEntries, CachePolicy policy) {
+        return new CachedValidation(this, maxEntries, policy);
+    }
+
+    /**
+     * Validates an array of users in one call.
+     *
+     * @param users the users to validate
+     * @return a compact result with one pass/fail bit and, for failures, one reason index per user
+     * @throws IllegalArgumentException if users array is null
+     */
+    default BatchValidationResult validateAll(User[] users) {
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        return BatchValidator.validate(this, Arrays.asList(users));
+    }
+
+    /**
+     * Validates users in iteration order in one call.
+     *
+     * @param users the users to validate
+     * @return a compact result indexed by iteration order
+     * @throws IllegalArgumentException if users is null
+     */
+    default BatchValidationResult validateAll(Iterable<User> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        return BatchValidator.validate(this, users);
+    }
+
+    /**
+     * Validates a stream of users in one call.
+     * A parallel stream is validated in parallel on the common fork/join pool.
+     *
+     * @param users the users to validate
+     * @return a compact result indexed by encounter order
+     * @throws IllegalArgumentException if users is null
+     */
+    default BatchValidationResult validateAll(Stream<User> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        if (users.isParallel()) {
+            return validateAllParallel(users.toArray(User[]::new), ForkJoinPool.commonPool());
+        }
+        return BatchValidator.validate(this, users::iterator);
+    }
+
+    /**
+     * Validates an array of users in parallel on the common fork/join pool.
+     *
+     * @param users the users to validate
+     * @return the same result {@link #validateAll(User[])} would return
+     * @throws IllegalArgumentException if users array is null
+     * @see #validateAllParallel(User[], ForkJoinPool)
+     */
+    default BatchValidationResult validateAllParallel(User[] users) {
+        return validateAllParallel(users, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates an array of users in parallel.
+     * <p>
+     * The array is split into chunks that are validated as fork/join tasks on the given pool.
+     * This validation must be safe to call from several threads at once.
+     *
+     * @param users the users to validate
+     * @param pool the pool to run the validation on
+     * @return the same result {@link #validateAll(User[])} would return
+     * @throws IllegalArgumentException if users array or pool is null
+     */
+    default BatchValidationResult validateAllParallel(User[] users, ForkJoinPool pool) {
+        if (users == null) {
+            throw new IllegalArgumentException("User array cannot be null");
+        }
+        if (pool == null) {
+            throw new IllegalArgumentException("Pool cannot be null");
+        }
+        return BatchValidator.validateParallel(this, users, pool);
     }
 
     /**
@@ -72,15 +185,19 @@ public interface UserValidation extends Function<User, ValidationResult> {
             throw new IllegalArgumentException("Validations array cannot be null or empty");
         }
 
-        return user -> {
-            for (UserValidation validation : validations) {
-                ValidationResult result = validation.apply(user);
-                if (!result.isValid()) {
-                    return result; // return first failure
-                }
-            }
-            return new Valid();
-        };
+        return new CompositeValidation(CompositeValidation.Kind.ALL, validations.clone());
+    }
+
+    /**
+     * Creates a rule set that evaluates every given validation and reports all failures,
+     * not only the first. See {@link RuleSet}.
+     *
+     * @param validations up to {@link RuleSet#MAX_RULES} validations, identified by their position
+     * @return the rule set; as a validation it passes only if all validations pass
+     * @throws IllegalArgumentException if validations array is null, empty, holds null or is too long
+     */
+    static RuleSet allFailures(UserValidation... validations) {
+        return RuleSet.of(validations);
     }
 
     /**
@@ -95,81 +212,190 @@ public interface UserValidation extends Function<User, ValidationResult> {
             throw new IllegalArgumentException("Validations array cannot be null or empty");
         }
 
-        return user -> {
-            for (UserValidation validation : validations) {
-                if (validation.apply(user).isValid()) {
-                    return new Invalid("At least one validation passed when none should");
-                }
-            }
-            return new Valid();
-        };
+        return new CompositeValidation(CompositeValidation.Kind.NONE, validations.clone());
+    }
+
+    /**
+     * Same result as {@link #none(UserValidation...)}, but evaluates the rules in a learned order.
+     * <p>
+     * Rules are ranked by relative cost (see {@link #withCost(double)}) divided by their
+     * pass rate, which starts at the hint and follows live traffic. Since NONE stops at
+     * the first passing rule and its result does not depend on which rule passed,
+     * cheap rules that usually pass run first without changing the result.
+     * <p>
+     * {@link #all(UserValidation...)} keeps declaration order: it must report the first
+     * declared failure, so every earlier rule has to run anyway and no other order does less work.
+     * XOR always needs the outcome of both sides.
+     *
+     * @param validations array of validations to be checked
+     * @return a validation that passes only if none of the validations pass
+     * @throws IllegalArgumentException if validations array is null or empty
+     */
+    static UserValidation adaptiveNone(UserValidation... validations) {
+        if (validations == null || validations.length == 0) {
+            throw new IllegalArgumentException("Validations array cannot be null or empty");
+        }
+        return new AdaptiveValidation(AdaptiveValidation.Mode.NONE, validations.clone());
+    }
+
+    /**
+     * Same result as chaining the validations with {@link #or(UserValidation)},
+     * but evaluates them in a learned order like {@link #adaptiveNone(UserValidation...)}.
+     * If no validation passes, the failure of the last declared validation is returned.
+     *
+     * @param validations array of validations, at least one of which must pass
+     * @return a validation that passes if any of the validations pass
+     * @throws IllegalArgumentException if validations array is null or empty
+     */
+    static UserValidation adaptiveAny(UserValidation... validations) {
+        if (validations == null || validations.length == 0) {
+            throw new IllegalArgumentException("Validations array cannot be null or empty");
+        }
+        return new AdaptiveValidation(AdaptiveValidation.Mode.ANY, validations.clone());
+    }
+
+    /**
+     * Compiles a validation built from these combinators into a flat rule program.
+     * <p>
+     * The combinator tree is flattened into an array-backed program with short-circuit
+     * jumps, which is then run in a single loop instead of a chain of nested lambdas.
+     * The compiled validation returns exactly what the original would, including which
+     * {@link Invalid} reason is reported first. Compile once and reuse the result.
+     *
+     * @param validation the validation to compile
+     * @return an equivalent, compiled validation
+     * @throws IllegalArgumentException if validation is null
+     */
+    static UserValidation compile(UserValidation validation) {
+        if (validation == null) {
+            throw new IllegalArgumentException("Validation cannot be null");
+        }
+        return CompiledValidation.compile(validation);
+    }
+
+    /**
+     * Builds a validation from a policy written in the rule expression language,
+     * for example {@code "email endsWith \"il\" and email.length > 10 or tier == platinum"}.
+     * See {@link RuleExpression} for the syntax.
+     *
+     * @param expression the policy
+     * @return the compiled validation; repeated calls with the same text return the same instance
+     * @throws IllegalArgumentException if expression is null or not a valid expression
+     */
+    static UserValidation parse(String expression) {
+        return RuleExpression.compile(expression);
     }
 
     // ==== Common User Validations ====
+    // Each factory builds its Invalid result once, so applying a rule never allocates.
+    // Email and password rules read the character-class profile the User computed in one
+    // pass when the field was set, instead of scanning the string on every check.
+    // Each rule is annotated with the fields it reads (see FieldValidation), so an
+    // IncrementalValidator can work out its dependencies.
 
     /** Email must end with "il". */
     static UserValidation emailEndsWithIL() {
-        return user -> user.getEmail().endsWith("il")
-                ? new Valid()
-                : new Invalid("Email must end with 'il'");
+        Invalid invalid = new Invalid("Email must end with 'il'");
+        return new FieldValidation(UserChange.EMAIL,
+                user -> CharClassProfile.has(user.getEmailProfile(), CharClassProfile.ENDS_WITH_IL)
+                        ? Valid.INSTANCE
+                        : invalid);
     }
 
     /** Email length must be greater than 10 characters. */
     static UserValidation emailLengthBiggerThan10() {
-        return user -> user.getEmail().length() > 10
-                ? new Valid()
-                : new Invalid("Email must be longer than 10 characters");
+        Invalid invalid = new Invalid("Email must be longer than 10 characters");
+        return new FieldValidation(UserChange.EMAIL,
+                user -> CharClassProfile.length(user.getEmailProfile()) > 10
+                        ? Valid.INSTANCE
+                        : invalid);
     }
 
     /** Password length must be greater than 8 characters. */
     static UserValidation passwordLengthBiggerThan8() {
-        return user -> user.getPassword().length() > 8
-                ? new Valid()
-                : new Invalid("Password must be longer than 8 characters");
+        Invalid invalid = new Invalid("Password must be longer than 8 characters");
+        return new FieldValidation(UserChange.PASSWORD,
+                user -> CharClassProfile.length(user.getPasswordProfile()) > 8
+                        ? Valid.INSTANCE
+                        : invalid);
     }
 
     /**
-     * Password must include only letters and numbers.
-     * Returns invalid on first non-letter-or-digit character.
+     * Password must include only letters and numbers,
+     * as per {@link Character#isLetterOrDigit(char)}.
      */
     static UserValidation passwordIncludesLettersNumbersOnly() {
-        return user -> {
-            String password = user.getPassword();
-            for (int i = 0; i < password.length(); i++) {
-                char c = password.charAt(i);
-                if (!Character.isLetterOrDigit(c)) {
-                    return new Invalid("Password must include only letters and numbers");
-                }
-            }
-            return new Valid();
-        };
+        Invalid invalid = new Invalid("Password must include only letters and numbers");
+        return new FieldValidation(UserChange.PASSWORD,
+                user -> CharClassProfile.has(user.getPasswordProfile(), CharClassProfile.ALL_LETTERS_OR_DIGITS)
+                        ? Valid.INSTANCE
+                        : invalid);
     }
 
     /** Password must include the dollar sign ('$'). */
     static UserValidation passwordIncludesDollarSign() {
-        return user -> user.getPassword().contains("$")
-                ? new Valid()
-                : new Invalid("Password must include the dollar sign '$'");
+        Invalid invalid = new Invalid("Password must include the dollar sign '$'");
+        return new FieldValidation(UserChange.PASSWORD,
+                user -> CharClassProfile.has(user.getPasswordProfile(), CharClassProfile.HAS_DOLLAR)
+                        ? Valid.INSTANCE
+                        : invalid);
     }
 
-    /** Password must be different from the username. */
+    /** Password must be different from the username (see {@link User#passwordEqualsUsername()}). */
     static UserValidation passwordIsDifferentFromUsername() {
-        return user -> !user.getPassword().equals(user.getUsername())
-                ? new Valid()
-                : new Invalid("Password must be different from username");
+        Invalid invalid = new Invalid("Password must be different from username");
+        return new FieldValidation(UserChange.PASSWORD | UserChange.USERNAME,
+                user -> !user.passwordEqualsUsername()
+                        ? Valid.INSTANCE
+                        : invalid);
     }
 
     /** User age must be greater than 18. */
     static UserValidation ageBiggerThan18() {
-        return user -> user.getAge() > 18
-                ? new Valid()
-                : new Invalid("User must be older than 18");
+        Invalid invalid = new Invalid("User must be older than 18");
+        return new FieldValidation(UserChange.AGE,
+                user -> user.getAge() > 18
+                        ? Valid.INSTANCE
+                        : invalid);
+    }
+
+    /**
+     * Email domain (the text after the last at sign) must be the given one, ignoring case.
+     * For users whose domain was interned (see {@link EmailDomain}) this compares two ids;
+     * other emails are compared in place, without copying.
+     *
+     * @param domain the domain, such as {@code "example.co.il"}
+     * @return the validation
+     * @throws IllegalArgumentException if domain is null, empty or contains an at sign
+     */
+    static UserValidation emailDomainIs(String domain) {
+        if (domain == null || domain.isEmpty() || domain.indexOf('@') >= 0) {
+            throw new IllegalArgumentException("Domain must be non-empty and without '@'");
+        }
+        // Held by the rule, so the domain stays interned and keeps its id
+        EmailDomain expected = EmailDomain.of(domain.toLowerCase(Locale.ROOT));
+        String name = expected.getName();
+        Invalid invalid = new Invalid("Email domain must be " + name);
+        return new FieldValidation(UserChange.EMAIL, user -> {
+            EmailDomain actual = user.getEmailDomain();
+            boolean matches;
+            if (actual != null) {
+                matches = actual.toLowerCase().getId() == expected.getId();
+            } else {
+                String email = user.getEmail();
+                int at = email.length() - name.length() - 1;
+                matches = at >= 0 && email.charAt(at) == '@' && email.regionMatches(true, at + 1, name, 0, name.length());
+            }
+            return matches ? Valid.INSTANCE : invalid;
+        });
     }
 
     /** Username length must be greater than 8 characters. */
     static UserValidation usernameLengthBiggerThan8() {
-        return user -> user.getUsername().length() > 8
-                ? new Valid()
-                : new Invalid("Username must be longer than 8 characters");
+        Invalid invalid = new Invalid("Username must be longer than 8 characters");
+        return new FieldValidation(UserChange.USERNAME,
+                user -> user.getUsername().length() > 8
+                        ? Valid.INSTANCE
+                        : invalid);
     }
 }
@@ -0,0 +1,115 @@
+package il.ac.hit.validation;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Append-only store of strings packed as UTF-8 into one byte array.
+ * <p>
+ * String {@code i} occupies {@code data[offsets[i], offsets[i + 1])}, so a million strings
+ * cost two arrays instead of a million {@link String} objects. Strings are decoded on demand.
+ */
+final class Utf8Arena {
+
+    private byte[] data;
+    private int[] offsets;
+    private int size;
+
+    /**
+     * Constructs an empty arena.
+     * @param initialCapacity the expected number of strings
+     */
+    Utf8Arena(int initialCapacity) {
+        this.data = new byte[Math.max(16, initialCapacity * 16)];
+        this.offsets = new int[Math.max(1, initialCapacity) + 1];
+    }
+
+    /**
+     * Appends a string.
+     * @param value the string to append
+     * @return the index of the string
+     */
+    int add(String value) {
+        return add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends a string that is already UTF-8 encoded.
+     * @param utf8 the encoded string
+     * @return the index of the string
+     */
+    int add(byte[] utf8) {
+        int start = offsets[size];
+        int end = start + utf8.length;
+        if (end > data.length) {
+            data = Arrays.copyOf(data, Math.max(end, data.length + (data.length >> 1)));
+        }
+        if (size + 2 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1) + 1);
+        }
+        System.arraycopy(utf8, 0, data, start, utf8.length);
+        offsets[++size] = end;
+        return size - 1;
+    }
+
+    /**
+     * Decodes a string.
+     * @param index the index of the string
+     * @return the decoded string
+     */
+    String get(int index) {
+        int start = offsets[index];
+        return new String(data, start, offsets[index + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the number of UTF-8 bytes of a string.
+     * @param index the index of the string
+     * @return the encoded length
+     */
+    int byteLength(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * Checks whether a string is pure ASCII, in which case bytes and chars coincide.
+     * @param index the index of the string
+     * @return true if every byte is below 0x80
+     */
+    boolean isAscii(int index) {
+        for (int i = offsets[index], end = offsets[index + 1]; i < end; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares two strings by unsigned UTF-8 bytes.
+     * For ASCII strings this is the same order as {@link String#compareTo(String)}.
+     *
+     * @param a the index of the first string
+     * @param b the index of the second string
+     * @return a negative number, zero or a positive number
+     */
+    int compare(int a, int b) {
+        return Arrays.compareUnsigned(data, offsets[a], offsets[a + 1], data, offsets[b], offsets[b + 1]);
+    }
+
+    /**
+     * Gets the number of strings.
+     * @return the size
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes used by the packed strings.
+     * @return the used byte count
+     */
+    long usedBytes() {
+        return offsets[size];
+    }
+}
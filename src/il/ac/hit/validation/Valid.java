@@ -4,10 +4,13 @@ import java.util.Optional;
 
 /**
  * Represents a successful validation result.
- * This class is immutable and stateless.
+ * This class is immutable and stateless, so the shared {@link #INSTANCE} can be used everywhere.
  */
 public class Valid implements ValidationResult {
 
+    /** The canonical valid result. */
+    public static final Valid INSTANCE = new Valid();
+
     /**
      * Returns {@code true} as this represents a valid result.
      *
@@ -27,4 +30,14 @@ public class Valid implements ValidationResult {
     public Optional<String> getReason() {
         return Optional.empty();
     }
+
+    /**
+     * Returns {@code null} since there is no reason for valid results.
+     *
+     * @return {@code null} always
+     */
+    @Override
+    public String getReasonOrNull() {
+        return null;
+    }
 }
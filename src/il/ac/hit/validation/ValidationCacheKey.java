@@ -0,0 +1,109 @@
+package il.ac.hit.validation;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Fingerprint of the fields a validation can depend on: the tier class (see
+ * {@link User#getTierClass()}), username, email, age, and the stored salted hash of the password.
+ * <p>
+ * The password itself is never kept, and neither is its stored hash: keys hold an HMAC of the
+ * hash under a random secret made once per process, so a key that leaks (in a heap dump, say)
+ * cannot be matched against stored credentials or attacked offline. Keys are cached on the {@link User} together with
+ * the user's modification count, so a user changed by a setter never reuses the key
+ * (and so never hits a cache entry) of its old state.
+ */
+final class ValidationCacheKey {
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final SecretKeySpec MAC_KEY = newMacKey();
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(ValidationCacheKey::newMac);
+
+    private final int modificationCount;
+    private final Class<?> userClass;
+    private final String username;
+    private final String email;
+    private final int age;
+    private final byte[] passwordDigest;
+    private final int hash;
+
+    private ValidationCacheKey(User user, int modificationCount) {
+        this.modificationCount = modificationCount;
+        // Views and copies report the tier they stand for, which is what tier rules dispatch on
+        this.userClass = user.getTierClass();
+        this.username = user.getUsername();
+        this.email = user.getEmail();
+        this.age = user.getAge();
+        // Re-setting the same password makes a new salt; that only costs cache hits, never correctness
+        this.passwordDigest = MAC.get().doFinal(user.getCredential().getHash());
+
+        int h = userClass.hashCode();
+        h = 31 * h + username.hashCode();
+        h = 31 * h + email.hashCode();
+        h = 31 * h + age;
+        this.hash = 31 * h + Arrays.hashCode(passwordDigest);
+    }
+
+    /**
+     * Gets the key of a user, computing and caching it on the user if needed.
+     * A {@link ConcurrentUser} is read through one snapshot, so the key never mixes
+     * fields from two of its states.
+     *
+     * @param user the user
+     * @return the key of the user's current state
+     */
+    static ValidationCacheKey of(User user) {
+        User source = user instanceof ConcurrentUser ? ((ConcurrentUser) user).snapshot() : user;
+        int modificationCount = source.getModificationCount();
+        ValidationCacheKey key = user.getValidationCacheKey();
+        if (key == null || key.modificationCount != modificationCount) {
+            key = new ValidationCacheKey(source, modificationCount);
+            user.setValidationCacheKey(key);
+        }
+        return key;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ValidationCacheKey)) {
+            return false;
+        }
+        ValidationCacheKey other = (ValidationCacheKey) o;
+        return hash == other.hash
+                && age == other.age
+                && userClass == other.userClass
+                && Objects.equals(username, other.username)
+                && Objects.equals(email, other.email)
+                && MessageDigest.isEqual(passwordDigest, other.passwordDigest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    private static SecretKeySpec newMacKey() {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        return new SecretKeySpec(secret, MAC_ALGORITHM);
+    }
+
+    private static Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(MAC_KEY);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package il.ac.hit.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects per-rule metrics for named {@link UserValidation} rules.
+ * <p>
+ * Rules are wrapped with {@link #instrument(String, UserValidation)}. Each instrumented rule
+ * counts evaluations, passes and failures and records its latency in a log2 histogram.
+ * All counters are striped ({@link LongAdder}), so concurrent validations do not contend.
+ * <p>
+ * Recording can be switched off at runtime with {@link #setEnabled(boolean)}, which leaves a
+ * single volatile read per evaluation. {@link #NOOP} does not wrap rules at all, so it costs nothing.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * ValidationMetrics metrics = new ValidationMetrics();
+ * UserValidation policy = UserValidation.all(
+ *         metrics.instrument("emailEndsWithIL", UserValidation.emailEndsWithIL()),
+ *         metrics.instrument("ageBiggerThan18", UserValidation.ageBiggerThan18()));
+ * ...
+ * for (ValidationMetrics.RuleSnapshot rule : metrics.snapshot()) { ... }
+ * }</pre>
+ */
+public class ValidationMetrics {
+
+    /** Metrics that never record anything; {@link #instrument} returns rules unchanged. */
+    public static final ValidationMetrics NOOP = new ValidationMetrics(false);
+
+    /** Number of latency buckets; bucket {@code i} holds latencies below {@code 2^i} nanoseconds. */
+    static final int LATENCY_BUCKETS = 40;
+
+    private final boolean recording;
+    private final Map<String, RuleMetrics> rules = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+
+    /**
+     * Constructs an empty, enabled metrics registry.
+     */
+    public ValidationMetrics() {
+        this(true);
+    }
+
+    private ValidationMetrics(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * Wraps a rule so that its evaluations are recorded under the given name.
+     * Instrumenting several rules with the same name aggregates them. The wrapper reports the
+     * fields the rule reads and its cost hints, so incremental validation and adaptive
+     * combinators treat it like the rule itself.
+     *
+     * @param name the rule name reported in snapshots
+     * @param rule the rule to instrument
+     * @return the instrumented rule, or the rule itself for {@link #NOOP}
+     * @throws IllegalArgumentException if name is null or empty, or rule is null
+     */
+    public UserValidation instrument(String name, UserValidation rule) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Rule name cannot be null or empty");
+        }
+        if (rule == null) {
+            throw new IllegalArgumentException("Rule cannot be null");
+        }
+        if (!recording) {
+            return rule;
+        }
+        RuleMetrics metrics = rules.computeIfAbsent(name, RuleMetrics::new);
+        UserValidation instrumented = user -> {
+            if (!enabled) {
+                return rule.apply(user);
+            }
+            long start = System.nanoTime();
+            ValidationResult result = rule.apply(user);
+            metrics.record(result.isValid(), System.nanoTime() - start);
+            return result;
+        };
+
+        // Keep the fields read visible to incremental validation
+        int fields = FieldValidation.fieldsOf(rule);
+        if (fields != UserChange.ALL) {
+            instrumented = new FieldValidation(fields, instrumented);
+        }
+
+        // Keep cost hints visible to adaptive combinators
+        if (rule instanceof HintedValidation) {
+            return instrumented.withHints(HintedValidation.costOf(rule), HintedValidation.passRateOf(rule));
+        }
+        return instrumented;
+    }
+
+    /**
+     * Enables or disables recording for every rule instrumented by this registry.
+     * @param enabled true to record, false to pass evaluations straight through
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Indicates whether evaluations are currently recorded.
+     * @return true if recording is enabled
+     */
+    public boolean isEnabled() {
+        return recording && enabled;
+    }
+
+    /**
+     * Takes a snapshot of every rule's metrics, sorted by name.
+     * Counters keep running; values of concurrently updated rules may be slightly apart.
+     *
+     * @return an unmodifiable list of rule snapshots
+     */
+    public List<RuleSnapshot> snapshot() {
+        List<RuleSnapshot> snapshots = new ArrayList<>(rules.size());
+        for (RuleMetrics metrics : rules.values()) {
+            snapshots.add(metrics.snapshot());
+        }
+        snapshots.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return Collections.unmodifiableList(snapshots);
+    }
+
+    /**
+     * Resets every counter to zero.
+     */
+    public void reset() {
+        for (RuleMetrics metrics : rules.values()) {
+            metrics.reset();
+        }
+    }
+
+    // ================== Per-rule counters ==================
+
+    private static final class RuleMetrics {
+        private final String name;
+        private final LongAdder passes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKETS];
+
+        RuleMetrics(String name) {
+            this.name = name;
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                latencyBuckets[i] = new LongAdder();
+            }
+        }
+
+        void record(boolean valid, long nanos) {
+            (valid ? passes : failures).increment();
+            totalNanos.add(nanos);
+            int bucket = Math.min(LATENCY_BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(Math.max(nanos, 0)));
+            latencyBuckets[bucket].increment();
+        }
+
+        RuleSnapshot snapshot() {
+            long[] buckets = new long[LATENCY_BUCKETS];
+            for (int i = 0; i < LATENCY_BUCKETS; i++) {
+                buckets[i] = latencyBuckets[i].sum();
+            }
+            return new RuleSnapshot(name, passes.sum(), failures.sum(), totalNanos.sum(), buckets);
+        }
+
+        void reset() {
+            passes.reset();
+            failures.reset();
+            totalNanos.reset();
+            for (LongAdder bucket : latencyBuckets) {
+                bucket.reset();
+            }
+        }
+    }
+
+    // ================== Snapshots ==================
+
+    /**
+     * Immutable point-in-time metrics of one named rule.
+     */
+    public static final class RuleSnapshot {
+        private final String name;
+        private final long passes;
+        private final long failures;
+        private final long totalNanos;
+        private final long[] latencyBuckets;
+
+        RuleSnapshot(String name, long passes, long failures, long totalNanos, long[] latencyBuckets) {
+            this.name = name;
+            this.passes = passes;
+            this.failures = failures;
+            this.totalNanos = totalNanos;
+            this.latencyBuckets = latencyBuckets;
+        }
+
+        /**
+         * Gets the rule name.
+         * @return the name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of evaluations.
+         * @return passes plus failures
+         */
+        public long getEvaluations() {
+            return passes + failures;
+        }
+
+        /**
+         * Gets the number of evaluations that passed.
+         * @return the pass count
+         */
+        public long getPasses() {
+            return passes;
+        }
+
+        /**
+         * Gets the number of evaluations that failed.
+         * @return the failure count
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Gets the total time spent in the rule.
+         * @return the total latency in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * Gets the mean latency.
+         * @return the mean latency in nanoseconds, or 0 if never evaluated
+         */
+        public double getMeanNanos() {
+            long evaluations = getEvaluations();
+            return evaluations == 0 ? 0 : (double) totalNanos / evaluations;
+        }
+
+        /**
+         * Gets the latency histogram. Bucket {@code i} counts evaluations that took
+         * at least {@code 2^(i-1)} and less than {@code 2^i} nanoseconds (bucket 0 is 0 ns).
+         *
+         * @return a copy of the bucket counts
+         */
+        public long[] getLatencyBuckets() {
+            return latencyBuckets.clone();
+        }
+
+        /**
+         * Estimates a latency percentile from the histogram.
+         *
+         * @param percentile the percentile, between 0 and 100
+         * @return the upper bound of the bucket holding that percentile, in nanoseconds, or 0 if never evaluated
+         * @throws IllegalArgumentException if percentile is out of range
+         */
+        public long getLatencyPercentileNanos(double percentile) {
+            if (!(percentile >= 0 && percentile <= 100)) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            long evaluations = getEvaluations();
+            if (evaluations == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(evaluations * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                seen += latencyBuckets[i];
+                if (seen >= target) {
+                    return i == 0 ? 0 : 1L << i;
+                }
+            }
+            return 1L << (latencyBuckets.length - 1);
+        }
+
+        @Override
+        public String toString() {
+            return name + "{evaluations=" + getEvaluations() + ", passes=" + passes + ", failures=" + failures
+                    + ", meanNanos=" + Math.round(getMeanNanos()) + ", p99Nanos=" + getLatencyPercentileNanos(99) + "}";
+        }
+    }
+}
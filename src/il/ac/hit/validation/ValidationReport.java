@@ -0,0 +1,137 @@
+package il.ac.hit.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Every failure of one {@link RuleSet} evaluation, as a bitmask over the rule ids.
+ * <p>
+ * The mask is all that is computed up front. Reason strings, rule names and lists are
+ * built only when read, so checking {@link #isValid()} or {@link #hasFailed(int)} costs nothing
+ * extra. As a {@link ValidationResult} the reason is that of the first failed rule.
+ */
+public final class ValidationReport implements ValidationResult {
+
+    private final RuleSet ruleSet;
+    private final long failureMask;
+    // Results of the failed rules, in id order; null when valid
+    private final ValidationResult[] failures;
+    private List<String> reasons;
+
+    ValidationReport(RuleSet ruleSet, long failureMask, ValidationResult[] failures) {
+        this.ruleSet = ruleSet;
+        this.failureMask = failureMask;
+        this.failures = failures;
+    }
+
+    @Override
+    public boolean isValid() {
+        return failureMask == 0;
+    }
+
+    @Override
+    public Optional<String> getReason() {
+        return failureMask == 0 ? Optional.empty() : failures[0].getReason();
+    }
+
+    @Override
+    public String getReasonOrNull() {
+        return failureMask == 0 ? null : failures[0].getReasonOrNull();
+    }
+
+    // ================== Failures ==================
+
+    /**
+     * Gets the ids of the failed rules as set bits: bit {@code i} is set if rule {@code i} failed.
+     * @return the failure mask; 0 if every rule passed
+     */
+    public long getFailureMask() {
+        return failureMask;
+    }
+
+    /**
+     * Gets the number of failed rules.
+     * @return the failure count
+     */
+    public int getFailureCount() {
+        return Long.bitCount(failureMask);
+    }
+
+    /**
+     * Checks whether a rule failed.
+     *
+     * @param ruleId the rule id
+     * @return true if the rule failed
+     * @throws IndexOutOfBoundsException if the id is out of range
+     */
+    public boolean hasFailed(int ruleId) {
+        if (ruleId < 0 || ruleId >= ruleSet.size()) {
+            throw new IndexOutOfBoundsException("Rule id " + ruleId + " out of bounds for " + ruleSet.size() + " rules");
+        }
+        return (failureMask & (1L << ruleId)) != 0;
+    }
+
+    /**
+     * Gets the failure reason of one rule.
+     *
+     * @param ruleId the rule id
+     * @return the reason, or null if the rule passed
+     * @throws IndexOutOfBoundsException if the id is out of range
+     */
+    public String getReasonOrNull(int ruleId) {
+        if (!hasFailed(ruleId)) {
+            return null;
+        }
+        // Failures are stored densely: count the failed rules before this one
+        int index = Long.bitCount(failureMask & ((1L << ruleId) - 1));
+        return failures[index].getReasonOrNull();
+    }
+
+    /**
+     * Gets the reasons of every failed rule, in rule id order. Built on first call.
+     * @return an unmodifiable list; empty if every rule passed
+     */
+    public List<String> getReasons() {
+        List<String> result = reasons;
+        if (result == null) {
+            if (failureMask == 0) {
+                result = Collections.emptyList();
+            } else {
+                List<String> list = new ArrayList<>(getFailureCount());
+                for (int i = 0; i < getFailureCount(); i++) {
+                    list.add(failures[i].getReasonOrNull());
+                }
+                result = Collections.unmodifiableList(list);
+            }
+            reasons = result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the names of every failed rule, in rule id order.
+     * @return a new list; empty if every rule passed
+     */
+    public List<String> getFailedRuleNames() {
+        List<String> names = new ArrayList<>(getFailureCount());
+        for (long mask = failureMask; mask != 0; mask &= mask - 1) {
+            names.add(ruleSet.getRuleName(Long.numberOfTrailingZeros(mask)));
+        }
+        return names;
+    }
+
+    /**
+     * Gets the rule set that produced this report.
+     * @return the rule set
+     */
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    @Override
+    public String toString() {
+        return failureMask == 0 ? "ValidationReport{valid}" : "ValidationReport{failed=" + getFailedRuleNames() + "}";
+    }
+}
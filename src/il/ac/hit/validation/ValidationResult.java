@@ -20,4 +20,23 @@ public interface ValidationResult {
      * @return an Optional containing the reason if invalid, or empty if valid
      */
     Optional<String> getReason();
+
+    /**
+     * Provides the reason for failure without wrapping it in an {@link Optional}.
+     * Useful on hot paths that must not allocate.
+     *
+     * @return the reason if invalid, or null if valid
+     */
+    default String getReasonOrNull() {
+        return getReason().orElse(null);
+    }
+
+    /**
+     * Returns the canonical valid result.
+     *
+     * @return the shared {@link Valid} instance
+     */
+    static ValidationResult valid() {
+        return Valid.INSTANCE;
+    }
 }
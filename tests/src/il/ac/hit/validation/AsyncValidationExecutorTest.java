@@ -0,0 +1,185 @@
+package il.ac.hit.validation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Timeouts and cancellation of {@link AsyncValidationExecutor}, against a local stand-in
+ * for a slow remote backend.
+ */
+class AsyncValidationExecutorTest {
+
+    /** How long the tests wait for something that should happen at once. */
+    private static final long WAIT_SECONDS = 5;
+
+    /**
+     * A backend that answers only when released. Each call reports when it starts, and
+     * whether it was interrupted while waiting.
+     */
+    private static final class StandInBackend {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        UserValidation rule(ValidationResult answer) {
+            return user -> {
+                started.countDown();
+                try {
+                    release.await();
+                    return answer;
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Backend call interrupted", e);
+                }
+            };
+        }
+
+        void awaitStarted() throws InterruptedException {
+            assertTrue(started.await(WAIT_SECONDS, TimeUnit.SECONDS), "backend call never started");
+        }
+
+        void awaitInterrupted() throws InterruptedException {
+            assertTrue(interrupted.await(WAIT_SECONDS, TimeUnit.SECONDS), "backend call was not interrupted");
+        }
+
+        /** A call stopped before its thread ran it never starts, and has nothing to interrupt. */
+        void awaitInterruptedIfStarted() throws InterruptedException {
+            if (started.getCount() == 0) {
+                awaitInterrupted();
+            }
+        }
+    }
+
+    // Made once: creating a user runs the password hash
+    private static final User USER = new User("someone", "someone@example.co.il", "password123", 30);
+
+    private AsyncValidationExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new AsyncValidationExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    // ================== Timeouts ==================
+
+    @Test
+    void ruleFinishingInTimeReportsItsOwnResult() {
+        StandInBackend backend = new StandInBackend();
+        backend.release.countDown();
+
+        ValidationResult result = executor.async(backend.rule(Valid.INSTANCE), Duration.ofSeconds(WAIT_SECONDS))
+                .apply(USER).join();
+
+        assertSame(Valid.INSTANCE, result);
+    }
+
+    @Test
+    void stuckRuleTimesOutAsInvalidAndIsInterrupted() throws InterruptedException {
+        StandInBackend backend = new StandInBackend();
+
+        ValidationResult result = executor.async(backend.rule(Valid.INSTANCE), Duration.ofMillis(50))
+                .apply(USER).join();
+
+        assertFalse(result.isValid());
+        assertEquals("Validation timed out after 50 ms", result.getReasonOrNull());
+        backend.awaitInterruptedIfStarted();
+    }
+
+    @Test
+    void defaultTimeoutAppliesToRulesLiftedWithoutOne() throws InterruptedException {
+        StandInBackend backend = new StandInBackend();
+        try (AsyncValidationExecutor timed = new AsyncValidationExecutor(Duration.ofMillis(50))) {
+            ValidationResult result = timed.validate(backend.rule(Valid.INSTANCE), USER).join();
+
+            assertEquals("Validation timed out after 50 ms", result.getReasonOrNull());
+            backend.awaitInterruptedIfStarted();
+        }
+    }
+
+    @Test
+    void nonPositiveTimeoutIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncValidationExecutor(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class,
+                () -> executor.async(UserValidation.ageBiggerThan18(), Duration.ofMillis(-1)));
+    }
+
+    // ================== Cancellation ==================
+
+    @Test
+    void cancellingTheFutureInterruptsTheRule() throws InterruptedException {
+        StandInBackend backend = new StandInBackend();
+        CompletableFuture<ValidationResult> result = executor.async(backend.rule(Valid.INSTANCE)).apply(USER);
+        backend.awaitStarted();
+
+        assertTrue(result.cancel(true));
+
+        backend.awaitInterrupted();
+        assertThrows(CancellationException.class, result::join);
+    }
+
+    @Test
+    void failingRuleCompletesExceptionally() {
+        UserValidation broken = u -> {
+            throw new IllegalStateException("backend down");
+        };
+
+        CompletionException error = assertThrows(CompletionException.class,
+                () -> executor.async(broken).apply(USER).join());
+
+        assertEquals("backend down", error.getCause().getMessage());
+    }
+
+    @Test
+    void earlyFailureInAllCancelsLaterRules() throws InterruptedException {
+        StandInBackend slow = new StandInBackend();
+        Invalid rejected = new Invalid("rejected");
+        // Fails only once the later rule is waiting on its backend
+        UserValidation rejectOnceSlowStarted = u -> {
+            try {
+                slow.started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return rejected;
+        };
+
+        ValidationResult result = AsyncUserValidation.all(
+                executor.async(rejectOnceSlowStarted),
+                executor.async(slow.rule(Valid.INSTANCE))).apply(USER).join();
+
+        assertSame(rejected, result);
+        slow.awaitInterrupted();
+    }
+
+    @Test
+    void timeoutInAllFailsClosed() throws InterruptedException {
+        StandInBackend slow = new StandInBackend();
+
+        ValidationResult result = AsyncUserValidation.all(
+                executor.async(UserValidation.ageBiggerThan18()),
+                executor.async(slow.rule(Valid.INSTANCE), Duration.ofMillis(50))).apply(USER).join();
+
+        assertEquals("Validation timed out after 50 ms", result.getReasonOrNull());
+        slow.awaitInterruptedIfStarted();
+    }
+}
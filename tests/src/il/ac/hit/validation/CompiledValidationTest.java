@@ -0,0 +1,184 @@
+package il.ac.hit.validation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Results of programs built by {@link UserValidation#compile(UserValidation)}, checked
+ * against the combinator tree they were compiled from.
+ */
+class CompiledValidationTest {
+
+    // Made once: creating a user runs the password hash
+    private static final User[] USERS = {
+            new User("alice", "alice@example.com", "Password123$", 25),
+            new User("bobbybobby", "bob@example.il", "BobPassword", 30),
+            new User("c", "c@x.il", "c", 10),
+            new User("dddddddddd", "dddddddddd@mail.co.il", "abc$", 19)
+    };
+
+    private static final UserValidation[] RULES = {
+            UserValidation.emailEndsWithIL(),
+            UserValidation.emailLengthBiggerThan10(),
+            UserValidation.passwordLengthBiggerThan8(),
+            UserValidation.passwordIncludesLettersNumbersOnly(),
+            UserValidation.passwordIncludesDollarSign(),
+            UserValidation.passwordIsDifferentFromUsername(),
+            UserValidation.ageBiggerThan18(),
+            UserValidation.usernameLengthBiggerThan8()
+    };
+
+    /** A rule with a fixed answer that records its name each time it runs. */
+    private static UserValidation recording(String name, boolean passes, List<String> calls) {
+        Invalid invalid = new Invalid(name + " failed");
+        return user -> {
+            calls.add(name);
+            return passes ? Valid.INSTANCE : invalid;
+        };
+    }
+
+    /** A random tree over {@link #RULES}, with compiled subtrees mixed in. */
+    private static UserValidation randomTree(Random random, int depth) {
+        int kind = random.nextInt(depth > 4 ? 1 : 6);
+        if (kind == 0) {
+            return RULES[random.nextInt(RULES.length)];
+        }
+        switch (kind) {
+            case 1:
+                return randomTree(random, depth + 1).and(randomTree(random, depth + 1));
+            case 2:
+                return randomTree(random, depth + 1).or(randomTree(random, depth + 1));
+            case 3:
+                return randomTree(random, depth + 1).xor(randomTree(random, depth + 1));
+            default:
+                UserValidation[] operands = new UserValidation[1 + random.nextInt(4)];
+                for (int i = 0; i < operands.length; i++) {
+                    operands[i] = randomTree(random, depth + 1);
+                }
+                if (kind == 4) {
+                    return UserValidation.all(operands);
+                }
+                return random.nextBoolean()
+                        ? UserValidation.none(operands)
+                        : UserValidation.compile(UserValidation.all(operands));
+        }
+    }
+
+    private static void assertSameResult(ValidationResult expected, ValidationResult actual, String message) {
+        assertEquals(expected.isValid(), actual.isValid(), message);
+        assertEquals(expected.getReasonOrNull(), actual.getReasonOrNull(), message);
+    }
+
+    // ================== Results ==================
+
+    @Test
+    void compiledTreesGiveTheSourceResultAndReason() {
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            UserValidation tree = randomTree(random, 0);
+            UserValidation compiled = UserValidation.compile(tree);
+            for (User user : USERS) {
+                assertSameResult(tree.apply(user), compiled.apply(user), "tree " + i + ", " + user.getUsername());
+            }
+        }
+    }
+
+    @Test
+    void singleRuleCompilesToItself() {
+        for (UserValidation rule : RULES) {
+            UserValidation compiled = UserValidation.compile(rule);
+            for (User user : USERS) {
+                assertSameResult(rule.apply(user), compiled.apply(user), user.getUsername());
+            }
+        }
+    }
+
+    @Test
+    void compilingACompiledValidationReturnsIt() {
+        UserValidation compiled = UserValidation.compile(RULES[0].and(RULES[1]));
+        assertSame(compiled, UserValidation.compile(compiled));
+    }
+
+    @Test
+    void nestedXorKeepsEachLevelApart() {
+        UserValidation pass = user -> Valid.INSTANCE;
+        UserValidation fail = user -> new Invalid("fail");
+        // pass ^ (pass ^ (pass ^ ... )) over 64 levels: valid when the number of passes is odd
+        UserValidation tree = pass;
+        for (int level = 1; level < 64; level++) {
+            tree = (level % 3 == 0 ? fail : pass).xor(tree);
+        }
+        UserValidation compiled = UserValidation.compile(tree);
+
+        for (User user : USERS) {
+            assertSameResult(tree.apply(user), compiled.apply(user), user.getUsername());
+        }
+    }
+
+    // ================== Evaluation order ==================
+
+    @Test
+    void andAndOrShortCircuitLikeTheSource() {
+        List<String> calls = new ArrayList<>();
+        UserValidation a = recording("a", false, calls);
+        UserValidation b = recording("b", true, calls);
+        UserValidation c = recording("c", true, calls);
+        UserValidation tree = a.and(b).or(c.and(a)).or(b);
+
+        tree.apply(USERS[0]);
+        List<String> expected = new ArrayList<>(calls);
+        calls.clear();
+        UserValidation.compile(tree).apply(USERS[0]);
+
+        assertEquals(List.of("a", "c", "a", "b"), expected);
+        assertEquals(expected, calls);
+    }
+
+    @Test
+    void allStopsAtTheFirstFailureAndNoneAtTheFirstPass() {
+        List<String> calls = new ArrayList<>();
+        UserValidation all = UserValidation.all(
+                recording("a", true, calls), recording("b", false, calls), recording("c", false, calls));
+        UserValidation none = UserValidation.none(
+                recording("d", false, calls), recording("e", true, calls), recording("f", true, calls));
+
+        ValidationResult allResult = UserValidation.compile(all).apply(USERS[0]);
+        ValidationResult noneResult = UserValidation.compile(none).apply(USERS[0]);
+
+        assertEquals(List.of("a", "b", "d", "e"), calls);
+        assertEquals("b failed", allResult.getReasonOrNull());
+        assertSameResult(none.apply(USERS[0]), noneResult, "none");
+    }
+
+    @Test
+    void repeatedRuleRunsEachTimeItIsReached() {
+        List<String> calls = new ArrayList<>();
+        UserValidation a = recording("a", true, calls);
+
+        UserValidation.compile(UserValidation.all(a, a, a)).apply(USERS[0]);
+
+        assertEquals(List.of("a", "a", "a"), calls);
+    }
+
+    // ================== Invalid arguments ==================
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> UserValidation.compile(null));
+
+        UserValidation pass = user -> Valid.INSTANCE;
+        UserValidation tooDeep = pass;
+        for (int level = 0; level < 65; level++) {
+            tooDeep = pass.xor(tooDeep);
+        }
+        UserValidation finalTree = tooDeep;
+        assertThrows(IllegalArgumentException.class, () -> UserValidation.compile(finalTree));
+    }
+}
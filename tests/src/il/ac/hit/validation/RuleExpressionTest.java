@@ -0,0 +1,197 @@
+package il.ac.hit.validation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The simplifier and compiler behind {@link RuleExpression}: canonical forms, and results
+ * that agree with the same policy written in Java.
+ */
+class RuleExpressionTest {
+
+    private static final String[] TYPES = {"basic", "premium", "platinum"};
+    private static final String PASSWORD_CHARS = "abcXYZ019$";
+
+    private static final User[] USERS;
+    private static final String[] PASSWORDS;
+
+    // Made once: creating a user runs the password hash
+    static {
+        Random random = new Random(17);
+        USERS = new User[300];
+        PASSWORDS = new String[USERS.length];
+        for (int i = 0; i < USERS.length; i++) {
+            String username = (i % 2 == 0 ? "a" : "b") + "user" + i;
+            StringBuilder password = new StringBuilder();
+            for (int length = random.nextInt(12); password.length() <= length; ) {
+                password.append(PASSWORD_CHARS.charAt(random.nextInt(PASSWORD_CHARS.length())));
+            }
+            PASSWORDS[i] = i % 11 == 0 ? username : password.toString();
+            String email = username + (random.nextBoolean() ? "@example.co.il" : "@x.com");
+            int age = 1 + random.nextInt(90);
+            USERS[i] = i % 4 == 3
+                    ? new User(username, email, PASSWORDS[i], age)
+                    : UserFactory.createUser(TYPES[i % 4], username, email, PASSWORDS[i], age);
+        }
+    }
+
+    private static boolean hasDigit(String text) {
+        return text.chars().anyMatch(c -> c >= '0' && c <= '9');
+    }
+
+    private static boolean hasLetter(String text) {
+        return text.chars().anyMatch(Character::isLetter);
+    }
+
+    private static void assertAgrees(String expression, BiPredicate<User, String> expected) {
+        UserValidation compiled = RuleExpression.compile(expression);
+        UserValidation resimplified = RuleExpression.compile(RuleExpression.simplify(expression));
+        for (int i = 0; i < USERS.length; i++) {
+            User user = USERS[i];
+            boolean valid = expected.test(user, PASSWORDS[i]);
+            assertEquals(valid, compiled.apply(user).isValid(), expression + " for user " + i);
+            assertEquals(valid, resimplified.apply(user).isValid(), "simplified " + expression + " for user " + i);
+        }
+    }
+
+    // ================== Simplifier ==================
+
+    @Test
+    void comparisonsBecomeCanonicalRanges() {
+        assertEquals("age >= 19", RuleExpression.simplify("age > 18"));
+        assertEquals("age >= 19", RuleExpression.simplify("18 < age"));
+        assertEquals("tier >= premium", RuleExpression.simplify("premium <= tier"));
+        assertEquals("age >= 21 and age <= 64", RuleExpression.simplify("age > 18 and age < 65 and age >= 21"));
+        assertEquals("age <= 9 or age >= 21", RuleExpression.simplify("age < 10 or age > 20"));
+        assertEquals("age <= 20", RuleExpression.simplify("age < 10 or age <= 20"));
+        assertEquals("age >= 19 and email.length >= 11",
+                RuleExpression.simplify("age > 18 # adult\n and email.length > 10"));
+    }
+
+    @Test
+    void negationsArePushedDownToTheTests() {
+        assertEquals("age <= 18 or not email endsWith \"il\"",
+                RuleExpression.simplify("not (age > 18 and email endsWith \"il\")"));
+        assertEquals("age >= 19", RuleExpression.simplify("not not age > 18"));
+        assertEquals("username != \"x\"", RuleExpression.simplify("not username == \"x\""));
+        assertEquals("password != username", RuleExpression.simplify("not (password == username)"));
+        assertEquals("not password has digit or not password has letter",
+                RuleExpression.simplify("not (password has digit and password has letter)"));
+        assertEquals("(age >= 2 or age <= -6) and (tier == user or tier >= premium)",
+                RuleExpression.simplify("(age > 1 or age < -5) and tier != basic"));
+    }
+
+    @Test
+    void constantsAndContradictionsAreFolded() {
+        assertEquals("false", RuleExpression.simplify("age > 30 and age < 20"));
+        assertEquals("false", RuleExpression.simplify("username.length < 0"));
+        assertEquals("true", RuleExpression.simplify("age < 18 or age >= 10"));
+        assertEquals("true", RuleExpression.simplify("age <= 10 or age >= 11"));
+        assertEquals("age >= 19", RuleExpression.simplify("true and age > 18"));
+        assertEquals("email contains \"@\"", RuleExpression.simplify("false or email contains \"@\""));
+        assertEquals("age <= 18", RuleExpression.simplify("age > 18 xor true"));
+        assertEquals("false", RuleExpression.simplify("age > 18 xor age > 18"));
+        assertEquals("true", RuleExpression.simplify("age > 18 xor age <= 18"));
+    }
+
+    @Test
+    void repeatedTestsAreDroppedAndClassTestsMerged() {
+        assertEquals("age >= 2", RuleExpression.simplify("age > 1 and age > 1"));
+        // An OR keeps the last copy, since it reports its last failure
+        assertEquals("age >= 4 or email startsWith \"a\"",
+                RuleExpression.simplify("email startsWith \"a\" or age > 3 or email startsWith \"a\""));
+        assertEquals("password has digit and password has upper and age >= 2",
+                RuleExpression.simplify("password has digit and age > 1 and password has upper"));
+    }
+
+    @Test
+    void simplifiedFormIsStable() {
+        String[] expressions = {
+                "not (age > 18 and email endsWith \"il\") xor tier == platinum",
+                "(age > 1 or age < -5) and tier != basic or password has dollar",
+                "not (password has digit and username startsWith \"a\") and email.length > 12"
+        };
+        for (String expression : expressions) {
+            String simplified = RuleExpression.simplify(expression);
+            assertEquals(simplified, RuleExpression.simplify(simplified), expression);
+        }
+    }
+
+    // ================== Results ==================
+
+    @Test
+    void compiledExpressionsAgreeWithJava() {
+        assertAgrees("not (age > 18 and email endsWith \"il\")",
+                (user, password) -> !(user.getAge() > 18 && user.getEmail().endsWith("il")));
+        assertAgrees("age > 18 and age < 65 and age >= 21",
+                (user, password) -> user.getAge() >= 21 && user.getAge() < 65);
+        assertAgrees("age < 10 or age > 20",
+                (user, password) -> user.getAge() < 10 || user.getAge() > 20);
+        assertAgrees("age > 18 xor email.length > 14",
+                (user, password) -> user.getAge() > 18 ^ user.getEmail().length() > 14);
+        assertAgrees("password has digit and password has letter and password.length >= 4",
+                (user, password) -> hasDigit(password) && hasLetter(password) && password.length() >= 4);
+        assertAgrees("(age > 30 or age < 10) and tier != basic",
+                (user, password) -> (user.getAge() > 30 || user.getAge() < 10)
+                        && UserStore.tierOf(user) != UserStore.TIER_BASIC);
+        assertAgrees("tier == user or password != username",
+                (user, password) -> UserStore.tierOf(user) == UserStore.TIER_USER || !password.equals(user.getUsername()));
+        assertAgrees("username startsWith \"a\" or email contains \"x.com\"",
+                (user, password) -> user.getUsername().startsWith("a") || user.getEmail().contains("x.com"));
+    }
+
+    @Test
+    void failedTestReportsItsCanonicalText() {
+        User minor = new User("minor", "minor@example.co.il", "password1", 12);
+
+        assertEquals("Rule failed: age >= 19", RuleExpression.compile("age > 18").apply(minor).getReasonOrNull());
+    }
+
+    @Test
+    void fieldsListWhatTheSimplifiedExpressionReads() {
+        assertEquals(UserChange.AGE | UserChange.EMAIL,
+                RuleExpression.fieldsOf("age > 18 and email endsWith \"il\""));
+        assertEquals(UserChange.USERNAME | UserChange.PASSWORD, RuleExpression.fieldsOf("password != username"));
+        // The tier is the class of the user, which never changes
+        assertEquals(0, RuleExpression.fieldsOf("tier >= premium"));
+        // Folded away: the result does not depend on the age
+        assertEquals(0, RuleExpression.fieldsOf("age > 18 xor age <= 18"));
+    }
+
+    @Test
+    void compiledExpressionsAreCached() {
+        String expression = "age > 40 and email.length > 3";
+        assertSame(RuleExpression.compile(expression), RuleExpression.compile(expression));
+        assertSame(RuleExpression.compile(expression), UserValidation.parse(expression));
+    }
+
+    // ================== Errors ==================
+
+    @Test
+    void invalidExpressionsReportWhereTheyFail() {
+        assertThrows(IllegalArgumentException.class, () -> RuleExpression.compile(null));
+        assertThrows(IllegalArgumentException.class, () -> RuleExpression.simplify(null));
+
+        String[][] cases = {
+                {"", "column 1: Expected a name"},
+                {"age > x", "column 7: Expected a number"},
+                {"foo == 1", "column 1: Unknown field 'foo'"},
+                {"(age > 1", "column 9: Expected ')'"},
+                {"tier == gold", "Unknown tier 'gold'"},
+                {"email has banana", "Unknown character class 'banana'"},
+                {"age > 99999999999", "column 7: Number out of range"}
+        };
+        for (String[] c : cases) {
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+                    () -> RuleExpression.compile(c[0]), c[0]);
+            assertTrue(error.getMessage().endsWith(c[1]), error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package il.ac.hit.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What {@link UserImporter} delivers for CSV and NDJSON input: which records are accepted,
+ * which are rejected with what reason and line, and that the order is the input order
+ * whatever the batch size and worker count.
+ */
+class UserImporterTest {
+
+    private static final UserValidation POLICY = UserValidation.all(
+            UserValidation.emailEndsWithIL(), UserValidation.ageBiggerThan18());
+
+    @TempDir
+    Path directory;
+
+    /** Records what reaches the sinks, in delivery order. */
+    private static final class Sinks {
+        final List<String> events = new ArrayList<>();
+        final List<User> accepted = new ArrayList<>();
+        final List<User> rejectedUsers = new ArrayList<>();
+
+        void accept(User user) {
+            accepted.add(user);
+            events.add("accepted " + user.getUsername());
+        }
+
+        void reject(long line, User user, Invalid reason) {
+            rejectedUsers.add(user);
+            events.add("line " + line + ": " + reason.getReasonOrNull());
+        }
+    }
+
+    private static Sinks run(UserImporter importer, UserImporter.Format format, String input) throws IOException {
+        Sinks sinks = new Sinks();
+        importer.importFrom(Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+                format, sinks::accept, sinks::reject);
+        return sinks;
+    }
+
+    private static UserImporter importer() {
+        return new UserImporter(POLICY, 2, 2, 1);
+    }
+
+    // ================== CSV ==================
+
+    @Test
+    void csvRecordsAreAcceptedOrRejectedInFileOrder() throws IOException {
+        String csv = "type,username,email,password,age\n"
+                + "basic,dana,dana@example.co.il,secret1,30\n"
+                + "premium,omer,omer@example.com,secret2,40\r\n"
+                + "\n"
+                + "platinum,noa,noa@example.co.il,secret3,12\n"
+                + "gold,avi,avi@example.co.il,secret4,30\n"
+                + "basic,tal,tal@example.co.il,secret5\n"
+                + "basic,roni,roni@example.co.il,secret6,old\n"
+                + "platinum,yael,yael@example.co.il,secret7,50";
+
+        Sinks sinks = run(importer(), UserImporter.Format.CSV, csv);
+
+        assertEquals(List.of(
+                "accepted dana",
+                "line 3: Email must end with 'il'",
+                "line 5: User must be older than 18",
+                "line 6: Unknown user type: gold",
+                "line 7: Expected 5 fields but found 4",
+                "line 8: Invalid age: old",
+                "accepted yael"), sinks.events);
+    }
+
+    @Test
+    void csvQuotedFieldsMayHoldCommasQuotesAndNewlines() throws IOException {
+        String csv = "basic,\"cohen, dana\",dana@example.co.il,secret1,30\n"
+                + "basic,\"say \"\"hi\"\"\",hi@example.co.il,secret2,30\n"
+                + "basic,\"two\nlines\",two@example.co.il,secret3,30\n"
+                + "basic,\"unterminated,x@example.co.il,secret4,30\n";
+
+        Sinks sinks = run(importer(), UserImporter.Format.CSV, csv);
+
+        assertEquals(List.of(
+                "accepted cohen, dana",
+                "accepted say \"hi\"",
+                "accepted two\nlines",
+                "line 5: Unterminated quoted field"), sinks.events);
+    }
+
+    @Test
+    void byteOrderMarkAndHeaderAreSkipped() throws IOException {
+        String csv = "\uFEFFType,Username,Email,Password,Age\nbasic,dana,dana@example.co.il,secret1,30\n";
+
+        Sinks sinks = run(importer(), UserImporter.Format.CSV, csv);
+
+        assertEquals(List.of("accepted dana"), sinks.events);
+    }
+
+    // ================== NDJSON ==================
+
+    @Test
+    void ndjsonRecordsAreAcceptedOrRejectedInFileOrder() throws IOException {
+        String ndjson = "{\"type\":\"basic\",\"username\":\"dana\",\"email\":\"dana@example.co.il\","
+                + "\"password\":\"secret1\",\"age\":30}\n"
+                + "  \n"
+                + "{\"age\": 40, \"extra\": true, \"type\": \"premium\", \"username\": \"\\u00e9li\","
+                + " \"email\": \"eli@example.co.il\", \"password\": \"a\\\"b\"}\n"
+                + "{\"type\":\"basic\",\"username\":\"omer\",\"email\":\"omer@example.com\","
+                + "\"password\":\"secret2\",\"age\":30}\n"
+                + "{\"type\":\"basic\",\"username\":\"tal\",\"email\":\"tal@example.co.il\",\"password\":\"secret3\"}\n"
+                + "{\"type\":\"basic\",\"tags\":[\"x\"]}\n"
+                + "{bad\n";
+
+        Sinks sinks = run(importer(), UserImporter.Format.NDJSON, ndjson);
+
+        assertEquals(List.of(
+                "accepted dana",
+                "accepted éli",
+                "line 4: Email must end with 'il'",
+                "line 5: Missing field: age",
+                "line 6: Unsupported JSON value; records must be flat objects",
+                "line 7: Expected '\"' in JSON record"), sinks.events);
+        assertTrue(sinks.accepted.get(1).verifyPassword("a\"b".toCharArray()));
+    }
+
+    // ================== Pipeline ==================
+
+    @Test
+    void orderAndCountsDoNotDependOnBatchingOrWorkers() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            int age = 10 + i % 20;
+            boolean israeli = i % 3 != 0;
+            csv.append("basic,user").append(i).append(",user").append(i)
+                    .append(israeli ? "@example.co.il" : "@example.com").append(",secret,").append(age).append('\n');
+            if (!israeli) {
+                expected.add("line " + (i + 1) + ": Email must end with 'il'");
+            } else if (age <= 18) {
+                expected.add("line " + (i + 1) + ": User must be older than 18");
+            } else {
+                expected.add("accepted user" + i);
+            }
+        }
+        Path file = directory.resolve("users.csv");
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+
+        for (int workers : new int[] {1, 3, 8}) {
+            UserImporter importer = new UserImporter(POLICY, 7 * workers, workers, 2);
+            Sinks sinks = new Sinks();
+
+            UserImporter.Summary summary = importer.importFile(file, UserImporter.Format.CSV,
+                    sinks::accept, sinks::reject);
+
+            assertEquals(expected, sinks.events, workers + " workers");
+            assertEquals(3000, summary.getRecordCount());
+            assertEquals(sinks.accepted.size(), summary.getAcceptedCount());
+            assertEquals(3000 - sinks.accepted.size(), summary.getRejectedCount());
+        }
+    }
+
+    @Test
+    void rejectionsCarryTheUserOnlyIfOneWasCreated() throws IOException {
+        String csv = "basic,omer,omer@example.com,secret,30\nbasic,tal\n";
+
+        Sinks sinks = run(importer(), UserImporter.Format.CSV, csv);
+
+        assertNotNull(sinks.rejectedUsers.get(0));
+        assertEquals("omer", sinks.rejectedUsers.get(0).getUsername());
+        assertNull(sinks.rejectedUsers.get(1));
+    }
+
+    @Test
+    void passwordsAreHashedWithTheImporterHasher() throws IOException {
+        UserImporter importer = new UserImporter(POLICY, 4, 1, 1, new PasswordHasher(3));
+
+        Sinks sinks = run(importer, UserImporter.Format.CSV, "basic,dana,dana@example.co.il,secret1,30\n");
+
+        User dana = sinks.accepted.get(0);
+        assertEquals(3, dana.getCredential().getIterations());
+        assertTrue(dana.verifyPassword("secret1".toCharArray()));
+    }
+
+    @Test
+    void oversizedRecordIsRejectedAndTheNextOneRead() throws IOException {
+        StringBuilder huge = new StringBuilder("basic,");
+        while (huge.length() <= UserImporter.MAX_RECORD_LENGTH) {
+            huge.append("xxxxxxxxxxxxxxxx");
+        }
+        String csv = huge + ",a@example.co.il,secret,30\nbasic,dana,dana@example.co.il,secret1,30\n";
+
+        Sinks sinks = run(importer(), UserImporter.Format.CSV, csv);
+
+        assertEquals(List.of(
+                "line 1: Record exceeds " + UserImporter.MAX_RECORD_LENGTH + " bytes",
+                "accepted dana"), sinks.events);
+    }
+
+    @Test
+    void failingSinkOrRuleStopsTheImport() {
+        String csv = "basic,dana,dana@example.co.il,secret1,30\n";
+        UserImporter broken = new UserImporter(user -> {
+            throw new IllegalStateException("rule");
+        }, 4, 2, 1);
+
+        IllegalStateException sinkError = assertThrows(IllegalStateException.class,
+                () -> importer().importFrom(Channels.newChannel(
+                                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))),
+                        UserImporter.Format.CSV, user -> {
+                            throw new IllegalStateException("sink");
+                        }, (line, user, reason) -> { }));
+        IllegalStateException ruleError = assertThrows(IllegalStateException.class,
+                () -> run(broken, UserImporter.Format.CSV, csv));
+
+        assertEquals("sink", sinkError.getMessage());
+        assertEquals("rule", ruleError.getMessage());
+    }
+
+    // ================== Invalid arguments ==================
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new UserImporter(null));
+        assertThrows(IllegalArgumentException.class, () -> new UserImporter(POLICY, 0, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new UserImporter(POLICY, 1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new UserImporter(POLICY, 1, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> new UserImporter(POLICY, 1, 1, 1, null));
+        assertThrows(IllegalArgumentException.class,
+                () -> importer().importFile(null, UserImporter.Format.CSV, user -> { }, (line, user, reason) -> { }));
+        assertThrows(IllegalArgumentException.class,
+                () -> run(importer(), null, ""));
+    }
+}
@@ -0,0 +1,248 @@
+package il.ac.hit.validation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips through {@link UserSnapshot}: what is written must read back unchanged,
+ * validate the same way, and replace an older file only as a whole.
+ */
+class UserSnapshotTest {
+
+    private static final String[] TYPES = {"basic", "premium", "platinum"};
+
+    /** Offset of the tier table offset in the header. */
+    private static final int TIER_TABLE_OFFSET = 24;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Users of every tier plus a plain user, with non-ASCII names and a password that
+     * equals the username.
+     */
+    private static User[] users() {
+        User[] users = new User[40];
+        for (int i = 0; i < users.length - 1; i++) {
+            String name = "usér" + i;
+            String password = i % 7 == 0 ? name : (i % 2 == 0 ? "abc$1" : "abcdefghij");
+            users[i] = UserFactory.createUser(TYPES[i % TYPES.length], name,
+                    name + (i % 3 == 0 ? "@example.co.il" : "@example.com"), password, 10 + i);
+        }
+        users[users.length - 1] = new User("plain", "plain@example.co.il", "password1", 44);
+        return users;
+    }
+
+    private static String passwordOf(User user) {
+        int i = Integer.parseInt(user.getUsername().substring(4));
+        return i % 7 == 0 ? user.getUsername() : (i % 2 == 0 ? "abc$1" : "abcdefghij");
+    }
+
+    /** Replaces the tier table at the end of a snapshot with the given type names. */
+    private static void rewriteTierTable(Path file, String... names) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        int tableOffset = (int) ByteBuffer.wrap(bytes).getLong(TIER_TABLE_OFFSET);
+        ByteBuffer table = ByteBuffer.allocate(1024);
+        table.putInt(names.length);
+        for (String name : names) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            table.putInt(encoded.length).put(encoded);
+        }
+        byte[] rewritten = Arrays.copyOf(bytes, tableOffset + table.position());
+        System.arraycopy(table.array(), 0, rewritten, tableOffset, table.position());
+        Files.write(file, rewritten);
+    }
+
+    // ================== Round trip ==================
+
+    @Test
+    void fieldsReadBackAsWritten() throws IOException {
+        User[] users = users();
+        Path file = directory.resolve("users.snap");
+
+        UserSnapshot.write(file, users);
+        UserSnapshot snapshot = UserSnapshot.open(file);
+
+        assertEquals(users.length, snapshot.size());
+        for (int i = 0; i < users.length; i++) {
+            User user = users[i];
+            assertEquals(user.getUsername(), snapshot.getUsername(i));
+            assertEquals(user.getEmail(), snapshot.getEmail(i));
+            assertEquals(user.getAge(), snapshot.getAge(i));
+            assertEquals(UserStore.tierOf(user), snapshot.getTier(i), "tier of " + i);
+
+            User view = snapshot.view(i);
+            assertEquals(user.getUsername(), view.getUsername());
+            assertEquals(user.getEmail(), view.getEmail());
+            assertEquals(user.getAge(), view.getAge());
+        }
+    }
+
+    @Test
+    void storedCredentialsVerifyTheOriginalPasswords() throws IOException {
+        User[] users = users();
+        Path file = directory.resolve("users.snap");
+        UserSnapshot.write(file, Arrays.copyOf(users, users.length - 1));
+        UserSnapshot snapshot = UserSnapshot.open(file);
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertTrue(snapshot.verifyPassword(i, passwordOf(users[i])), "user " + i);
+            assertFalse(snapshot.verifyPassword(i, "wrong password"), "user " + i);
+            assertTrue(snapshot.view(i).verifyPassword(passwordOf(users[i]).toCharArray()), "view " + i);
+        }
+    }
+
+    @Test
+    void snapshotValidatesLikeTheUsers() throws IOException {
+        User[] users = users();
+        Path file = directory.resolve("users.snap");
+        UserSnapshot.write(file, users);
+        UserSnapshot snapshot = UserSnapshot.open(file);
+
+        UserValidation[] validations = {
+                UserValidation.all(UserValidation.ageBiggerThan18(), UserValidation.emailEndsWithIL(),
+                        UserValidation.passwordIncludesLettersNumbersOnly()),
+                UserValidation.passwordIsDifferentFromUsername(),
+                UserValidation.passwordIncludesDollarSign().or(UserValidation.emailLengthBiggerThan10())
+        };
+        for (UserValidation validation : validations) {
+            BatchValidationResult expected = validation.validateAll(users);
+            BatchValidationResult actual = snapshot.validateAll(validation);
+            for (int i = 0; i < users.length; i++) {
+                assertEquals(expected.isValid(i), actual.isValid(i), "user " + i);
+                assertEquals(expected.getReasonOrNull(i), actual.getReasonOrNull(i), "user " + i);
+            }
+        }
+    }
+
+    @Test
+    void storeAndArraySnapshotsHoldTheSameUsers() throws IOException {
+        User[] users = users();
+        UserStore store = new UserStore();
+        for (User user : users) {
+            store.add(user);
+        }
+        Path fromStore = directory.resolve("store.snap");
+
+        UserSnapshot.write(fromStore, store);
+        UserSnapshot snapshot = UserSnapshot.open(fromStore);
+
+        assertEquals(store.size(), snapshot.size());
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(store.getTier(i), snapshot.getTier(i));
+            assertEquals(store.getUsername(i), snapshot.getUsername(i));
+            assertEquals(store.getEmail(i), snapshot.getEmail(i));
+        }
+        assertTrue(snapshot.verifyPassword(1, passwordOf(users[1])));
+    }
+
+    @Test
+    void emptySnapshotRoundTrips() throws IOException {
+        Path file = directory.resolve("empty.snap");
+        UserSnapshot.write(file, new User[0]);
+        assertEquals(0, UserSnapshot.open(file).size());
+    }
+
+    // ================== Tier table ==================
+
+    @Test
+    void storedTierCodesAreMappedByName() throws IOException {
+        User[] users = users();
+        Path file = directory.resolve("users.snap");
+        UserSnapshot.write(file, users);
+
+        // As if written by a process that registered the tiers in another order
+        rewriteTierTable(file, "", "platinum", "basic", "premium");
+        UserSnapshot snapshot = UserSnapshot.open(file);
+
+        byte[] expected = {UserStore.TIER_USER, UserStore.TIER_PLATINUM, UserStore.TIER_BASIC, UserStore.TIER_PREMIUM};
+        for (int i = 0; i < users.length; i++) {
+            assertEquals(expected[UserStore.tierOf(users[i])], snapshot.getTier(i), "tier of " + i);
+        }
+    }
+
+    @Test
+    void unregisteredTypeIsRejected() throws IOException {
+        Path file = directory.resolve("users.snap");
+        UserSnapshot.write(file, users());
+        rewriteTierTable(file, "", "basic", "gold", "platinum");
+
+        IOException error = assertThrows(IOException.class, () -> UserSnapshot.open(file));
+        assertTrue(error.getMessage().contains("'gold'"), error.getMessage());
+    }
+
+    // ================== Replacing files ==================
+
+    @Test
+    void rewriteReplacesTheFileWithoutTouchingOpenSnapshots() throws IOException {
+        User[] users = users();
+        Path file = directory.resolve("users.snap");
+        UserSnapshot.write(file, users);
+        UserSnapshot before = UserSnapshot.open(file);
+
+        UserSnapshot.write(file, Arrays.copyOf(users, 3));
+
+        assertEquals(users.length, before.size());
+        assertEquals(users[20].getUsername(), before.getUsername(20));
+        assertEquals(3, UserSnapshot.open(file).size());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "temporary files must not be left behind");
+        }
+    }
+
+    @Test
+    void failedWriteLeavesTheOldFile() throws IOException {
+        User[] users = users();
+        Path file = directory.resolve("users.snap");
+        UserSnapshot.write(file, users);
+        byte[] original = Files.readAllBytes(file);
+        User[] withNull = Arrays.copyOf(users, users.length + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> UserSnapshot.write(file, withNull));
+
+        assertTrue(Arrays.equals(original, Files.readAllBytes(file)));
+    }
+
+    // ================== Invalid input ==================
+
+    @Test
+    void nonSnapshotFilesAreRejected() throws IOException {
+        Path text = directory.resolve("text.snap");
+        Files.write(text, "not a snapshot, just some text".getBytes(StandardCharsets.UTF_8));
+        Path shortFile = directory.resolve("short.snap");
+        Files.write(shortFile, new byte[8]);
+
+        assertThrows(IOException.class, () -> UserSnapshot.open(text));
+        assertThrows(IOException.class, () -> UserSnapshot.open(shortFile));
+        assertThrows(IOException.class, () -> UserSnapshot.open(directory.resolve("missing.snap")));
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() throws IOException {
+        Path file = directory.resolve("users.snap");
+        assertThrows(IllegalArgumentException.class, () -> UserSnapshot.write(null, new User[0]));
+        assertThrows(IllegalArgumentException.class, () -> UserSnapshot.write(file, (User[]) null));
+        assertThrows(IllegalArgumentException.class, () -> UserSnapshot.write(file, (UserStore) null));
+        assertThrows(IllegalArgumentException.class, () -> UserSnapshot.open(null));
+
+        UserSnapshot.write(file, users());
+        UserSnapshot snapshot = UserSnapshot.open(file);
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.getAge(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> snapshot.view(snapshot.size()));
+        assertThrows(IllegalArgumentException.class, () -> snapshot.verifyPassword(0, (String) null));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.view(0).setUsername("someone"));
+    }
+}
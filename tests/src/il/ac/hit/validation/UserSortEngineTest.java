@@ -0,0 +1,207 @@
+package il.ac.hit.validation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Orders produced by the sorts behind {@link UserUtils}, checked against the stable
+ * {@link Arrays#sort(Object[], Comparator)} on the same input.
+ */
+class UserSortEngineTest {
+
+    private static final Comparator<User> BY_AGE = Comparator.comparingInt(User::getAge);
+
+    /** Sizes on both sides of the insertion sort and merge thresholds. */
+    private static final int[] SIZES = {0, 1, 2, 31, 32, 33, 100, 1000, 5000};
+
+    /**
+     * Users with few distinct ages, so most comparisons tie and stability shows.
+     * The username records the original position.
+     */
+    private static User[] users(int count, long seed) {
+        Random random = new Random(seed);
+        User[] users = new User[count];
+        for (int i = 0; i < count; i++) {
+            users[i] = new User("u" + i, "u" + i + "@example.co.il", "password" + i, 1 + random.nextInt(20));
+        }
+        return users;
+    }
+
+    private static User[] reference(User[] users, Comparator<User> comparator) {
+        User[] sorted = users.clone();
+        Arrays.sort(sorted, comparator);
+        return sorted;
+    }
+
+    // ================== Comparator sort ==================
+
+    @Test
+    void sortIsStableAndMatchesReference() {
+        for (int size : SIZES) {
+            User[] users = users(size, size);
+            User[] expected = reference(users, BY_AGE);
+
+            UserUtils.sort(users, BY_AGE);
+
+            assertArrayEquals(expected, users, "size " + size);
+        }
+    }
+
+    @Test
+    void sortHandlesOrderedAndReversedRuns() {
+        User[] users = users(3000, 7);
+        Arrays.sort(users, BY_AGE);
+        User[] ascending = users.clone();
+        UserUtils.sort(users, BY_AGE);
+        assertArrayEquals(ascending, users);
+
+        // Strictly descending input is reversed in place; ties must still keep their order
+        User[] descending = users(3000, 8);
+        Arrays.sort(descending, BY_AGE.reversed());
+        User[] expected = reference(descending, BY_AGE);
+        UserUtils.sort(descending, BY_AGE);
+        assertArrayEquals(expected, descending);
+    }
+
+    @Test
+    void rangeSortLeavesTheRestUntouched() {
+        User[] users = users(500, 3);
+        User[] original = users.clone();
+
+        UserUtils.sort(users, 100, 400, BY_AGE);
+
+        User[] expected = original.clone();
+        Arrays.sort(expected, 100, 400, BY_AGE);
+        assertArrayEquals(expected, users);
+    }
+
+    @Test
+    void parallelSortGivesTheSequentialOrder() {
+        User[] users = users(20_000, 11);
+        User[] expected = reference(users, BY_AGE);
+
+        UserUtils.parallelSort(users, BY_AGE, 4, 256);
+
+        assertArrayEquals(expected, users);
+    }
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        User[] users = users(3, 1);
+        assertThrows(IllegalArgumentException.class, () -> UserUtils.sort(null, BY_AGE));
+        assertThrows(IllegalArgumentException.class, () -> UserUtils.sort(users, null));
+        assertThrows(IllegalArgumentException.class, () -> UserUtils.sort(users, 2, 1, BY_AGE));
+        assertThrows(IllegalArgumentException.class, () -> UserUtils.parallelSort(users, BY_AGE, 0));
+    }
+
+    // ================== Key sorts ==================
+
+    @Test
+    void intKeySortMatchesComparatorForNarrowAndWideKeys() {
+        for (int size : SIZES) {
+            User[] users = users(size, 100 + size);
+            User[] expected = reference(users, BY_AGE);
+            UserUtils.sortByIntKey(users, User::getAge);
+            assertArrayEquals(expected, users, "counting sort, size " + size);
+        }
+
+        // Keys spread over the whole int range take the radix path, negatives included
+        Random random = new Random(5);
+        User[] users = users(4000, 5);
+        int[] keys = new int[users.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextInt(8) == 0 ? keys[random.nextInt(i + 1)] : random.nextInt();
+        }
+        ToIntFunction<User> key = u -> keys[Integer.parseInt(u.getUsername().substring(1))];
+        User[] expected = reference(users, Comparator.comparingInt(key));
+
+        UserUtils.sortByIntKey(users, key);
+
+        assertArrayEquals(expected, users);
+    }
+
+    @Test
+    void stringKeySortMatchesNaturalOrder() {
+        String[] names = {"dana", "dan", "", "Dana", "danny", "דנה", "dan", "a", "zz", "danA"};
+        User[] users = new User[names.length * 50];
+        for (int i = 0; i < users.length; i++) {
+            users[i] = new User("u" + i, names[i % names.length] + "@example.co.il", "password", 30);
+        }
+        Comparator<User> byEmail = Comparator.comparing(User::getEmail);
+        User[] expected = reference(users, byEmail);
+
+        UserUtils.sortByStringKey(users, User::getEmail);
+
+        assertArrayEquals(expected, users);
+    }
+
+    @Test
+    void nullStringKeyIsRejected() {
+        User[] users = users(4, 2);
+        assertThrows(IllegalArgumentException.class, () -> UserUtils.sortByStringKey(users, u -> null));
+    }
+
+    // ================== Partial sorts ==================
+
+    @Test
+    void topKIsThePrefixOfAFullSort() {
+        User[] users = users(2000, 21);
+        User[] original = users.clone();
+        User[] sorted = reference(users, BY_AGE);
+
+        for (int k : new int[] {0, 1, 10, 999, 2000, 3000}) {
+            User[] top = UserUtils.topK(users, k, BY_AGE);
+            assertArrayEquals(Arrays.copyOf(sorted, Math.min(k, sorted.length)), top, "k " + k);
+        }
+        assertArrayEquals(original, users, "topK must not modify its input");
+    }
+
+    @Test
+    void partialSortPlacesTheWindowAndPartitionsTheRest() {
+        User[] users = users(3000, 31);
+        User[] sorted = reference(users, BY_AGE);
+
+        UserUtils.partialSort(users, 1000, 1100, BY_AGE);
+
+        for (int i = 1000; i < 1100; i++) {
+            assertEquals(sorted[i].getAge(), users[i].getAge(), "rank " + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(users[i].getAge() <= users[1000].getAge(), "left of the window at " + i);
+        }
+        for (int i = 1100; i < users.length; i++) {
+            assertTrue(users[i].getAge() >= users[1099].getAge(), "right of the window at " + i);
+        }
+        User[] sameUsers = users.clone();
+        Arrays.sort(sameUsers, Comparator.comparing(User::getUsername));
+        User[] originalUsers = sorted.clone();
+        Arrays.sort(originalUsers, Comparator.comparing(User::getUsername));
+        assertArrayEquals(originalUsers, sameUsers, "partial sort must only rearrange");
+    }
+
+    @Test
+    void sortedListKeepsOrderOnInsert() {
+        User[] users = users(200, 41);
+        SortedUserList list = UserUtils.sortedList(users, BY_AGE);
+        User extra = new User("extra", "extra@example.co.il", "password", 10);
+
+        list.add(extra);
+
+        User[] all = Arrays.copyOf(users, users.length + 1);
+        all[users.length] = extra;
+        User[] expected = reference(all, BY_AGE);
+        for (int i = 0; i < expected.length; i++) {
+            assertSame(expected[i], list.get(i), "position " + i);
+        }
+    }
+}